@@ -6,9 +6,16 @@ import java.util.*;
 import storage.Attribute;
 import storage.BPlusOneTree;
 import storage.BTree;
+import storage.BufferPool;
+import storage.BitmapIndex;
+import storage.BloomFilter;
 import storage.DataType;
 import storage.DavisBaseBinaryFile;
+import storage.HashIndex;
 import storage.Page;
+import storage.PageFile;
+import storage.ParallelScan;
+import storage.ZoneMap;
 
 import utils.Constants.CreateIndex;
 import utils.Constants.ParseCreateTable;
@@ -16,8 +23,11 @@ import utils.Constants.ParseDelete;
 import utils.Constants.ParseInsert;
 import utils.Constants.ParseQuery;
 import utils.Constants.ParseUpdate;
+import utils.Constants.ParseVacuum;
+import utils.Constants.ParseAnalyze;
 import utils.Constants.ParseUserQuery;
 import utils.ColumnInfo;
+import utils.ColumnStatistics;
 import utils.Condition;
 import utils.Constants;
 import utils.TableMetaData;
@@ -27,7 +37,7 @@ import utils.Utils;
 public class Query {
 
   public static void parseCreateIndex(String query) {
-    // Query: CREATE INDEX ON <TABLE_NAME> (PRIMARY_KEY_ATTRIBUTE)
+    // Query: CREATE INDEX ON <TABLE_NAME> (<COLUMN_LIST>) [INCLUDE (<COLUMN_LIST>)] [USING HASH | BITMAP | BLOOM]
 
     List<String> createIndexTokens = Utils.getSpaceSeparatedTokens(query);
 
@@ -39,12 +49,27 @@ public class Query {
 
       String tableName = Utils.CreateIndexCommand.getTableNameFromQuery(query);
       String columnName = Utils.CreateIndexCommand.getColumnNameFromQuery(query);
+      boolean hashIndex = Utils.CreateIndexCommand.isHashIndex(query);
+      boolean bitmapIndex = Utils.CreateIndexCommand.isBitmapIndex(query);
+      boolean bloomFilter = Utils.CreateIndexCommand.isBloomFilter(query);
+
+      // hash, bitmap and bloom indexes only know of whole values, so they have a single key column
+      if ((hashIndex || bitmapIndex || bloomFilter) && (Utils.CreateIndexCommand.getColumnNamesFromQuery(query).size() > 1
+          || !Utils.CreateIndexCommand.getIncludedColumnsFromQuery(query).isEmpty())) {
+        Utils.log(CreateIndex.SINGLE_COLUMN_ERROR);
+        return;
+      }
 
-      if (Utils.CreateIndexCommand.checkIfIndexExists(tableName, columnName)) {
+      String indexPath = hashIndex ? Utils.getHashFilePath(tableName, columnName)
+          : bitmapIndex ? Utils.getBitmapFilePath(tableName, columnName)
+          : bloomFilter ? Utils.getBloomFilePath(tableName, columnName)
+          : Utils.getNDXFilePath(tableName, columnName);
+
+      if (Utils.CreateIndexCommand.checkIfIndexExists(indexPath)) {
         return;
       }
 
-      RandomAccessFile tableFile = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
       TableMetaData metaData = new TableMetaData(tableName);
 
       if (!Utils.CreateIndexCommand.isTableValid(tableFile, metaData)) {
@@ -55,34 +80,90 @@ public class Query {
         return;
       }
 
-      int columnOrdinal = Utils.getColumnOrdinalPosition(metaData, columnName);
+      // the keys hold the index columns in the order they are listed, followed by the included columns
+      List<Integer> keyColumns = new ArrayList<>();
+      List<String> keyColumnNames = new ArrayList<>(Utils.CreateIndexCommand.getColumnNamesFromQuery(query));
+      keyColumnNames.addAll(Utils.CreateIndexCommand.getIncludedColumnsFromQuery(query));
 
-      if (!Utils.CreateIndexCommand.isColumnNameValid(tableFile, columnOrdinal)) {
-        return;
+      for (String keyColumnName : keyColumnNames) {
+        int keyOrdinal = Utils.getColumnOrdinalPosition(metaData, keyColumnName);
+
+        if (!Utils.CreateIndexCommand.isColumnNameValid(tableFile, keyOrdinal)) {
+          return;
+        }
+
+        if (!keyColumns.contains(keyOrdinal)) {
+          keyColumns.add(keyOrdinal);
+        }
       }
 
-      RandomAccessFile indexFile = new RandomAccessFile(Utils.getNDXFilePath(tableName, columnName),
-          Constants.READ_WRITE_MODE);
+      int[] keyOrdinals = new int[keyColumns.size()];
+      DataType[] keyTypes = new DataType[keyColumns.size()];
+
+      for (int i = 0; i < keyColumns.size(); i++) {
+        keyOrdinals[i] = keyColumns.get(i);
+        keyTypes[i] = metaData.colNameAttributes.get(keyColumns.get(i)).dataType;
+      }
 
-      Page.addNewPage(indexFile, Page.PageType.LEAFINDEX, -1, -1);
+      // indexes use the page size of their table
+      PageFile indexFile = new PageFile(indexPath, Constants.READ_WRITE_MODE, tableFile.pageSizePower);
 
-      if (metaData.recordCount > 0) {
-        BPlusOneTree bPlusOneTree = new BPlusOneTree(tableFile, metaData.rootPageNum, metaData.tableName);
+      if (hashIndex) {
+        HashIndex.create(indexFile, keyOrdinals[0], keyTypes[0]);
+      } else if (bitmapIndex) {
+        BitmapIndex.create(indexFile, keyOrdinals[0], keyTypes[0]);
+      } else if (bloomFilter) {
+        BloomFilter.create(indexFile, keyOrdinals[0], keyTypes[0], metaData.recordCount);
+      } else {
+        indexFile.setIndexColumns(keyOrdinals, keyTypes);
+        Page.addNewPage(indexFile, Page.PageType.LEAFINDEX, -1, -1);
+      }
 
-        for (int pageNo : bPlusOneTree.getAllLeaves()) {
-          Page page = new Page(tableFile, pageNo);
-          BTree bTree = new BTree(indexFile);
+      HashIndex hashIndexFile = hashIndex ? new HashIndex(indexFile) : null;
+      BitmapIndex bitmapIndexFile = bitmapIndex ? new BitmapIndex(indexFile) : null;
+      BloomFilter bloomFilterFile = bloomFilter ? new BloomFilter(indexFile) : null;
+      BTree bTree = hashIndex || bitmapIndex || bloomFilter ? null : new BTree(indexFile);
 
-          for (TableRecord record : page.getPageRecords()) {
-            bTree.insert(record.getAttributes().get(columnOrdinal), record.rowId);
-          }
+      try {
+        if (metaData.recordCount > 0) {
+          BPlusOneTree bPlusOneTree = new BPlusOneTree(tableFile, metaData.rootPageNum, metaData.tableName);
+
+          // the table leaves are read in parallel, the entries are added in leaf order on this thread
+          ParallelScan.forEach(tableFile, bPlusOneTree.getAllLeaves(), record -> true, record -> {
+            if (hashIndex)
+              hashIndexFile.insert(record.getAttribute(keyOrdinals[0]), record.rowId);
+            else if (bitmapIndex)
+              bitmapIndexFile.insert(record.getAttribute(keyOrdinals[0]), record.rowId);
+            else if (bloomFilter)
+              bloomFilterFile.add(record.getAttribute(keyOrdinals[0]));
+            else
+              bTree.insert(bTree.getKey(record), record.rowId);
+          });
         }
+
+        // the catalog lists the index under the column its file is named after
+        ColumnInfo indexColumn = metaData.colNameAttributes.get(keyOrdinals[0]);
+        indexColumn.hasHashIndex |= hashIndex;
+        indexColumn.hasBitmapIndex |= bitmapIndex;
+        indexColumn.hasBloomFilter |= bloomFilter;
+        indexColumn.hasIndex |= bTree != null;
+        TableMetaData.saveIndexTypes(indexColumn);
+      } catch (IOException e) {
+        // a key that does not fit in a page or a catalog row that cannot be written fails the index,
+        // which is removed rather than left missing rows or unknown to the catalog
+        Utils.closeIOFile(indexFile);
+        Utils.closeIOFile(tableFile);
+        BufferPool.invalidate(indexPath);
+        new File(indexPath).delete();
+        throw e;
       }
 
       Utils.log(CreateIndex.INDEX_CREATED + columnName);
 
       Utils.closeIOFile(indexFile);
       Utils.closeIOFile(tableFile);
+
+      TableMetaData.refreshCatalog(tableName);
     } catch (IOException e) {
       Utils.log(CreateIndex.INDEX_CREATION_ERROR);
       Utils.log(e + "");
@@ -109,6 +190,9 @@ public class Query {
 
     Utils.DropCommand.deleteTableFile(tableName);
     Utils.DropCommand.deleteIndexes(tableName);
+    TableMetaData.deleteStatistics(tableName);
+
+    TableMetaData.refreshCatalog(tableName);
   }
 
   // method to parse SELECT user query command
@@ -142,7 +226,7 @@ public class Query {
     }
 
     try {
-      RandomAccessFile tableFile = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
 
       DavisBaseBinaryFile tableBinaryFile = new DavisBaseBinaryFile(tableFile);
 
@@ -188,54 +272,12 @@ public class Query {
     }
 
     try {
-      RandomAccessFile file = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
+      PageFile file = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
 
       DavisBaseBinaryFile binaryFile = new DavisBaseBinaryFile(file);
 
-      int noOfRecordsUpdated = Utils.UpdateCommand.getRecordsCountTobeUpdated(columnsToUpdate, valueToUpdate, condition,
-          binaryFile, metaData);
-
-      if (noOfRecordsUpdated > 0) {
-        List<Integer> allRowids = new ArrayList<>();
-
-        for (ColumnInfo colInfo : metaData.colNameAttributes) {
-          int i = 0;
-
-          while (i < columnsToUpdate.size()) {
-            if (colInfo.columnName.equals(columnsToUpdate.get(i)) && colInfo.hasIndex) {
-              if (condition == null) {
-                // deleting index file
-
-                if (allRowids.size() == 0) {
-                  BPlusOneTree bPlusOneTree = new BPlusOneTree(file, metaData.rootPageNum, metaData.tableName);
-
-                  for (int pageNo : bPlusOneTree.getAllLeaves()) {
-                    Page currentPage = new Page(file, pageNo);
-
-                    for (TableRecord record : currentPage.getPageRecords()) {
-                      allRowids.add(record.rowId);
-                    }
-                  }
-                }
-
-                RandomAccessFile indexFile = new RandomAccessFile(
-                    Utils.getNDXFilePath(tableName, columnsToUpdate.get(i)),
-                    Constants.READ_WRITE_MODE);
-
-                Page.addNewPage(indexFile, Page.PageType.LEAFINDEX, -1, -1);
-
-                BTree bTree = new BTree(indexFile);
-
-                Attribute attr_ = new Attribute(colInfo.dataType, valueToUpdate.get(i));
-
-                bTree.insert(attr_, allRowids);
-              }
-            }
-
-            i++;
-          }
-        }
-      }
+      // the indexes of the updated columns are maintained with the records
+      Utils.UpdateCommand.getRecordsCountTobeUpdated(columnsToUpdate, valueToUpdate, condition, binaryFile, metaData);
 
       Utils.closeIOFile(file);
     } catch (Exception e) {
@@ -275,66 +317,37 @@ public class Query {
         return;
       }
 
-      List<String> valueTokens = Utils.InsertCommand.getParsedValuesTokens(Utils.InsertCommand.getParsedValues(query));
-
-      List<Attribute> attributeToInsert = new ArrayList<>();
-
-      for (ColumnInfo colInfo : metaData.colNameAttributes) {
-        boolean columnProvided = false;
-        int i = 0;
-
-        while (i < columnTokens.size()) {
-          if (Utils.removeLeadingTrailingWhitespaces(columnTokens.get(i)).equals(colInfo.columnName)) {
-            columnProvided = true;
-
-            try {
-              String value = Utils.removeLeadingTrailingWhitespaces(Utils.removeQuotesFromString(valueTokens.get(i)));
-
-              if (Utils.removeLeadingTrailingWhitespaces(valueTokens.get(i)).equals(Constants.NULL_STRING)) {
-                if (!colInfo.isNullable) {
-                  Utils.log(ParseInsert.NULL_INSERTION_ERROR + colInfo.columnName);
-                  return;
-                }
+      List<List<String>> valueTuples = Utils.InsertCommand.getValueTuples(Utils.InsertCommand.getValuesClause(query));
 
-                colInfo.dataType = DataType.NULL;
-                value = value.toUpperCase();
-              }
-
-              Attribute attr = new Attribute(colInfo.dataType, value);
-              attributeToInsert.add(attr);
-
-              break;
-            } catch (Exception e) {
-              Utils.log(ParseInsert.DATA_ERROR_1 + columnTokens.get(i) + ParseInsert.DATA_ERROR_2
-                  + valueTokens.get(i));
-              return;
-            }
-          }
+      if (valueTuples.isEmpty()) {
+        Utils.log(ParseInsert.SYNTAX_ERROR);
+        Utils.log(ParseInsert.EXPECTED_SYNTAX);
+        return;
+      }
 
-          i++;
-        }
+      List<List<Attribute>> rows = new ArrayList<>();
 
-        Utils.InsertCommand.removeExcessTokens(i, columnTokens, valueTokens);
+      for (List<String> valueTokens : valueTuples) {
+        List<Attribute> attributeToInsert = Utils.InsertCommand.getRowAttributes(metaData,
+            new ArrayList<>(columnTokens), valueTokens);
 
-        if (!Utils.InsertCommand.handleIfColNotPresentInQuery(columnProvided, colInfo, attributeToInsert)) {
+        if (attributeToInsert == null) {
           return;
         }
-      }
-
-      RandomAccessFile tableFile = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
 
-      int pageNum = BPlusOneTree.getPageNumForInsertion(tableFile, metaData.rootPageNum);
-
-      Page page = new Page(tableFile, pageNum);
+        rows.add(attributeToInsert);
+      }
 
-      int rowNum = page.addTableRow(tableName, attributeToInsert);
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
 
-      Utils.InsertCommand.updateColumnIndexes(metaData, tableName, attributeToInsert, rowNum);
+      int rowCount = new DavisBaseBinaryFile(tableFile).insertRecords(metaData, rows);
 
       Utils.closeIOFile(tableFile);
 
-      if (rowNum != -1) {
+      if (rowCount == 1) {
         Utils.log(ParseInsert.INSERTION_SUCCESS);
+      } else if (rowCount > 1) {
+        Utils.log(rowCount + ParseInsert.ROWS_INSERTION_SUCCESS);
       }
     } catch (Exception ex) {
       Utils.log(ParseInsert.INSERTION_ERROR);
@@ -353,6 +366,15 @@ public class Query {
       return;
     }
 
+    int pageSizePower = Utils.CreateTable.getPageSizePower(query);
+
+    if (pageSizePower == -1) {
+      Utils.log(ParseCreateTable.PAGE_SIZE_ERROR);
+      return;
+    }
+
+    query = Utils.CreateTable.removePageSizeClause(query);
+
     String tableName = Utils.InsertCommand.getTableNameFromTokens(queryTokens);
 
     if (!Utils.InsertCommand.checkForEmptyTableName(tableName)) {
@@ -367,7 +389,6 @@ public class Query {
       List<String> attributesTokens = Utils.CreateTable.getParsedValuesTokens(query);
 
       short ordinalPosition = 1;
-      String primaryKeyColumn = "";
 
       for (String attribute_ : attributesTokens) {
         List<String> prop = Utils.CreateTable.getTrimmedSpaceSeparatedTokens(attribute_);
@@ -391,7 +412,6 @@ public class Query {
             columnConstraints.isPrimaryKey = true;
             columnConstraints.isUnique = true;
             columnConstraints.isNullable = false;
-            primaryKeyColumn = columnConstraints.columnName;
             i++;
           }
         }
@@ -401,7 +421,7 @@ public class Query {
         attributesListWithProps.add(columnConstraints);
       }
 
-      RandomAccessFile davisbaseTablesCatalog = new RandomAccessFile(
+      PageFile davisbaseTablesCatalog = new PageFile(
           Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_WRITE_MODE);
 
       TableMetaData davisbaseTableMetaData = new TableMetaData(DavisBaseBinaryFile.davisbaseTables);
@@ -413,7 +433,7 @@ public class Query {
       int rowNum = page.addTableRow(DavisBaseBinaryFile.davisbaseTables,
           Arrays.asList(new Attribute(DataType.TEXT, tableName),
               new Attribute(DataType.INT, "0"), new Attribute(DataType.SMALLINT, "0"),
-              new Attribute(DataType.SMALLINT, "0")));
+              new Attribute(DataType.SMALLINT, String.valueOf(PageFile.FIRST_PAGE_NO))));
 
       Utils.closeIOFile(davisbaseTablesCatalog);
 
@@ -422,13 +442,20 @@ public class Query {
         return;
       }
 
-      RandomAccessFile tableFile = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
+      // the zone map is created first, so the table file finds it when its first leaf is added
+      DataType[] columnTypes = new DataType[attributesListWithProps.size()];
+      for (int i = 0; i < columnTypes.length; i++)
+        columnTypes[i] = attributesListWithProps.get(i).dataType;
+      ZoneMap.create(Utils.getZoneMapFilePath(tableName), pageSizePower, columnTypes);
+
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE,
+          pageSizePower);
 
       Page.addNewPage(tableFile, Page.PageType.LEAF, -1, -1);
 
       Utils.closeIOFile(tableFile);
 
-      RandomAccessFile davisbaseColumnsCatalog = new RandomAccessFile(
+      PageFile davisbaseColumnsCatalog = new PageFile(
           Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseColumns), Constants.READ_WRITE_MODE);
 
       TableMetaData davisbaseColumnsMetaData = new TableMetaData(DavisBaseBinaryFile.davisbaseColumns);
@@ -443,9 +470,11 @@ public class Query {
 
       Utils.closeIOFile(davisbaseColumnsCatalog);
 
+      TableMetaData.refreshCatalog(tableName);
+
       Utils.log(tableName + ParseCreateTable.TABLE_CREATION_SUCCESS);
 
-      Utils.CreateTable.createPrimaryKeyIndex(primaryKeyColumn, tableName);
+      Utils.CreateTable.createUniqueIndexes(attributesListWithProps, tableName);
 
     } catch (Exception e) {
       Utils.log(ParseCreateTable.TABLE_CREATION_ERROR);
@@ -459,6 +488,8 @@ public class Query {
 
       parseDelete(deleteTablesQueryStr);
       parseDelete(deleteColumnsQueryStr);
+
+      TableMetaData.refreshCatalog(tableName);
     }
   }
 
@@ -487,16 +518,13 @@ public class Query {
         return;
       }
 
-      RandomAccessFile tableFile = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
 
       BPlusOneTree tree = new BPlusOneTree(tableFile, metaData.rootPageNum, metaData.tableName);
 
       List<TableRecord> deletedRecords = Utils.DeleteCommand.getDeletedRecords(tree, tableFile, tableName, condition);
 
-      if (condition == null) {
-      } else {
-        Utils.DeleteCommand.deleteExistingIndex(metaData, tableName, deletedRecords);
-      }
+      Utils.DeleteCommand.deleteExistingIndex(metaData, tableName, deletedRecords);
 
       Utils.log(ParseDelete.RECORDS_DELETE_SUCCESS + tableName);
 
@@ -507,6 +535,118 @@ public class Query {
     }
   }
 
+  /*
+   * Writes the rows of a table into a new tree of full leaves, returning the
+   * pages of the old one to the free list of the file, builds the Bloom
+   * filters of the table again at its current size from the values of its
+   * rows, dropping the ones of deleted and updated rows, and summarizes every
+   * leaf again for the zone map. Rows keep their rowids, so the indexes that
+   * point to them are left as they are.
+   */
+  public static void parseVacuum(String query) {
+    // Query: VACUUM <table_name>
+
+    List<String> queryTokens = Utils.getSpaceSeparatedTokens(query);
+
+    String tableName = queryTokens.size() > 1 ? queryTokens.get(1) : "";
+
+    TableMetaData metaData = new TableMetaData(tableName);
+
+    if (!Utils.ParseQuery.isTableValid(metaData, tableName)) {
+      return;
+    }
+
+    try {
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_WRITE_MODE);
+
+      Map<Integer, PageFile> bloomFiles = new HashMap<>();
+
+      for (int i = 0; i < metaData.colNameAttributes.size(); i++) {
+        ColumnInfo column = metaData.colNameAttributes.get(i);
+
+        if (!column.hasBloomFilter) {
+          continue;
+        }
+
+        String bloomPath = Utils.getBloomFilePath(tableName, column.columnName);
+        BufferPool.invalidate(bloomPath);
+        new File(bloomPath).delete();
+
+        PageFile bloomFile = new PageFile(bloomPath, Constants.READ_WRITE_MODE, tableFile.pageSizePower);
+        BloomFilter.create(bloomFile, i, column.dataType, tableFile.getRecordCount());
+        bloomFiles.put(i, bloomFile);
+      }
+
+      new DavisBaseBinaryFile(tableFile).rebuildTable(metaData);
+
+      ZoneMap zoneMap = tableFile.getZoneMap();
+
+      BPlusOneTree tree = new BPlusOneTree(tableFile, DavisBaseBinaryFile.getRootPageNo(tableFile),
+          metaData.tableName);
+
+      for (int pageNo : tree.getAllLeaves()) {
+        List<TableRecord> records = new Page(tableFile, pageNo).getPageRecords();
+
+        if (zoneMap != null) {
+          zoneMap.summarize(pageNo, records);
+        }
+
+        for (Map.Entry<Integer, PageFile> bloomFile : bloomFiles.entrySet()) {
+          BloomFilter bloomFilter = new BloomFilter(bloomFile.getValue());
+
+          for (TableRecord record : records) {
+            bloomFilter.add(record.getAttribute(bloomFile.getKey()));
+          }
+        }
+      }
+
+      for (PageFile bloomFile : bloomFiles.values()) {
+        Utils.closeIOFile(bloomFile);
+      }
+
+      Utils.closeIOFile(tableFile);
+
+      Utils.log(tableName + ParseVacuum.VACUUM_SUCCESS);
+    } catch (IOException e) {
+      Utils.log(ParseVacuum.VACUUM_ERROR + tableName);
+      Utils.log(e + "");
+    }
+  }
+
+  /*
+   * Reads every row of a table to record its row count, average row length
+   * and column statistics in the catalog, which the access paths of later
+   * statements on the table are chosen by.
+   */
+  public static void parseAnalyze(String query) {
+    // Query: ANALYZE <table_name>
+
+    List<String> queryTokens = Utils.getSpaceSeparatedTokens(query);
+
+    String tableName = queryTokens.size() > 1 ? queryTokens.get(1) : "";
+
+    TableMetaData metaData = new TableMetaData(tableName);
+
+    if (!Utils.ParseQuery.isTableValid(metaData, tableName)) {
+      return;
+    }
+
+    try {
+      PageFile tableFile = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
+
+      List<ColumnStatistics> statistics = new DavisBaseBinaryFile(tableFile).analyze(metaData);
+
+      Utils.closeIOFile(tableFile);
+
+      metaData.saveStatistics(statistics);
+
+      Utils.log(tableName + ParseAnalyze.ANALYZE_SUCCESS);
+    } catch (Exception e) {
+      Utils.log(ParseAnalyze.ANALYZE_ERROR + tableName);
+      Utils.log(e + "");
+    }
+  }
+
   // method to parse input user query command
   public static void parseUserQuery(String query) {
     List<String> queryTokens = Utils.getSpaceSeparatedTokens(query);
@@ -557,6 +697,16 @@ public class Query {
         Utils.log("");
         break;
 
+      case Constants.VACUUM_STRING:
+        parseVacuum(query);
+        Utils.log("");
+        break;
+
+      case Constants.ANALYZE_STRING:
+        parseAnalyze(query);
+        Utils.log("");
+        break;
+
       case Constants.HELP_STRING:
         Utils.displayHelpScreen();
         Utils.log("");
@@ -3,7 +3,11 @@ package parsing;
 import java.io.File;
 import java.util.Scanner;
 
+import storage.BufferPool;
 import storage.DavisBaseBinaryFile;
+import storage.PageFile;
+import storage.ParallelScan;
+import utils.TableMetaData;
 import utils.Utils;
 import utils.Constants;
 
@@ -20,8 +24,14 @@ public class QueryInput {
     if (!new File(filePath, DavisBaseBinaryFile.davisbaseTables + ".tbl").exists()
         || !new File(filePath, DavisBaseBinaryFile.davisbaseColumns + ".tbl").exists()) {
       DavisBaseBinaryFile.initializeDataStore();
+    } else if (!PageFile.hasValidHeader(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables))
+        || !PageFile.hasValidHeader(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseColumns))) {
+      // the files are left as they are, a store of an older format is never overwritten
+      Utils.log(Constants.RecordOperations.OLD_FORMAT_ERROR);
+      return;
     } else {
       DavisBaseBinaryFile.dataStoreInitialized = true;
+      TableMetaData.loadCatalog();
     }
 
     String userInputQuery;
@@ -31,8 +41,12 @@ public class QueryInput {
       userInputQuery = scanner.next();
       userInputQuery = Utils.replaceNewLinesAndReturn(userInputQuery);
       Query.parseUserQuery(userInputQuery);
+      TableMetaData.flushStatistics();
     }
 
+    BufferPool.flushAll();
+    ParallelScan.shutdown();
+
     Utils.log("");
   }
 
@@ -0,0 +1,208 @@
+package storage;
+
+import java.io.*;
+import java.util.*;
+
+import utils.ColumnInfo;
+import utils.ColumnStatistics;
+import utils.Condition;
+import utils.Constants;
+import utils.Constants.OperatorType;
+import utils.TableMetaData;
+import utils.Utils;
+
+/**
+ * Chooses how the rows passing a condition are read: through the hash index
+ * of an equality, the bitmap indexes of the conditions on their columns, a
+ * rowid range, the tree index of a column, or a scan of every leaf.
+ * <p>
+ * On tables ANALYZE has not seen, the first of those paths the condition
+ * can use is taken, in that order. On analyzed tables each path gets the
+ * estimated number of pages it reads and the cheapest one is taken: the
+ * index pages holding the entries of the rows the statistics say the
+ * condition passes, and the leaves holding those rows, of which rows spread
+ * over a table of P leaves reach P (1 - (1 - 1/P)^rows). With statistics a
+ * tree index also serves <> and NOT BETWEEN, as the two ranges around the
+ * values they exclude, when most of the rows hold those values.
+ * <p>
+ * Which columns have indexes is taken from the catalog, so planning a
+ * query does not look for index files.
+ */
+public class AccessPlanner {
+  // bytes of an index entry, for the number of entries an index page holds
+  private static final int INDEX_ENTRY_SIZE = 16;
+
+  public enum AccessMethod {
+    HASH,
+    BITMAP,
+    ROWID,
+    INDEX,
+    SCAN
+  }
+
+  // a way of reading the rows, with the condition bounding them for HASH, ROWID and INDEX
+  public static class AccessPath {
+    public final AccessMethod method;
+    public final Condition conjunct;
+    final double cost;
+    // paths only taken when statistics show they read fewer pages
+    final boolean needsStatistics;
+
+    AccessPath(AccessMethod method, Condition conjunct, double cost, boolean needsStatistics) {
+      this.method = method;
+      this.conjunct = conjunct;
+      this.cost = cost;
+      this.needsStatistics = needsStatistics;
+    }
+  }
+
+  private final PageFile binaryFile;
+  private final TableMetaData metaData;
+  private final boolean analyzed;
+  private final double rowCount;
+  private final double leafCount;
+  private final double entriesPerIndexPage;
+
+  public AccessPlanner(PageFile file, TableMetaData metaData) throws IOException {
+    this.binaryFile = file;
+    this.metaData = metaData;
+    this.analyzed = metaData.doesTableExists && metaData.isAnalyzed();
+    this.rowCount = Math.max(1, metaData.recordCount);
+    this.leafCount = Math.max(1, file.getPageCount() - PageFile.FIRST_PAGE_NO);
+    this.entriesPerIndexPage = Math.max(2, file.pageSize / INDEX_ENTRY_SIZE);
+  }
+
+  // to choose the path the rows of a condition are read by
+  public AccessPath choose(Condition condition) throws IOException {
+    List<AccessPath> paths = new ArrayList<>();
+
+    for (Condition conjunct : condition.getConjuncts()) {
+      ColumnInfo column = getColumn(conjunct);
+
+      if (column != null && column.hasHashIndex && conjunct.getOperation() == OperatorType.EQUALTO
+          && !conjunct.comparisonValue.equalsIgnoreCase(Constants.NULL_STRING) && isValueValid(conjunct)) {
+        double rows = rowCount * getSelectivity(conjunct);
+        paths.add(new AccessPath(AccessMethod.HASH, conjunct, 1 + rows / entriesPerIndexPage + getFetchCost(rows),
+            false));
+      }
+    }
+
+    // the bitmaps of all the conditions on columns with one are intersected
+    int bitmapCount = 0;
+    double bitmapSelectivity = 1;
+
+    for (Condition conjunct : condition.getConjuncts()) {
+      ColumnInfo column = getColumn(conjunct);
+
+      if (column != null && column.hasBitmapIndex) {
+        bitmapCount++;
+        bitmapSelectivity *= getSelectivity(conjunct);
+      }
+    }
+
+    if (bitmapCount > 0) {
+      double bitmapPages = 1 + rowCount / ((binaryFile.pageSize - 0x10) * 8.0);
+      double rows = rowCount * bitmapSelectivity;
+      paths.add(new AccessPath(AccessMethod.BITMAP, null, bitmapCount * bitmapPages + getFetchCost(rows), false));
+    }
+
+    for (Condition conjunct : condition.getConjuncts()) {
+      if (conjunct.columnOrdinal == Condition.ROWID_ORDINAL) {
+        paths.add(new AccessPath(AccessMethod.ROWID, conjunct,
+            getIndexHeight() + getRowIdSelectivity(conjunct) * leafCount, false));
+        continue;
+      }
+
+      ColumnInfo column = getColumn(conjunct);
+      if (column == null || !column.hasIndex)
+        continue;
+
+      // the values around an excluded one are two ranges of a single column index
+      boolean excludes = conjunct.getOperation() == OperatorType.NOTEQUAL
+          || conjunct.getOperation() == OperatorType.BETWEEN && conjunct.negation;
+
+      if (excludes && (!analyzed || isComposite(conjunct.columnName)))
+        continue;
+
+      double rows = rowCount * getSelectivity(conjunct);
+      paths.add(new AccessPath(AccessMethod.INDEX, conjunct,
+          getIndexHeight() + rows / entriesPerIndexPage + getFetchCost(rows), excludes));
+    }
+
+    AccessPath scan = new AccessPath(AccessMethod.SCAN, null, leafCount, false);
+
+    if (!analyzed) {
+      for (AccessPath path : paths) {
+        if (!path.needsStatistics)
+          return path;
+      }
+
+      return scan;
+    }
+
+    AccessPath best = scan;
+    for (AccessPath path : paths) {
+      if (path.cost < best.cost)
+        best = path;
+    }
+
+    return best;
+  }
+
+  private ColumnInfo getColumn(Condition conjunct) {
+    if (conjunct.columnOrdinal == Condition.ROWID_ORDINAL || metaData.colNameAttributes == null
+        || conjunct.columnOrdinal >= metaData.colNameAttributes.size())
+      return null;
+
+    return metaData.colNameAttributes.get(conjunct.columnOrdinal);
+  }
+
+  // the fraction of the rows a condition passes, all of them for a column without statistics
+  private double getSelectivity(Condition conjunct) {
+    ColumnInfo column = getColumn(conjunct);
+
+    if (!analyzed || column == null || column.statistics == null)
+      return 1;
+
+    return column.statistics.getSelectivity(conjunct);
+  }
+
+  // rowids are taken as spread evenly up to the last one handed out
+  private double getRowIdSelectivity(Condition conjunct) throws IOException {
+    if (!analyzed)
+      return 1;
+
+    ColumnStatistics rowIds = new ColumnStatistics(DataType.INT, (long) rowCount, 0,
+        "1|" + Math.max(1, binaryFile.getLastRowId()));
+    return rowIds.getSelectivity(conjunct);
+  }
+
+  // the leaves read to fetch a number of rows spread over the table
+  private double getFetchCost(double rows) {
+    return leafCount * (1 - Math.pow(1 - 1 / leafCount, rows));
+  }
+
+  private double getIndexHeight() {
+    return Math.max(1, Math.ceil(Math.log(rowCount) / Math.log(entriesPerIndexPage)));
+  }
+
+  private static boolean isValueValid(Condition conjunct) {
+    try {
+      new Attribute(conjunct.dataType, conjunct.comparisonValue);
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private boolean isComposite(String columnName) throws IOException {
+    PageFile indexFile = new PageFile(Utils.getNDXFilePath(metaData.tableName, columnName), Constants.READ_MODE);
+
+    try {
+      return new BTree(indexFile).isComposite();
+    } finally {
+      Utils.closeIOFile(indexFile);
+    }
+  }
+
+}
@@ -16,7 +16,6 @@ public class Attribute {
 
   // the array that is stored in binary file
   public byte[] fieldValuebyte;
-  public Byte[] fieldValueByte;
 
   // the data type
   public DataType dataType;
@@ -96,7 +95,6 @@ public class Attribute {
           break;
       }
 
-      this.fieldValueByte = ByteConvertor.byteToBytes(fieldValuebyte);
     } catch (Exception ex) {
       Utils.log(Constants.AttributeOperations.FORMATTING_ERROR + ex.getMessage());
     }
@@ -165,8 +163,6 @@ public class Attribute {
           break;
       }
 
-      this.fieldValueByte = ByteConvertor.byteToBytes(fieldValuebyte);
- 
     } catch (Exception e) {
       Utils.log(Constants.AttributeOperations.CONVERSION_ERROR + fieldValue + " to " + dataType.toString());
       throw e;
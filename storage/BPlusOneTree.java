@@ -5,88 +5,514 @@ import java.util.*;
 
 import utils.Constants.OperatorType;
 import utils.Utils;
+import utils.ColumnInfo;
 import utils.Condition;
 import utils.Constants;
+import utils.TableMetaData;
+import utils.TableRecord;
 
 public class BPlusOneTree {
 
   // data members
-  RandomAccessFile binaryFile;
+  PageFile binaryFile;
   int rootPageNum;
   String tableName;
+  private TableMetaData metaData;
+
+  // rowids of an index range resolved to leaves at a time, which bounds the memory a wide range takes
+  private static final int ROWIDS_PER_BATCH = 4096;
 
   // constructor
-  public BPlusOneTree(RandomAccessFile file, int rootPageNum, String tableName) {
+  public BPlusOneTree(PageFile file, int rootPageNum, String tableName) {
     this.binaryFile = file;
     this.rootPageNum = rootPageNum;
     this.tableName = tableName;
   }
 
-  // method to fetch all leaf pages
-  public List<Integer> getAllLeaves() throws IOException {
-    List<Integer> leafPages = new ArrayList<>();
-
-    binaryFile.seek((long) rootPageNum * DavisBaseBinaryFile.pageSize);
+  // method to fetch all leaf pages, they are read one at a time while the caller iterates
+  public Iterable<Integer> getAllLeaves() throws IOException {
+    int firstLeafPageNo = getFirstLeafPageNo();
+    return () -> new LeafIterator(firstLeafPageNo);
+  }
 
-    Page.PageType rootPageType = Page.PageType.get(binaryFile.readByte());
+  // method to find the leftmost leaf by following the first child of each interior page
+  private int getFirstLeafPageNo() throws IOException {
+    Page page = new Page(binaryFile, rootPageNum);
 
-    if (rootPageType == Page.PageType.LEAF) {
-      leafPages.add(rootPageNum);
-    } else {
-      addLeaves(rootPageNum, leafPages);
+    while (page.pageType == Page.PageType.INTERIOR) {
+      if (page.leftChildren.isEmpty())
+        page = new Page(binaryFile, page.rightPage);
+      else
+        page = new Page(binaryFile, page.leftChildren.get(0).leftChildPageNo);
     }
 
-    return leafPages;
+    return page.pageNo;
   }
 
-  // method to add leaf pages
-  private void addLeaves(int interiorPageNo, List<Integer> leafPages) throws IOException {
-    Page interiorPage = new Page(binaryFile, interiorPageNo);
+  // method to fetch every page of the tree, interior pages before their children
+  public List<Integer> getAllPages() throws IOException {
+    List<Integer> pages = new ArrayList<>();
+    Deque<Integer> pending = new ArrayDeque<>();
+    pending.push(rootPageNum);
+
+    while (!pending.isEmpty()) {
+      Page page = new Page(binaryFile, pending.pop());
+      pages.add(page.pageNo);
 
-    for (Page.TableInteriorRecord leftPage : interiorPage.leftChildren) {
-      if (Page.getPageType(binaryFile, leftPage.leftChildPageNo) == Page.PageType.LEAF) {
-        if (!leafPages.contains(leftPage.leftChildPageNo))
-          leafPages.add(leftPage.leftChildPageNo);
-      } else {
-        addLeaves(leftPage.leftChildPageNo, leafPages);
+      if (page.pageType == Page.PageType.INTERIOR) {
+        for (Page.TableInteriorRecord child : page.leftChildren)
+          pending.push(child.leftChildPageNo);
+
+        if (page.rightPage != -1)
+          pending.push(page.rightPage);
       }
     }
 
-    if (Page.getPageType(binaryFile, interiorPage.rightPage) == Page.PageType.LEAF) {
-      if (!leafPages.contains(interiorPage.rightPage))
-        leafPages.add(interiorPage.rightPage);
-    } else {
-      addLeaves(interiorPage.rightPage, leafPages);
+    return pages;
+  }
+
+  // walks the leaves left to right through the right page link of each leaf
+  private class LeafIterator implements Iterator<Integer> {
+    private int nextPageNo;
+
+    LeafIterator(int firstLeafPageNo) {
+      this.nextPageNo = firstLeafPageNo;
+    }
+
+    public boolean hasNext() {
+      return nextPageNo != -1;
+    }
+
+    public Integer next() {
+      if (nextPageNo == -1)
+        throw new NoSuchElementException();
+
+      int pageNo = nextPageNo;
+
+      try {
+        nextPageNo = Page.getRightPageNo(binaryFile, pageNo);
+      } catch (IOException e) {
+        Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+        nextPageNo = -1;
+      }
+
+      return pageNo;
     }
   }
 
-  // method to fetch all leaf pages based on condition
-  public List<Integer> getAllLeaves(Condition condition) throws IOException {
-    if (condition == null || condition.getOperation() == OperatorType.NOTEQUAL
-        || !(new File(Utils.getNDXFilePath(tableName, condition.columnName)).exists())) {
+  // method to fetch all leaf pages based on condition, read by the access path the planner chooses for it
+  public Iterable<Integer> getAllLeaves(Condition condition) throws IOException {
+    if (condition == null) {
+      return getAllLeaves();
+    }
+
+    AccessPlanner.AccessPath path = new AccessPlanner(binaryFile, getMetaData()).choose(condition);
 
+    switch (path.method) {
+      case HASH:
+        List<Integer> hashLeaves = getHashLeaves(path.conjunct);
+        if (hashLeaves != null) {
+          return hashLeaves;
+        }
+        break;
+
+      case BITMAP:
+        // the conditions on columns with a bitmap index are combined as bitmaps before any table page is read
+        int[] rowIds = getBitmapRowIds(condition).toArray();
+        return getLeavesForRowIds(rowIds, rowIds.length);
+
+      case ROWID:
+        return getRowIdLeaves(path.conjunct);
+
+      case INDEX:
+        return getIndexLeaves(path.conjunct.columnName, condition);
+
+      default:
+        break;
+    }
+
+    ZoneMap zoneMap = binaryFile.getZoneMap();
+
+    if (zoneMap == null) {
       return getAllLeaves();
-    } else {
+    }
 
-      RandomAccessFile indexFile = new RandomAccessFile(
-          Utils.getNDXFilePath(tableName, condition.columnName), Constants.READ_MODE);
-      BTree bTree = new BTree(indexFile);
+    // the leaves whose summaries rule the condition out are passed over
+    int firstLeafPageNo = getFirstLeafPageNo();
+    return () -> new ZoneLeafIterator(firstLeafPageNo, zoneMap, condition);
+  }
+
+  // walks the leaves like LeafIterator, skipping the ones the zone map shows cannot match the condition
+  private class ZoneLeafIterator implements Iterator<Integer> {
+    private final LeafIterator leaves;
+    private final ZoneMap zoneMap;
+    private final Condition condition;
+    private int nextPageNo = -1;
+
+    ZoneLeafIterator(int firstLeafPageNo, ZoneMap zoneMap, Condition condition) {
+      this.leaves = new LeafIterator(firstLeafPageNo);
+      this.zoneMap = zoneMap;
+      this.condition = condition;
+      advance();
+    }
+
+    private void advance() {
+      nextPageNo = -1;
+
+      while (leaves.hasNext()) {
+        int pageNo = leaves.next();
+
+        try {
+          // a leaf without a summary is summarized the first time it is read
+          if (!zoneMap.hasSummary(pageNo))
+            zoneMap.summarize(pageNo, new Page(binaryFile, pageNo).getPageRecords());
+
+          if (!zoneMap.mayMatch(pageNo, condition))
+            continue;
+        } catch (IOException e) {
+          Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+        }
+
+        nextPageNo = pageNo;
+        return;
+      }
+    }
+
+    public boolean hasNext() {
+      return nextPageNo != -1;
+    }
+
+    public Integer next() {
+      if (nextPageNo == -1)
+        throw new NoSuchElementException();
+
+      int pageNo = nextPageNo;
+      advance();
+      return pageNo;
+    }
+  }
+
+  // the catalog entry of the table, which tells which of its columns have indexes
+  private TableMetaData getMetaData() {
+    if (metaData == null) {
+      metaData = new TableMetaData(tableName);
+    }
+
+    return metaData;
+  }
+
+  // method to get the column of a condition, null for the rowid or a table missing from the catalog
+  private ColumnInfo getColumn(Condition condition) {
+    List<ColumnInfo> columns = getMetaData().colNameAttributes;
+
+    if (condition.columnOrdinal == Condition.ROWID_ORDINAL || columns == null
+        || condition.columnOrdinal >= columns.size()) {
+      return null;
+    }
+
+    return columns.get(condition.columnOrdinal);
+  }
+
+  // method to check if the index of the condition column can bound the rows to read
+  private boolean canUseIndex(Condition condition) {
+    ColumnInfo column = condition == null ? null : getColumn(condition);
+
+    return column != null && column.hasIndex
+        && condition.getOperation() != OperatorType.NOTEQUAL
+        && !(condition.getOperation() == OperatorType.BETWEEN && condition.negation);
+  }
+
+  /*
+   * method to read the records matching a condition from the index of one
+   * of its columns alone, when its keys hold every column the caller reads
+   * and checks. Returns null when the table has to be read instead.
+   */
+  public List<TableRecord> getCoveredRecords(Condition condition, Collection<Integer> columnOrdinals,
+      int columnCount) throws IOException {
+    if (condition == null) {
+      return null;
+    }
 
-      List<Integer> row_IDs = bTree.getRowIdValue(condition);
-      Set<Integer> hash_Set = new HashSet<>();
+    Condition indexCondition = null;
 
-      for (int row_ID : row_IDs) {
-        hash_Set.add(getPageNum(row_ID, new Page(binaryFile, rootPageNum)));
+    for (Condition conjunct : condition.getConjuncts()) {
+      if (canUseIndex(conjunct)) {
+        indexCondition = conjunct;
+        break;
       }
+    }
+
+    if (indexCondition == null) {
+      return null;
+    }
+
+    List<Integer> conditionOrdinals = new ArrayList<>();
+    for (Condition conjunct : condition.getConjuncts()) {
+      conditionOrdinals.add(conjunct.columnOrdinal);
+    }
+
+    PageFile indexFile = new PageFile(Utils.getNDXFilePath(tableName, indexCondition.columnName), Constants.READ_MODE);
 
+    try {
+      BTree bTree = new BTree(indexFile);
+
+      if (!bTree.isComposite() || !bTree.covers(columnOrdinals) || !bTree.covers(conditionOrdinals)) {
+        return null;
+      }
+
+      return bTree.getRecords(condition, columnCount);
+    } finally {
       Utils.closeIOFile(indexFile);
+    }
+  }
+
+  /*
+   * method to fetch the leaf pages holding the rowids the index of a column
+   * returns for a condition. The rowids are taken from the index range
+   * ROWIDS_PER_BATCH at a time, and each batch is sorted so one pass down the
+   * tree resolves it, so a wide range is read while it streams rather than
+   * listed first. A leaf is handed back once, with the first batch that
+   * needs it, and its matching rows of later batches are read with it.
+   */
+  private Iterable<Integer> getIndexLeaves(String columnName, Condition condition) {
+    return () -> new IndexLeafIterator(columnName, condition);
+  }
 
-      return Arrays.asList(hash_Set.toArray(new Integer[0]));
+  // walks the leaves of the rowids of an index range batch by batch, in file order within each batch
+  private class IndexLeafIterator implements Iterator<Integer>, Closeable {
+    private PageFile indexFile;
+    private Iterator<Integer> rowIds = Collections.emptyIterator();
+    private final int[] batch = new int[ROWIDS_PER_BATCH];
+    // page numbers of the leaves already handed back
+    private final BitSet returnedLeaves = new BitSet();
+    private Iterator<Integer> leaves = Collections.emptyIterator();
+
+    IndexLeafIterator(String columnName, Condition condition) {
+      try {
+        indexFile = new PageFile(Utils.getNDXFilePath(tableName, columnName), Constants.READ_MODE);
+        rowIds = new BTree(indexFile).getRowIds(condition).iterator();
+      } catch (IOException e) {
+        Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+      }
     }
+
+    public boolean hasNext() {
+      while (!leaves.hasNext()) {
+        if (!rowIds.hasNext()) {
+          close();
+          return false;
+        }
+
+        int count = 0;
+        while (count < batch.length && rowIds.hasNext())
+          batch[count++] = rowIds.next();
+
+        Arrays.sort(batch, 0, count);
+
+        List<Integer> batchLeaves = new ArrayList<>();
+        for (int pageNo : getLeavesForRowIds(batch, count)) {
+          if (!returnedLeaves.get(pageNo)) {
+            returnedLeaves.set(pageNo);
+            batchLeaves.add(pageNo);
+          }
+        }
+
+        leaves = batchLeaves.iterator();
+      }
+
+      return true;
+    }
+
+    public Integer next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+
+      return leaves.next();
+    }
+
+    // the index file is closed once the range is read, or by a caller that stops before that
+    public void close() {
+      if (indexFile == null)
+        return;
+
+      try {
+        Utils.closeIOFile(indexFile);
+      } catch (IOException e) {
+        Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+      }
+      indexFile = null;
+    }
+  }
+
+  // method to fetch the leaf pages holding the first count of the sorted rowids
+  private List<Integer> getLeavesForRowIds(int[] rowIds, int count) {
+    // a sorted set hands the leaves back once each in file order
+    Set<Integer> leafPages = new TreeSet<>();
+    if (count > 0)
+      addLeavesForRowIds(rootPageNum, rowIds, 0, count, leafPages);
+
+    return new ArrayList<>(leafPages);
+  }
+
+  // method to fetch the leaf pages holding the rowids the hash index of an equality returns, null without one
+  private List<Integer> getHashLeaves(Condition condition) throws IOException {
+    ColumnInfo column = getColumn(condition);
+
+    if (column == null || !column.hasHashIndex || condition.getOperation() != OperatorType.EQUALTO
+        || condition.comparisonValue.equalsIgnoreCase(Constants.NULL_STRING)) {
+      return null;
+    }
+
+    Attribute value;
+    try {
+      value = new Attribute(condition.dataType, condition.comparisonValue);
+    } catch (Exception e) {
+      return null;
+    }
+
+    PageFile hashFile = new PageFile(Utils.getHashFilePath(tableName, condition.columnName), Constants.READ_MODE);
+    int[] rowIds;
+
+    try {
+      rowIds = new HashIndex(hashFile).getRowIds(value).stream().mapToInt(Integer::intValue).toArray();
+    } finally {
+      Utils.closeIOFile(hashFile);
+    }
+
+    Arrays.sort(rowIds);
+    return getLeavesForRowIds(rowIds, rowIds.length);
+  }
+
+  // method to intersect the rowids the bitmap indexes return for the conditions on their columns, null without one
+  private RowIdBitmap getBitmapRowIds(Condition condition) throws IOException {
+    RowIdBitmap rowIds = null;
+
+    for (Condition conjunct : condition.getConjuncts()) {
+      ColumnInfo column = getColumn(conjunct);
+
+      if (column == null || !column.hasBitmapIndex) {
+        continue;
+      }
+
+      PageFile bitmapFile = new PageFile(Utils.getBitmapFilePath(tableName, conjunct.columnName), Constants.READ_MODE);
+
+      try {
+        RowIdBitmap conjunctRowIds = new BitmapIndex(bitmapFile).getRowIds(conjunct);
+
+        if (rowIds == null)
+          rowIds = conjunctRowIds;
+        else
+          rowIds.and(conjunctRowIds);
+      } finally {
+        Utils.closeIOFile(bitmapFile);
+      }
+    }
+
+    return rowIds;
+  }
+
+  // method to hand each child the run of sorted rowids below its key, descending once per page
+  private void addLeavesForRowIds(int pageNo, int[] rowIds, int from, int to, Set<Integer> leafPages) {
+    Page page = new Page(binaryFile, pageNo);
+
+    if (page.pageType == Page.PageType.LEAF) {
+      leafPages.add(pageNo);
+      return;
+    }
+
+    for (Page.TableInteriorRecord leftPage : page.leftChildren) {
+      int childTo = from;
+      while (childTo < to && rowIds[childTo] < leftPage.rowId)
+        childTo++;
+
+      if (childTo > from)
+        addLeavesForRowIds(leftPage.leftChildPageNo, rowIds, from, childTo, leafPages);
+
+      from = childTo;
+      if (from == to)
+        return;
+    }
+
+    addLeavesForRowIds(page.rightPage, rowIds, from, to, leafPages);
+  }
+
+  // method to fetch the leaf pages that can hold rowids matching a rowid condition
+  private List<Integer> getRowIdLeaves(Condition condition) throws IOException {
+    long low = Integer.MIN_VALUE;
+    long high = Integer.MAX_VALUE;
+    long value = Long.parseLong(condition.comparisonValue);
+
+    switch (condition.getOperation()) {
+      case EQUALTO:
+        low = value;
+        high = value;
+        break;
+
+      case LESSTHAN:
+        high = value - 1;
+        break;
+
+      case LESSTHANOREQUAL:
+        high = value;
+        break;
+
+      case GREATERTHAN:
+        low = value + 1;
+        break;
+
+      case GREATERTHANOREQUAL:
+        low = value;
+        break;
+
+      case BETWEEN:
+        if (!condition.negation) {
+          low = value;
+          high = Long.parseLong(condition.upperValue);
+        }
+        break;
+
+      default:
+        break;
+    }
+
+    Set<Integer> leafPages = new LinkedHashSet<>();
+
+    if (low <= high) {
+      addLeavesInRange(rootPageNum, low, high, leafPages);
+    }
+
+    return new ArrayList<>(leafPages);
+  }
+
+  // method to descend only into the children whose rowids overlap low to high, left to right
+  private void addLeavesInRange(int pageNo, long low, long high, Set<Integer> leafPages) throws IOException {
+    Page page = new Page(binaryFile, pageNo);
+
+    if (page.pageType == Page.PageType.LEAF) {
+      leafPages.add(pageNo);
+      return;
+    }
+
+    // each left child holds the rowids from the previous key up to its own key
+    long childLow = Long.MIN_VALUE;
+
+    for (Page.TableInteriorRecord leftPage : page.leftChildren) {
+      if (childLow <= high && leftPage.rowId > low) {
+        addLeavesInRange(leftPage.leftChildPageNo, low, high, leafPages);
+      }
+
+      childLow = leftPage.rowId;
+
+      if (childLow > high) {
+        return;
+      }
+    }
+
+    addLeavesInRange(page.rightPage, low, high, leafPages);
   }
 
   // method to get page number for insertion
-  public static int getPageNumForInsertion(RandomAccessFile file, int rootPageNum) {
+  public static int getPageNumForInsertion(PageFile file, int rootPageNum) {
     Page rootPage = new Page(file, rootPageNum);
     if (rootPage.pageType != Page.PageType.LEAF && rootPage.pageType != Page.PageType.LEAFINDEX) {
       return getPageNumForInsertion(file, rootPage.rightPage);
@@ -100,45 +526,30 @@ public class BPlusOneTree {
     if (page.pageType == Page.PageType.LEAF)
       return page.pageNo;
 
-    int index = binarySearchForValue(page.leftChildren, row_ID, 0, page.noOfCells - 1);
+    // each left child holds the rowids below its key, the right page holds the rest
+    int index = binarySearchForValue(page.leftChildren, row_ID);
 
-    if (row_ID < page.leftChildren.get(index).rowId) {
+    if (index < page.leftChildren.size())
       return getPageNum(row_ID, new Page(binaryFile, page.leftChildren.get(index).leftChildPageNo));
-    } else {
-      if (index + 1 < page.leftChildren.size())
-        return getPageNum(row_ID, new Page(binaryFile, page.leftChildren.get(index + 1).leftChildPageNo));
-      else
-        return getPageNum(row_ID, new Page(binaryFile, page.rightPage));
-    }
+    else
+      return getPageNum(row_ID, new Page(binaryFile, page.rightPage));
   }
 
-  // method to binary search
-  private int binarySearchForValue(List<Page.TableInteriorRecord> vals, int searchVal, int begin, int end) {
-    if (end - begin <= 2) {
-      int i;
+  // method to binary search for the first key above the rowid
+  private int binarySearchForValue(List<Page.TableInteriorRecord> vals, int searchVal) {
+    int begin = 0;
+    int end = vals.size();
 
-      for (i = begin; i < end; i++) {
-        if (vals.get(i).rowId < searchVal) {
+    while (begin < end) {
+      int mid = (begin + end) >>> 1;
 
-        } else {
-          break;
-        }
-      }
-
-      return i;
-    } else {
-      int mid = (end - begin) / 2 + begin;
-
-      if (vals.get(mid).rowId == searchVal) {
-        return mid;
-      }
-
-      if (vals.get(mid).rowId < searchVal) {
-        return binarySearchForValue(vals, searchVal, mid + 1, end);
-      } else {
-        return binarySearchForValue(vals, searchVal, begin, mid - 1);
-      }
+      if (vals.get(mid).rowId <= searchVal)
+        begin = mid + 1;
+      else
+        end = mid;
     }
+
+    return begin;
   }
 
 }
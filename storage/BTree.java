@@ -1,220 +1,619 @@
 package storage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import utils.Constants;
 import utils.Utils;
 import utils.Condition;
-import utils.Constants.OperatorType;
+import utils.TableRecord;
 
 /**
  * This class contains the logic to the data structure
  * to store pages and indexes
+ * <p>
+ * An index is keyed on the column it is named after. An index on several
+ * columns, or created with INCLUDE columns, keys each row on the indexed
+ * column followed by the other ones, so it holds their values and can answer
+ * a query that only reads those columns without the table. Equality
+ * conditions on the leading key columns and a condition on the next one
+ * search a single range of keys.
  */
 public class BTree {
-  Page root;
-  RandomAccessFile binaryFile;
+  PageFile binaryFile;
+  // ordinals and types of the table columns of the key, read from the file header
+  private int[] keyColumns;
+  private DataType[] keyTypes;
 
-  public BTree(RandomAccessFile file) {
+  public BTree(PageFile file) {
     this.binaryFile = file;
-    this.root = new Page(binaryFile, DavisBaseBinaryFile.getRootPageNo(binaryFile));
-  }
-
-  // to get the closest page num to the current page
-  private int getClosestPageNumber(Page page, String value) {
-    if (page.pageType == Page.PageType.LEAFINDEX) {
-      return page.pageNo;
-    } else {
-      if (Condition.compare(value, page.getIndexValues().get(0), page.indexValueDataType) < 0) {
-        return getClosestPageNumber(
-            new Page(binaryFile, page.indexValuePointer.get(page.getIndexValues().get(0)).leftPageNo),
-            value);
-      } else if (Condition.compare(value, page.getIndexValues().get(page.getIndexValues().size() - 1),
-          page.indexValueDataType) > 0) {
-        return getClosestPageNumber(new Page(binaryFile, page.rightPage), value);
-      } else {
-
-        String closestValue = binarySearchForValue(page.getIndexValues().toArray(new String[0]), value, 0,
-            page.getIndexValues().size() - 1, page.indexValueDataType);
-
-        int i = page.getIndexValues().indexOf(closestValue);
-        List<String> indexValues = page.getIndexValues();
-
-        if (closestValue.compareTo(value) < 0 && i + 1 < indexValues.size()) {
-          return page.indexValuePointer.get(indexValues.get(i + 1)).leftPageNo;
-        } else if (closestValue.compareTo(value) > 0) {
-          return page.indexValuePointer.get(closestValue).leftPageNo;
-        } else {
-          return page.pageNo;
-        }
-      }
+  }
+
+  private void loadKeyColumns() throws IOException {
+    if (keyColumns == null) {
+      keyColumns = binaryFile.getIndexColumnOrdinals();
+      keyTypes = binaryFile.getIndexColumnTypes();
     }
   }
 
-  // to get the row ids of all the pages that matches the condition
-  public List<Integer> getRowIdValue(Condition condition) {
-    List<Integer> rowIds = new ArrayList<>();
+  // to check if the keys hold the values of more than the indexed column
+  public boolean isComposite() throws IOException {
+    loadKeyColumns();
+    return keyColumns.length > 1;
+  }
+
+  // to check if the keys hold the values of all the given table columns
+  public boolean covers(Collection<Integer> columnOrdinals) throws IOException {
+    loadKeyColumns();
+
+    for (int columnOrdinal : columnOrdinals) {
+      boolean covered = false;
+      for (int keyColumn : keyColumns)
+        covered |= keyColumn == columnOrdinal;
+
+      if (!covered)
+        return false;
+    }
+
+    return true;
+  }
+
+  // to get the index value of a table row
+  public Attribute getKey(List<Attribute> row) throws IOException {
+    loadKeyColumns();
+
+    if (keyColumns.length == 1)
+      return row.get(keyColumns[0]);
+
+    List<Attribute> values = new ArrayList<>();
+    for (int keyColumn : keyColumns)
+      values.add(row.get(keyColumn));
 
-    Page page = new Page(binaryFile, getClosestPageNumber(root, condition.comparisonValue));
+    return new Attribute(DataType.TEXT, IndexKey.encodeComposite(values));
+  }
+
+  public Attribute getKey(TableRecord record) throws IOException {
+    loadKeyColumns();
 
-    String[] indexValues = page.getIndexValues().toArray(new String[0]);
+    List<Attribute> row = new ArrayList<>(Collections.nCopies(record.getColumnCount(), (Attribute) null));
+    for (int keyColumn : keyColumns)
+      row.set(keyColumn, record.getAttribute(keyColumn));
 
-    OperatorType operType = condition.getOperation();
+    return getKey(row);
+  }
 
-    for (String indexValue : indexValues) {
-      if (condition.checkCondition(page.indexValuePointer.get(indexValue).getIndexNode().indexValue.fieldValue))
-        rowIds.addAll(page.indexValuePointer.get(indexValue).rowIds);
+  // to get the page holding the value or the leaf it belongs in, binary searching the cells of each page in place
+  private int getClosestPageNumber(Attribute value) throws IOException {
+    byte[] key = IndexKey.encode(value);
+    boolean nullKey = value.dataType == DataType.NULL;
+    // the root is read for every search, a split of the root moves it
+    int pageNo = DavisBaseBinaryFile.getRootPageNo(binaryFile);
+
+    while (true) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        boolean interior = Page.PageType.get(image.get(0)) == Page.PageType.INTERIORINDEX;
+
+        if (!interior)
+          return pageNo;
+
+        int cellIndex = searchCells(image, true, key, nullKey);
+        if (cellIndex >= 0)
+          return pageNo;
+
+        // the left child of the first greater value, or the right page after the last one
+        pageNo = getChildPageNo(image, -cellIndex - 1);
+      } finally {
+        BufferPool.unpin(frame);
+      }
     }
+  }
+
+  private static int getCellStart(ByteBuffer image, int cellIndex) {
+    return Short.toUnsignedInt(image.getShort(0x10 + cellIndex * 2));
+  }
+
+  // binary search of the cell pointers, which are kept in key order, like Arrays.binarySearch
+  private static int searchCells(ByteBuffer image, boolean interior, byte[] key, boolean nullKey) {
+    int low = 0;
+    int high = image.getShort(2) - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compareCell(image, getCellStart(image, mid) + (interior ? 4 : 0), key, nullKey);
 
-    if (operType == OperatorType.LESSTHAN || operType == OperatorType.LESSTHANOREQUAL) {
-      if (page.pageType == Page.PageType.LEAFINDEX)
-        rowIds.addAll(getAllRowIdsLeftOf(page.parentPageNo, indexValues[0]));
+      if (comparison > 0)
+        low = mid + 1;
+      else if (comparison < 0)
+        high = mid - 1;
       else
-        rowIds.addAll(getAllRowIdsLeftOf(page.pageNo, condition.comparisonValue));
+        return mid;
     }
 
-    ;
+    return -(low + 1);
+  }
 
-    if (operType == OperatorType.GREATERTHAN || operType == OperatorType.GREATERTHANOREQUAL) {
-      if (page.pageType == Page.PageType.LEAFINDEX)
-        rowIds.addAll(getAllRightRowIds(page.parentPageNo, indexValues[indexValues.length - 1]));
-      else
-        rowIds.addAll(getAllRightRowIds(page.pageNo, condition.comparisonValue));
+  // to compare a key with the key of the index cell whose payload starts at position
+  private static int compareCell(ByteBuffer image, int position, byte[] key, boolean nullKey) {
+    byte typeCode = image.get(position + 4);
+    int comparison = IndexKey.compare(key, image, position + 5, DataType.getLength(typeCode));
+    if (comparison != 0)
+      return comparison;
+
+    return Boolean.compare(!nullKey, DataType.get(typeCode) != DataType.NULL);
+  }
+
+  // to get the row ids stored with the value, reading only the cell that holds it
+  private List<Integer> getRowIds(Attribute value) throws IOException {
+    List<Integer> rowIds = new ArrayList<>();
+    byte[] key = IndexKey.encode(value);
+    boolean nullKey = value.dataType == DataType.NULL;
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, getClosestPageNumber(value));
+    try {
+      ByteBuffer image = frame.buffer;
+      boolean interior = Page.PageType.get(image.get(0)) == Page.PageType.INTERIORINDEX;
+
+      int cellIndex = searchCells(image, interior, key, nullKey);
+      if (cellIndex < 0)
+        return rowIds;
+
+      int position = getCellStart(image, cellIndex) + (interior ? 4 : 0);
+      int noOfRowIds = Short.toUnsignedInt(image.getShort(position + 2));
+      position += 5 + DataType.getLength(image.get(position + 4));
+
+      for (int i = 0; i < noOfRowIds; i++)
+        rowIds.add(image.getInt(position + i * 4));
+    } finally {
+      BufferPool.unpin(frame);
     }
 
     return rowIds;
   }
 
-  // to get all row ids left of the current page
-  private List<Integer> getAllRowIdsLeftOf(int pageNo, String indexValue) {
+  // to get a condition constant as an index value, null when it does not convert to the column type
+  private static Attribute getConditionValue(DataType dataType, String value) {
+    try {
+      if (value.equalsIgnoreCase(Constants.NULL_STRING))
+        return new Attribute(DataType.NULL, value);
+
+      return new Attribute(dataType, value);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  // to get the row ids of all the pages that matches the condition
+  public List<Integer> getRowIdValue(Condition condition) {
     List<Integer> rowIds = new ArrayList<>();
 
-    if (pageNo == -1) {
-      return rowIds;
+    for (int rowId : getRowIds(condition))
+      rowIds.add(rowId);
+
+    return rowIds;
+  }
+
+  /*
+   * Streams the row ids of the values that can match the condition, in key
+   * order. Equality reads the matching cell only. Ranges walk the tree in
+   * order from the start key and stop after the stop key, so the caller can
+   * use the first row ids before the rest of the index is read. Conditions
+   * the index cannot bound yield every row id and are checked by the caller.
+   */
+  public Iterable<Integer> getRowIds(Condition condition) {
+    try {
+      loadKeyColumns();
+    } catch (IOException e) {
+      Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+      return Collections.emptyList();
     }
 
-    Page page = new Page(this.binaryFile, pageNo);
-    List<String> indexValues = Arrays.asList(page.getIndexValues().toArray(new String[0]));
+    // the condition on the indexed column bounds the keys, the other ones are checked by the caller
+    Condition keyCondition = condition.getConjunct(keyColumns[0]);
+    if (keyCondition == null)
+      return getRowIds(null, false, null, false);
+
+    Attribute value = getConditionValue(keyCondition.dataType, keyCondition.comparisonValue);
 
-    for (int i = 0; i < indexValues.size()
-        && Condition.compare(indexValues.get(i), indexValue, page.indexValueDataType) < 0; i++) {
+    if (value == null)
+      return Collections.emptyList();
 
-      rowIds.addAll(page.indexValuePointer.get(indexValues.get(i)).getIndexNode().rowids);
-      addChildRowIds(page.indexValuePointer.get(indexValues.get(i)).leftPageNo, rowIds);
+    if (keyColumns.length > 1)
+      return () -> getCompositeRange(condition);
 
+    switch (keyCondition.getOperation()) {
+      case EQUALTO:
+        try {
+          return getRowIds(value);
+        } catch (IOException e) {
+          Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+          return Collections.emptyList();
+        }
+
+      case LESSTHAN:
+        return getRowIds(null, false, value, false);
+
+      case LESSTHANOREQUAL:
+        return getRowIds(null, false, value, true);
+
+      case GREATERTHAN:
+        return getRowIds(value, false, null, false);
+
+      case GREATERTHANOREQUAL:
+        return getRowIds(value, true, null, false);
+
+      case NOTEQUAL:
+        // the keys below and above the excluded value
+        if (value.dataType != DataType.NULL)
+          return concat(getRowIds(null, false, value, false), getRowIds(value, false, null, false));
+        return getRowIds(null, false, null, false);
+
+      case BETWEEN:
+        Attribute upper = getConditionValue(keyCondition.dataType, keyCondition.upperValue);
+        if (!keyCondition.negation && upper != null)
+          return getRowIds(value, true, upper, true);
+        // the keys below and above the excluded range
+        if (upper != null && upper.dataType != DataType.NULL && value.dataType != DataType.NULL)
+          return concat(getRowIds(null, false, value, false), getRowIds(upper, false, null, false));
+        return getRowIds(null, false, null, false);
+
+      default:
+        return getRowIds(null, false, null, false);
     }
+  }
 
-    if (page.indexValuePointer.get(indexValue) != null)
-      addChildRowIds(page.indexValuePointer.get(indexValue).leftPageNo, rowIds);
+  // to stream the row ids of one range after those of another
+  private static Iterable<Integer> concat(Iterable<Integer> first, Iterable<Integer> second) {
+    return () -> new Iterator<Integer>() {
+      private Iterator<Integer> current = first.iterator();
+      private boolean inSecond;
+
+      @Override
+      public boolean hasNext() {
+        if (!current.hasNext() && !inSecond) {
+          current = second.iterator();
+          inSecond = true;
+        }
+        return current.hasNext();
+      }
 
-    return rowIds;
+      @Override
+      public Integer next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return current.next();
+      }
+    };
   }
 
-  // to get all the row ids
-  private List<Integer> getAllRightRowIds(int pageNo, String indexValue) {
-    List<Integer> rowIds = new ArrayList<>();
+  // to stream the row ids of the values between low and high, a null bound leaves that side open
+  public Iterable<Integer> getRowIds(Attribute low, boolean lowInclusive, Attribute high, boolean highInclusive) {
+    // a NULL constant does not bound the keys
+    byte[] start = low != null && low.dataType != DataType.NULL ? IndexKey.encode(low) : null;
+    byte[] stop = high != null && high.dataType != DataType.NULL ? IndexKey.encode(high) : null;
+
+    return () -> new RangeIterator(start, lowInclusive, stop, highInclusive);
+  }
 
-    if (pageNo == -1) {
-      return rowIds;
+  /*
+   * The keys of a composite index that start with some values of its leading
+   * columns lie between the encoded values and the encoded values followed
+   * by FF, which no following column value starts with. Equality conditions
+   * on the leading key columns extend that prefix and the condition on the
+   * next key column bounds the keys within it.
+   */
+  private RangeIterator getCompositeRange(Condition condition) {
+    ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+    int column = 0;
+    Condition keyCondition = condition.getConjunct(keyColumns[0]);
+    Attribute value = keyCondition == null ? null
+        : getConditionValue(keyCondition.dataType, keyCondition.comparisonValue);
+
+    while (column < keyColumns.length - 1 && isEquality(keyCondition, value)) {
+      IndexKey.encodeComponent(value, prefix);
+      keyCondition = condition.getConjunct(keyColumns[++column]);
+      value = keyCondition == null ? null : getConditionValue(keyCondition.dataType, keyCondition.comparisonValue);
     }
 
-    Page page = new Page(this.binaryFile, pageNo);
-    List<String> indexValues = Arrays.asList(page.getIndexValues().toArray(new String[0]));
+    return getCompositeRange(prefix.toByteArray(), keyCondition, value);
+  }
+
+  private static boolean isEquality(Condition keyCondition, Attribute value) {
+    return keyCondition != null && value != null && keyCondition.getOperation() == Constants.OperatorType.EQUALTO;
+  }
+
+  // to bound the keys sharing the prefix by a condition on the key column that follows it
+  private RangeIterator getCompositeRange(byte[] base, Condition keyCondition, Attribute value) {
+    byte[] start = base.length == 0 ? null : base;
+    byte[] stop = base.length == 0 ? null : getKeyPrefixEnd(base);
+
+    // a NULL constant does not bound a range
+    if (value == null
+        || value.dataType == DataType.NULL && keyCondition.getOperation() != Constants.OperatorType.EQUALTO)
+      return new RangeIterator(start, true, stop, false);
+
+    byte[] prefix = getKeyPrefix(base, value);
+    byte[] afterPrefix = getKeyPrefixEnd(prefix);
+
+    switch (keyCondition.getOperation()) {
+      case EQUALTO:
+        return new RangeIterator(prefix, true, afterPrefix, false);
+
+      case LESSTHAN:
+        return new RangeIterator(start, true, prefix, false);
+
+      case LESSTHANOREQUAL:
+        return new RangeIterator(start, true, afterPrefix, false);
+
+      case GREATERTHAN:
+        return new RangeIterator(afterPrefix, true, stop, false);
 
-    int indexValSize = indexValues.size() - 1;
-    for (int i = indexValSize; i >= 0
-        && Condition.compare(indexValues.get(i), indexValue, page.indexValueDataType) > 0; i--) {
-      rowIds.addAll(page.indexValuePointer.get(indexValues.get(i)).getIndexNode().rowids);
-      addChildRowIds(page.rightPage, rowIds);
+      case GREATERTHANOREQUAL:
+        return new RangeIterator(prefix, true, stop, false);
+
+      case BETWEEN:
+        Attribute upper = getConditionValue(keyCondition.dataType, keyCondition.upperValue);
+        if (!keyCondition.negation && upper != null && upper.dataType != DataType.NULL)
+          return new RangeIterator(prefix, true, getKeyPrefixEnd(getKeyPrefix(base, upper)), false);
+        return new RangeIterator(start, true, stop, false);
+
+      default:
+        return new RangeIterator(start, true, stop, false);
     }
+  }
+
+  // the encoded key column values the composite keys of their rows start with
+  private static byte[] getKeyPrefix(byte[] base, Attribute value) {
+    ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+    prefix.write(base, 0, base.length);
+    IndexKey.encodeComponent(value, prefix);
+    return prefix.toByteArray();
+  }
+
+  // a key above every key starting with the prefix
+  private static byte[] getKeyPrefixEnd(byte[] prefix) {
+    byte[] end = Arrays.copyOf(prefix, prefix.length + 1);
+    end[prefix.length] = (byte) 0xFF;
+    return end;
+  }
+
+  /*
+   * Reads the rows matching the condition from the keys of a composite index
+   * alone, in key order. Each record holds the key columns and NULL for the
+   * other columns of the table, so it must only be read for key columns.
+   */
+  public List<TableRecord> getRecords(Condition condition, int columnCount) throws IOException {
+    loadKeyColumns();
+    List<TableRecord> records = new ArrayList<>();
+
+    Condition keyCondition = condition.getConjunct(keyColumns[0]);
+    if (keyCondition != null && getConditionValue(keyCondition.dataType, keyCondition.comparisonValue) == null)
+      return records;
+
+    RangeIterator rowIds = getCompositeRange(condition);
+    byte[] cellKey = null;
+    List<Attribute> row = null;
+
+    while (rowIds.hasNext()) {
+      int rowId = rowIds.next();
+
+      // the rows of a cell share its key
+      if (rowIds.cellKey != cellKey) {
+        cellKey = rowIds.cellKey;
+        row = new ArrayList<>(Collections.nCopies(columnCount, new Attribute(DataType.NULL, new byte[0])));
+
+        List<Attribute> values = IndexKey.decodeComposite(cellKey, keyTypes);
+        for (int i = 0; i < keyColumns.length; i++)
+          row.set(keyColumns[i], values.get(i));
+      }
 
-    if (page.indexValuePointer.get(indexValue) != null) {
-      addChildRowIds(page.indexValuePointer.get(indexValue).rightPageNo, rowIds);
+      ByteBuffer image = ByteBuffer.allocate(CellCodec.tableCellSize(row));
+      CellCodec.writeTableCell(image, 0, rowId, row);
+      records.add(new TableRecord((short) 0, rowId, 0, image));
     }
 
-    return rowIds;
+    return records;
   }
 
-  // fetches and adds all the row ids of its children
-  private void addChildRowIds(int pageNo, List<Integer> rowIds) {
-    if (pageNo == -1) {
-      return;
+  // walks the cells of the tree in key order, each interior cell after the subtree on its left
+  private class RangeIterator implements Iterator<Integer> {
+    private final byte[] highKey;
+    private final boolean highInclusive;
+    // pages being walked from the root down, each with the index of its next cell
+    private final Deque<int[]> pages = new ArrayDeque<>();
+    private int[] cellRowIds = new int[0];
+    private int rowIdPosition;
+    private boolean finished;
+    // the encoded key of the cell the row ids are read from
+    byte[] cellKey;
+
+    RangeIterator(byte[] lowKey, boolean lowInclusive, byte[] highKey, boolean highInclusive) {
+      this.highKey = highKey;
+      this.highInclusive = highInclusive;
+
+      try {
+        seek(lowKey, lowInclusive);
+      } catch (IOException e) {
+        Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+        finished = true;
+      }
     }
 
-    Page page = new Page(this.binaryFile, pageNo);
+    public boolean hasNext() {
+      try {
+        while (rowIdPosition == cellRowIds.length && !finished)
+          readNextCell();
+      } catch (IOException e) {
+        Utils.log(Constants.PageOperations.PAGE_READ_ERROR + e.getMessage());
+        finished = true;
+      }
+
+      return rowIdPosition < cellRowIds.length;
+    }
+
+    public Integer next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+
+      return cellRowIds[rowIdPosition++];
+    }
 
-    // loop through all page index records
-    for (Page.IndexRecord record : page.indexValuePointer.values()) {
-      rowIds.addAll(record.rowIds);
-      if (page.pageType == Page.PageType.INTERIORINDEX) {
-        addChildRowIds(record.leftPageNo, rowIds);
-        addChildRowIds(record.rightPageNo, rowIds);
+    // to descend to the first cell not below the low key
+    private void seek(byte[] lowKey, boolean lowInclusive) throws IOException {
+      int pageNo = DavisBaseBinaryFile.getRootPageNo(binaryFile);
+
+      while (pageNo != -1) {
+        BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+        try {
+          ByteBuffer image = frame.buffer;
+          boolean interior = Page.PageType.get(image.get(0)) == Page.PageType.INTERIORINDEX;
+          int cellIndex = 0;
+          boolean found = false;
+
+          if (lowKey != null) {
+            cellIndex = searchCells(image, interior, lowKey, false);
+            if (cellIndex >= 0) {
+              found = lowInclusive;
+              cellIndex = lowInclusive ? cellIndex : cellIndex + 1;
+            } else {
+              cellIndex = -cellIndex - 1;
+            }
+          }
+
+          pages.push(new int[] { pageNo, cellIndex });
+
+          // the subtree left of a matching cell only holds smaller values
+          if (!interior || found)
+            return;
+
+          pageNo = getChildPageNo(image, cellIndex);
+        } finally {
+          BufferPool.unpin(frame);
+        }
       }
     }
-  }
 
-  // to insert the page index node
-  public void insert(Attribute attribute, List<Integer> rowIds) {
-    try {
-      int pageNo = getClosestPageNumber(root, attribute.fieldValue);
-      Page page = new Page(binaryFile, pageNo);
-      page.addIndex(new Page.IndexRecord.IndexNode(attribute, rowIds));
-    } catch (IOException e) {
-      Utils.log(Constants.PageOperations.ATTRIBUTE_INSERT_ERROR + attribute.fieldValue);
+    // to descend to the smallest value of a subtree
+    private void pushFirstCell(int pageNo) throws IOException {
+      while (pageNo != -1) {
+        pages.push(new int[] { pageNo, 0 });
+
+        BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+        try {
+          if (Page.PageType.get(frame.buffer.get(0)) != Page.PageType.INTERIORINDEX)
+            return;
+
+          pageNo = getChildPageNo(frame.buffer, 0);
+        } finally {
+          BufferPool.unpin(frame);
+        }
+      }
     }
+
+    private void readNextCell() throws IOException {
+      int[] page = pages.peek();
+      if (page == null) {
+        finished = true;
+        return;
+      }
+
+      int childPageNo = -1;
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, page[0]);
+      try {
+        ByteBuffer image = frame.buffer;
+        boolean interior = Page.PageType.get(image.get(0)) == Page.PageType.INTERIORINDEX;
+
+        if (page[1] >= image.getShort(2)) {
+          pages.pop();
+          return;
+        }
+
+        int position = getCellStart(image, page[1]) + (interior ? 4 : 0);
+
+        if (highKey != null) {
+          int comparison = compareCell(image, position, highKey, false);
+          if (comparison < 0 || (comparison == 0 && !highInclusive)) {
+            finished = true;
+            return;
+          }
+        }
+
+        int noOfRowIds = Short.toUnsignedInt(image.getShort(position + 2));
+        int keyLength = DataType.getLength(image.get(position + 4));
+        int rowIdStart = position + 5 + keyLength;
+
+        cellKey = new byte[keyLength];
+        image.get(position + 5, cellKey);
+
+        cellRowIds = new int[noOfRowIds];
+        for (int i = 0; i < noOfRowIds; i++)
+          cellRowIds[i] = image.getInt(rowIdStart + i * 4);
+        rowIdPosition = 0;
+
+        page[1]++;
+        if (interior)
+          childPageNo = getChildPageNo(image, page[1]);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+
+      // the values between this cell and the next one
+      if (childPageNo != -1)
+        pushFirstCell(childPageNo);
+    }
+  }
+
+  // the left child of a cell of an interior page, or its right page after the last cell
+  private static int getChildPageNo(ByteBuffer image, int cellIndex) {
+    if (cellIndex >= image.getShort(2))
+      return image.getInt(6);
+
+    return image.getInt(getCellStart(image, cellIndex));
+  }
+
+  // to insert the page index node, failing without a change when its cell would outgrow a page
+  public void insert(Attribute attribute, List<Integer> rowIds) throws IOException {
+    Page page = new Page(binaryFile, getClosestPageNumber(attribute));
+    page.addIndex(new Page.IndexRecord.IndexNode(attribute, rowIds));
   }
 
-  public void insert(Attribute attribute, int rowId) {
+  public void insert(Attribute attribute, int rowId) throws IOException {
     insert(attribute, List.of(rowId));
   }
 
+  // to check if the cell of the value can take the row ids besides the ones it holds without outgrowing a page
+  public boolean canInsert(Attribute attribute, Collection<Integer> rowIds) throws IOException {
+    Set<Integer> cellRowIds = new HashSet<>(getRowIds(attribute));
+    cellRowIds.addAll(rowIds);
+    return CellCodec.indexCellFits(binaryFile.pageSize, attribute, cellRowIds.size());
+  }
+
   // to delete index for page with this attribute and row id
   public void delete(Attribute attribute, int rowId) {
     try {
-      int pageNo = getClosestPageNumber(root, attribute.fieldValue);
-      Page page = new Page(binaryFile, pageNo);
+      Page page = new Page(binaryFile, getClosestPageNumber(attribute));
 
-      Page.IndexRecord.IndexNode tempNode = page.indexValuePointer.get(attribute.fieldValue).getIndexNode();
+      Page.IndexRecord record = page.indexValuePointer.get(new Page.IndexRecord.IndexNode(attribute, null).getPointerKey());
+
+      // nothing to delete when the value is not indexed
+      if (record == null)
+        return;
+
+      Page.IndexRecord.IndexNode tempNode = record.getIndexNode();
 
       tempNode.rowids.remove((Integer) rowId);
 
       page.DeleteIndex(tempNode);
 
-      if (tempNode.rowids.size() != 0) {
-        page.addIndex(tempNode);
+      // a value of an interior page stays as a separator for its left child even without row ids
+      if (tempNode.rowids.size() != 0 || page.pageType == Page.PageType.INTERIORINDEX) {
+        page.addIndex(tempNode, record.leftPageNo);
       }
     } catch (IOException e) {
       Utils.log(Constants.PageOperations.ATTRIBUTE_DELETE_ERROR + attribute.fieldValue);
     }
   }
 
-  private String binarySearchForValue(String[] values, String searchValue, int start, int end, DataType dataType) {
-    if (end - start <= 3) {
-      int i;
-      i = start;
-      while (i < end) {
-        if (Condition.compare(values[i], searchValue, dataType) < 0) {
-        } else {
-          break;
-        }
-        i++;
-      }
-
-      return values[i];
-    } else {
-      int mid = (end - start) / 2 + start;
-
-      if (values[mid].equals(searchValue)) {
-        return values[mid];
-      }
-
-      if (Condition.compare(values[mid], searchValue, dataType) < 0) {
-        return binarySearchForValue(values, searchValue, mid + 1, end, dataType);
-      } else {
-        return binarySearchForValue(values, searchValue, start, mid - 1, dataType);
-      }
-    }
-  }
-
 }
@@ -0,0 +1,491 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import utils.Condition;
+import utils.Constants;
+import utils.TableRecord;
+import utils.Utils;
+
+/**
+ * An index created USING BITMAP, which keeps a compressed bitmap of the
+ * rowids holding each distinct value of its column. It suits columns with
+ * few values, whose rows would otherwise make index cells with very long
+ * rowid lists.
+ * <p>
+ * The root page of the file is the first page of the value directory.
+ * Directory pages are chained through their right page pointer and hold an
+ * entry per value, its key length (2), the first and last pages of its
+ * bitmap (4 each) and its key, the composite encoding of IndexKey. The
+ * bitmap of a value is a chain of chunk pages in rowid order, each holding
+ * one chunk of a RowIdBitmap: its kind, cardinality and chunk number,
+ * followed by its sorted low bits or its bitmap words.
+ * <p>
+ * A condition is answered by testing each value of the directory against it
+ * and combining the bitmaps of the values that pass, so the rowids of a WHERE
+ * clause are known before any table page is read.
+ */
+public class BitmapIndex {
+  // offsets of the directory page fields
+  private static final int DIRECTORY_ENTRY_COUNT = 2;
+  private static final int DIRECTORY_END = 4;
+  private static final int ENTRY_HEADER_SIZE = 10;
+
+  // offsets of the chunk page fields
+  private static final int CHUNK_KIND = 1;
+  private static final int CHUNK_CARDINALITY = 2;
+  private static final int CHUNK_NUMBER = 10;
+
+  private static final int NEXT_PAGE = 6;
+  private static final int FIRST_ENTRY = 0x10;
+
+  private static final byte ARRAY_CHUNK = 0;
+  private static final byte BITMAP_CHUNK = 1;
+
+  PageFile binaryFile;
+  private final int chunkBits;
+  private final int arrayLimit;
+
+  public BitmapIndex(PageFile file) {
+    this.binaryFile = file;
+    this.chunkBits = getChunkBits(file.pageSize);
+    this.arrayLimit = (1 << chunkBits) / 16;
+  }
+
+  // the largest chunk whose bitmap fits in a page, with at most 2^15 rowids so array values fit in 2 bytes
+  private static int getChunkBits(int pageSize) {
+    return Math.min(15, 31 - Integer.numberOfLeadingZeros((pageSize - FIRST_ENTRY) * 8));
+  }
+
+  // to write the empty directory of a new bitmap file keyed on one column
+  public static void create(PageFile file, int columnOrdinal, DataType dataType) throws IOException {
+    file.setIndexColumns(new int[] { columnOrdinal }, new DataType[] { dataType });
+
+    int directoryPageNo = file.allocatePage();
+    addPage(file, directoryPageNo, Page.PageType.BITMAPDIRECTORY);
+    file.setRootPageNo(directoryPageNo);
+  }
+
+  // to add a row to the bitmap of its value
+  public void insert(Attribute value, int rowId) throws IOException {
+    byte[] key = IndexKey.encodeComposite(List.of(value));
+    int[] entry = findEntry(key);
+
+    if (entry == null) {
+      entry = addEntry(key);
+      if (entry == null)
+        return;
+    }
+
+    int chunkNumber = rowId >>> chunkBits;
+    int low = rowId & ((1 << chunkBits) - 1);
+    int firstPageNo = getEntryField(entry, 2);
+    int lastPageNo = getEntryField(entry, 6);
+
+    // rowids are handed out in order, so most rows go to the last chunk of the bitmap
+    if (lastPageNo != -1 && getPageField(lastPageNo, CHUNK_NUMBER) == chunkNumber) {
+      addToChunk(lastPageNo, low);
+      return;
+    }
+
+    if (lastPageNo == -1 || getPageField(lastPageNo, CHUNK_NUMBER) < chunkNumber) {
+      int pageNo = addChunkPage(chunkNumber, low, -1);
+
+      if (lastPageNo == -1)
+        setEntryField(entry, 2, pageNo);
+      else
+        setPageField(lastPageNo, NEXT_PAGE, pageNo);
+      setEntryField(entry, 6, pageNo);
+      return;
+    }
+
+    int previousPageNo = -1;
+    int pageNo = firstPageNo;
+
+    while (getPageField(pageNo, CHUNK_NUMBER) < chunkNumber) {
+      previousPageNo = pageNo;
+      pageNo = getPageField(pageNo, NEXT_PAGE);
+    }
+
+    if (getPageField(pageNo, CHUNK_NUMBER) == chunkNumber) {
+      addToChunk(pageNo, low);
+      return;
+    }
+
+    int newPageNo = addChunkPage(chunkNumber, low, pageNo);
+
+    if (previousPageNo == -1)
+      setEntryField(entry, 2, newPageNo);
+    else
+      setPageField(previousPageNo, NEXT_PAGE, newPageNo);
+  }
+
+  // to remove a row from the bitmap of its value, dropping the chunks and values left empty
+  public void delete(Attribute value, int rowId) throws IOException {
+    int[] entry = findEntry(IndexKey.encodeComposite(List.of(value)));
+
+    if (entry == null)
+      return;
+
+    int chunkNumber = rowId >>> chunkBits;
+    int previousPageNo = -1;
+    int pageNo = getEntryField(entry, 2);
+
+    while (pageNo != -1 && getPageField(pageNo, CHUNK_NUMBER) < chunkNumber) {
+      previousPageNo = pageNo;
+      pageNo = getPageField(pageNo, NEXT_PAGE);
+    }
+
+    if (pageNo == -1 || getPageField(pageNo, CHUNK_NUMBER) != chunkNumber)
+      return;
+
+    if (removeFromChunk(pageNo, rowId & ((1 << chunkBits) - 1)) > 0)
+      return;
+
+    int nextPageNo = getPageField(pageNo, NEXT_PAGE);
+
+    if (previousPageNo == -1)
+      setEntryField(entry, 2, nextPageNo);
+    else
+      setPageField(previousPageNo, NEXT_PAGE, nextPageNo);
+
+    if (getEntryField(entry, 6) == pageNo)
+      setEntryField(entry, 6, previousPageNo);
+
+    binaryFile.freePage(pageNo);
+
+    if (nextPageNo == -1 && previousPageNo == -1)
+      removeEntry(entry);
+  }
+
+  /*
+   * Returns the rowids of the values that pass a condition on the indexed
+   * column, tested on a row holding the value alone, so a negated condition
+   * or <> takes the values it does not exclude like a scan of the table.
+   */
+  public RowIdBitmap getRowIds(Condition condition) throws IOException {
+    int columnOrdinal = binaryFile.getIndexColumnOrdinals()[0];
+    DataType[] keyTypes = binaryFile.getIndexColumnTypes();
+    RowIdBitmap rowIds = new RowIdBitmap(chunkBits);
+
+    for (int directoryPageNo = binaryFile.getRootPageNo(); directoryPageNo != -1;) {
+      List<Integer> firstPages = new ArrayList<>();
+
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, directoryPageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = Short.toUnsignedInt(image.getShort(DIRECTORY_END));
+
+        for (int position = FIRST_ENTRY; position < end; position += ENTRY_HEADER_SIZE + image.getShort(position)) {
+          byte[] key = new byte[image.getShort(position)];
+          image.get(position + ENTRY_HEADER_SIZE, key);
+
+          List<Attribute> row = new ArrayList<>(
+              Collections.nCopies(columnOrdinal + 1, new Attribute(DataType.NULL, new byte[0])));
+          row.set(columnOrdinal, IndexKey.decodeComposite(key, keyTypes).get(0));
+
+          ByteBuffer record = ByteBuffer.allocate(CellCodec.tableCellSize(row));
+          CellCodec.writeTableCell(record, 0, 0, row);
+
+          if (condition.checkColumnCondition(new TableRecord((short) 0, 0, 0, record)))
+            firstPages.add(image.getInt(position + 2));
+        }
+
+        directoryPageNo = image.getInt(NEXT_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+
+      for (int firstPageNo : firstPages)
+        rowIds.or(readBitmap(firstPageNo));
+    }
+
+    return rowIds;
+  }
+
+  // to read the chunks of the bitmap of a value
+  private RowIdBitmap readBitmap(int pageNo) throws IOException {
+    RowIdBitmap bitmap = new RowIdBitmap(chunkBits);
+
+    while (pageNo != -1) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        bitmap.addChunk(image.getInt(CHUNK_NUMBER), image.get(CHUNK_KIND) == BITMAP_CHUNK,
+            Short.toUnsignedInt(image.getShort(CHUNK_CARDINALITY)), image, FIRST_ENTRY);
+        pageNo = image.getInt(NEXT_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    return bitmap;
+  }
+
+  // to find the directory entry of a key, as its page number and offset
+  private int[] findEntry(byte[] key) throws IOException {
+    for (int pageNo = binaryFile.getRootPageNo(); pageNo != -1;) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = Short.toUnsignedInt(image.getShort(DIRECTORY_END));
+
+        for (int position = FIRST_ENTRY; position < end; position += ENTRY_HEADER_SIZE + image.getShort(position)) {
+          if (image.getShort(position) == key.length
+              && IndexKey.compare(key, image, position + ENTRY_HEADER_SIZE, key.length) == 0)
+            return new int[] { pageNo, position };
+        }
+
+        pageNo = image.getInt(NEXT_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    return null;
+  }
+
+  // to add an entry without pages for a new value, chaining a directory page when the others are full
+  private int[] addEntry(byte[] key) throws IOException {
+    int entrySize = ENTRY_HEADER_SIZE + key.length;
+
+    if (FIRST_ENTRY + entrySize >= binaryFile.pageSize) {
+      Utils.log(Constants.PageOperations.PAGE_OVERFLOW_ERROR);
+      return null;
+    }
+
+    int pageNo = binaryFile.getRootPageNo();
+
+    while (true) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = Short.toUnsignedInt(image.getShort(DIRECTORY_END));
+
+        if (end + entrySize < binaryFile.pageSize) {
+          image.putShort(end, (short) key.length);
+          image.putInt(end + 2, -1);
+          image.putInt(end + 6, -1);
+          image.put(end + ENTRY_HEADER_SIZE, key);
+          image.putShort(DIRECTORY_ENTRY_COUNT, (short) (image.getShort(DIRECTORY_ENTRY_COUNT) + 1));
+          image.putShort(DIRECTORY_END, (short) (end + entrySize));
+          BufferPool.markDirty(frame, binaryFile, 0, end + entrySize);
+          return new int[] { pageNo, end };
+        }
+
+        int nextPageNo = image.getInt(NEXT_PAGE);
+
+        if (nextPageNo == -1) {
+          nextPageNo = binaryFile.allocatePage();
+          addPage(binaryFile, nextPageNo, Page.PageType.BITMAPDIRECTORY);
+          image.putInt(NEXT_PAGE, nextPageNo);
+          BufferPool.markDirty(frame, binaryFile, NEXT_PAGE, NEXT_PAGE + Integer.BYTES);
+        }
+
+        pageNo = nextPageNo;
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+  }
+
+  // to remove the entry of a value whose bitmap is empty, moving the entries after it down
+  private void removeEntry(int[] entry) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, entry[0]);
+    try {
+      ByteBuffer image = frame.buffer;
+      int end = Short.toUnsignedInt(image.getShort(DIRECTORY_END));
+      int size = ENTRY_HEADER_SIZE + image.getShort(entry[1]);
+
+      System.arraycopy(frame.data, entry[1] + size, frame.data, entry[1], end - entry[1] - size);
+      image.putShort(DIRECTORY_ENTRY_COUNT, (short) (image.getShort(DIRECTORY_ENTRY_COUNT) - 1));
+      image.putShort(DIRECTORY_END, (short) (end - size));
+      BufferPool.markDirty(frame, binaryFile, 0, end);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  private int getEntryField(int[] entry, int offset) throws IOException {
+    return getPageField(entry[0], entry[1] + offset);
+  }
+
+  private void setEntryField(int[] entry, int offset, int value) throws IOException {
+    setPageField(entry[0], entry[1] + offset, value);
+  }
+
+  private int getPageField(int pageNo, int offset) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      return frame.buffer.getInt(offset);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  private void setPageField(int pageNo, int offset, int value) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      frame.buffer.putInt(offset, value);
+      BufferPool.markDirty(frame, binaryFile, offset, offset + Integer.BYTES);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to start the chunk of a rowid on a new page chained before the given one
+  private int addChunkPage(int chunkNumber, int low, int nextPageNo) throws IOException {
+    int pageNo = binaryFile.allocatePage();
+    addPage(binaryFile, pageNo, Page.PageType.BITMAPCHUNK);
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      image.putInt(NEXT_PAGE, nextPageNo);
+      image.putInt(CHUNK_NUMBER, chunkNumber);
+      image.putShort(CHUNK_CARDINALITY, (short) 1);
+      image.putChar(FIRST_ENTRY, (char) low);
+      BufferPool.markDirty(frame, binaryFile);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+
+    return pageNo;
+  }
+
+  // to add the low bits of a rowid to a chunk, turning an array that grows past the bitmap size into a bitmap
+  private void addToChunk(int pageNo, int low) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      int cardinality = Short.toUnsignedInt(image.getShort(CHUNK_CARDINALITY));
+
+      if (image.get(CHUNK_KIND) == BITMAP_CHUNK) {
+        int wordOffset = FIRST_ENTRY + (low >>> 6) * 8;
+        long word = image.getLong(wordOffset);
+        if ((word & 1L << low) != 0)
+          return;
+
+        image.putLong(wordOffset, word | 1L << low);
+      } else {
+        int index = findArrayValue(image, cardinality, low);
+        if (index >= 0)
+          return;
+
+        index = -index - 1;
+
+        if (cardinality == arrayLimit) {
+          char[] values = readArray(image, cardinality);
+          Arrays.fill(frame.data, FIRST_ENTRY, FIRST_ENTRY + (1 << chunkBits) / 8, (byte) 0);
+          for (char value : values)
+            setBit(image, value);
+          setBit(image, low);
+          image.put(CHUNK_KIND, BITMAP_CHUNK);
+        } else {
+          int offset = FIRST_ENTRY + index * 2;
+          System.arraycopy(frame.data, offset, frame.data, offset + 2, (cardinality - index) * 2);
+          image.putChar(offset, (char) low);
+        }
+      }
+
+      image.putShort(CHUNK_CARDINALITY, (short) (cardinality + 1));
+      BufferPool.markDirty(frame, binaryFile);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to remove the low bits of a rowid from a chunk, turning a bitmap back into an array once it fits, returns the cardinality left
+  private int removeFromChunk(int pageNo, int low) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      int cardinality = Short.toUnsignedInt(image.getShort(CHUNK_CARDINALITY));
+
+      if (image.get(CHUNK_KIND) == BITMAP_CHUNK) {
+        int wordOffset = FIRST_ENTRY + (low >>> 6) * 8;
+        long word = image.getLong(wordOffset);
+        if ((word & 1L << low) == 0)
+          return cardinality;
+
+        image.putLong(wordOffset, word & ~(1L << low));
+        cardinality--;
+
+        if (cardinality <= arrayLimit) {
+          RowIdBitmap chunk = new RowIdBitmap(chunkBits);
+          chunk.addChunk(0, true, cardinality, image, FIRST_ENTRY);
+          int[] values = chunk.toArray();
+
+          Arrays.fill(frame.data, FIRST_ENTRY, FIRST_ENTRY + (1 << chunkBits) / 8, (byte) 0);
+          for (int i = 0; i < values.length; i++)
+            image.putChar(FIRST_ENTRY + i * 2, (char) values[i]);
+          image.put(CHUNK_KIND, ARRAY_CHUNK);
+        }
+      } else {
+        int index = findArrayValue(image, cardinality, low);
+        if (index < 0)
+          return cardinality;
+
+        int offset = FIRST_ENTRY + index * 2;
+        System.arraycopy(frame.data, offset + 2, frame.data, offset, (cardinality - index - 1) * 2);
+        cardinality--;
+      }
+
+      image.putShort(CHUNK_CARDINALITY, (short) cardinality);
+      BufferPool.markDirty(frame, binaryFile);
+      return cardinality;
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // binary search of the sorted array of a chunk, returns -(insertion point) - 1 when the value is missing
+  private static int findArrayValue(ByteBuffer image, int cardinality, int low) {
+    int from = 0;
+    int to = cardinality - 1;
+
+    while (from <= to) {
+      int middle = (from + to) >>> 1;
+      int value = image.getChar(FIRST_ENTRY + middle * 2);
+
+      if (value < low)
+        from = middle + 1;
+      else if (value > low)
+        to = middle - 1;
+      else
+        return middle;
+    }
+
+    return -from - 1;
+  }
+
+  private static char[] readArray(ByteBuffer image, int cardinality) {
+    char[] values = new char[cardinality];
+    for (int i = 0; i < cardinality; i++)
+      values[i] = image.getChar(FIRST_ENTRY + i * 2);
+    return values;
+  }
+
+  private static void setBit(ByteBuffer image, int low) {
+    int wordOffset = FIRST_ENTRY + (low >>> 6) * 8;
+    image.putLong(wordOffset, image.getLong(wordOffset) | 1L << low);
+  }
+
+  // to write an empty directory or chunk page over a page of the file
+  private static void addPage(PageFile file, int pageNo, Page.PageType pageType) throws IOException {
+    BufferPool.Frame frame = BufferPool.pinNew(file, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      image.put(0, pageType.getValue());
+      image.putInt(NEXT_PAGE, -1);
+      if (pageType == Page.PageType.BITMAPDIRECTORY)
+        image.putShort(DIRECTORY_END, (short) FIRST_ENTRY);
+      BufferPool.markDirty(frame, file);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+}
@@ -0,0 +1,156 @@
+package storage;
+
+import java.io.*;
+
+/**
+ * A Bloom filter created USING BLOOM on a column, kept in a file next to
+ * the table. It tells an equality condition that a value is not in the
+ * column by testing a few bits, so the table is only scanned for values
+ * that may be there.
+ * <p>
+ * The bits fill the pages of the file from FIRST_PAGE_NO, each page holding
+ * them after its page type, and their number follows from the page count.
+ * A value sets HASH_COUNT bits chosen by double hashing of its key, which
+ * is the index key of the value with TEXT values lowered like the
+ * conditions compare them. The file is sized for BITS_PER_KEY bits per row
+ * of the table when it is built, for about one false positive in a hundred.
+ * <p>
+ * Bits are never cleared, so deleted and updated values stay in the filter
+ * and rows inserted past its size make it less selective, until VACUUM
+ * builds it again for the rows of the table.
+ */
+public class BloomFilter {
+  private static final int BITS_PER_KEY = 10;
+  private static final int HASH_COUNT = 7;
+  private static final int MIN_KEYS = 1024;
+  private static final int FIRST_BYTE = 0x10;
+
+  PageFile binaryFile;
+  private final int bitsPerPage;
+
+  public BloomFilter(PageFile file) {
+    this.binaryFile = file;
+    this.bitsPerPage = (file.pageSize - FIRST_BYTE) * 8;
+  }
+
+  // to write the empty bit pages of a new filter file on one column, sized for a number of rows
+  public static void create(PageFile file, int columnOrdinal, DataType dataType, int expectedKeys)
+      throws IOException {
+    file.setIndexColumns(new int[] { columnOrdinal }, new DataType[] { dataType });
+
+    long bitCount = (long) Math.max(expectedKeys, MIN_KEYS) * BITS_PER_KEY;
+    int bitsPerPage = (file.pageSize - FIRST_BYTE) * 8;
+    long pageCount = (bitCount + bitsPerPage - 1) / bitsPerPage;
+
+    for (long i = 0; i < pageCount; i++) {
+      int pageNo = file.allocatePage();
+      BufferPool.Frame frame = BufferPool.pinNew(file, pageNo);
+      try {
+        frame.buffer.put(0, Page.PageType.BLOOMFILTER.getValue());
+        BufferPool.markDirty(frame, file);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+  }
+
+  // to set the bits of a value written to the column
+  public void add(Attribute value) throws IOException {
+    byte[] key = getKey(value);
+
+    if (key == null)
+      return;
+
+    long bitCount = getBitCount();
+    long hash = hash(key);
+
+    for (int i = 0; i < HASH_COUNT; i++) {
+      long bit = getBit(hash, i, bitCount);
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, getPageNo(bit));
+      try {
+        int offset = getByteOffset(bit);
+        frame.buffer.put(offset, (byte) (frame.buffer.get(offset) | 1 << (bit & 7)));
+        BufferPool.markDirty(frame, binaryFile, offset, offset + 1);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    binaryFile.adjustRecordCount(1);
+  }
+
+  // to check if a value may be in the column, false only when it is not
+  public boolean mightContain(Attribute value) throws IOException {
+    byte[] key = getKey(value);
+    long bitCount = getBitCount();
+
+    if (key == null || bitCount == 0)
+      return true;
+
+    long hash = hash(key);
+
+    for (int i = 0; i < HASH_COUNT; i++) {
+      long bit = getBit(hash, i, bitCount);
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, getPageNo(bit));
+      try {
+        if ((frame.buffer.get(getByteOffset(bit)) & 1 << (bit & 7)) == 0)
+          return false;
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    return true;
+  }
+
+  // the key of a value, TEXT being lowered as the conditions compare it, null for NULL
+  static byte[] getKey(Attribute value) {
+    if (value.dataType == DataType.NULL)
+      return null;
+
+    if (value.dataType != DataType.TEXT)
+      return IndexKey.encode(value);
+
+    byte[] key = value.fieldValuebyte.clone();
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] >= 'A' && key[i] <= 'Z')
+        key[i] += 'a' - 'A';
+    }
+
+    return key;
+  }
+
+  // FNV-1a over the key bytes followed by the murmur finalizer, whose halves give the two hashes
+  static long hash(byte[] key) {
+    long h = 0xCBF29CE484222325L;
+    for (byte b : key)
+      h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  // the i-th bit of a value, by double hashing with an odd step
+  private static long getBit(long hash, int i, long bitCount) {
+    long h1 = hash & 0xFFFFFFFFL;
+    long h2 = hash >>> 32 | 1;
+    return Math.floorMod(h1 + i * h2, bitCount);
+  }
+
+  private long getBitCount() throws IOException {
+    return (long) (binaryFile.getPageCount() - PageFile.FIRST_PAGE_NO) * bitsPerPage;
+  }
+
+  private int getPageNo(long bit) {
+    return (int) (PageFile.FIRST_PAGE_NO + bit / bitsPerPage);
+  }
+
+  private int getByteOffset(long bit) {
+    return (int) (FIRST_BYTE + bit % bitsPerPage / 8);
+  }
+
+}
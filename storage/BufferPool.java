@@ -0,0 +1,257 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import utils.Constants;
+import utils.Utils;
+
+/**
+ * Process wide cache of page images shared by all table and index files.
+ * Frames are keyed by (file path, page number) and stay pinned while a page
+ * is decoded or modified. Modified frames are written back when they are
+ * evicted or when the handle that dirtied them is closed. Victims are
+ * chosen with the CLOCK algorithm.
+ * <p>
+ * The pool is shared by the tasks of parallel scans. A missing page is read
+ * after its frame is pinned and marked as loading, outside the lock of the
+ * pool, so reads of different pages proceed together and a task asking
+ * for a page being read waits for it.
+ */
+public class BufferPool {
+
+  // a cached page image
+  public static class Frame {
+    String path;
+    int pageNo;
+    byte[] data;
+    public ByteBuffer buffer;
+    int pinCount;
+    boolean referenced;
+    boolean dirty;
+    // set while the page is read into the frame outside the lock
+    boolean loading;
+    int dirtyFrom;
+    int dirtyTo;
+    PageFile owner;
+  }
+
+  // key of a cached page
+  private static class FrameKey {
+    final String path;
+    final int pageNo;
+
+    FrameKey(String path, int pageNo) {
+      this.path = path;
+      this.pageNo = pageNo;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof FrameKey))
+        return false;
+      FrameKey other = (FrameKey) o;
+      return pageNo == other.pageNo && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return path.hashCode() * 31 + pageNo;
+    }
+  }
+
+  private static final Map<FrameKey, Frame> frames = new HashMap<>();
+  private static final List<Frame> clock = new ArrayList<>();
+  private static int clockHand = 0;
+
+  // to pin a page, reading it from the file if it is not cached
+  public static Frame pin(PageFile file, int pageNo) throws IOException {
+    Frame frame;
+
+    synchronized (BufferPool.class) {
+      frame = getLoadedFrame(file, pageNo);
+
+      if (frame != null) {
+        frame.pinCount++;
+        frame.referenced = true;
+        return frame;
+      }
+
+      frame = allocate(file, pageNo, false);
+      frame.pinCount++;
+      frame.referenced = true;
+      frame.loading = true;
+    }
+
+    try {
+      file.readPage(pageNo, frame.data);
+    } catch (IOException e) {
+      synchronized (BufferPool.class) {
+        frames.remove(new FrameKey(file.path, pageNo));
+        frame.path = null;
+        frame.pinCount--;
+        frame.loading = false;
+        BufferPool.class.notifyAll();
+      }
+      throw e;
+    }
+
+    synchronized (BufferPool.class) {
+      frame.loading = false;
+      BufferPool.class.notifyAll();
+    }
+
+    return frame;
+  }
+
+  // to find the cached frame of a page, waiting for it while it is read, null when it is not cached
+  private static Frame getLoadedFrame(PageFile file, int pageNo) throws IOException {
+    Frame frame = frames.get(new FrameKey(file.path, pageNo));
+
+    while (frame != null && frame.loading) {
+      try {
+        BufferPool.class.wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+
+      // a failed read drops the frame, so the page is looked up again
+      frame = frames.get(new FrameKey(file.path, pageNo));
+    }
+
+    return frame;
+  }
+
+  // to pin a freshly allocated page without reading it from the file
+  public static synchronized Frame pinNew(PageFile file, int pageNo) throws IOException {
+    Frame frame = getLoadedFrame(file, pageNo);
+
+    if (frame == null)
+      frame = allocate(file, pageNo, true);
+    else
+      Arrays.fill(frame.data, (byte) 0);
+
+    frame.pinCount++;
+    frame.referenced = true;
+    return frame;
+  }
+
+  public static synchronized void unpin(Frame frame) {
+    frame.pinCount--;
+  }
+
+  // to record that a pinned page was modified through the given file
+  public static void markDirty(Frame frame, PageFile file) {
+    markDirty(frame, file, 0, frame.data.length);
+  }
+
+  // to record that the bytes between from and to of a pinned page were modified
+  public static synchronized void markDirty(Frame frame, PageFile file, int from, int to) {
+    if (frame.dirty) {
+      frame.dirtyFrom = Math.min(frame.dirtyFrom, from);
+      frame.dirtyTo = Math.max(frame.dirtyTo, to);
+    } else {
+      frame.dirtyFrom = from;
+      frame.dirtyTo = to;
+    }
+
+    frame.dirty = true;
+    frame.owner = file;
+  }
+
+  // to write back all the pages modified through the given file
+  public static synchronized void flush(PageFile file) throws IOException {
+    for (Frame frame : clock) {
+      if (frame.dirty && frame.owner == file)
+        writeBack(frame);
+    }
+  }
+
+  // to write back every modified page
+  public static synchronized void flushAll() {
+    for (Frame frame : clock) {
+      if (frame.dirty) {
+        try {
+          writeBack(frame);
+        } catch (IOException e) {
+          Utils.log(Constants.PageOperations.PAGE_WRITE_ERROR + e.getMessage());
+        }
+      }
+    }
+  }
+
+  // to drop all cached pages of a deleted file
+  public static synchronized void invalidate(String path) {
+    for (Frame frame : clock) {
+      if (path.equals(frame.path)) {
+        frames.remove(new FrameKey(frame.path, frame.pageNo));
+        frame.path = null;
+        frame.dirty = false;
+        frame.owner = null;
+      }
+    }
+  }
+
+  private static void writeBack(Frame frame) throws IOException {
+    frame.owner.writePage(frame.pageNo, frame.data, frame.dirtyFrom, frame.dirtyTo - frame.dirtyFrom);
+    frame.dirty = false;
+    frame.owner = null;
+  }
+
+  // to find a frame for a new page, evicting an unpinned one and reusing its buffer if the pool is full
+  private static Frame allocate(PageFile file, int pageNo, boolean zeroed) throws IOException {
+    Frame frame = null;
+
+    if (clock.size() < Constants.BUFFER_POOL_PAGES) {
+      frame = new Frame();
+      clock.add(frame);
+    } else {
+      for (int i = 0; i < 2 * clock.size() && frame == null; i++) {
+        Frame candidate = clock.get(clockHand);
+        clockHand = (clockHand + 1) % clock.size();
+
+        if (candidate.pinCount > 0)
+          continue;
+
+        if (candidate.referenced && candidate.path != null) {
+          candidate.referenced = false;
+          continue;
+        }
+
+        frame = candidate;
+      }
+
+      // every frame is pinned, grow past the configured size
+      if (frame == null) {
+        frame = new Frame();
+        clock.add(frame);
+      }
+
+      if (frame.path != null) {
+        if (frame.dirty)
+          writeBack(frame);
+        frames.remove(new FrameKey(frame.path, frame.pageNo));
+      }
+    }
+
+    if (frame.data == null || frame.data.length != file.pageSize) {
+      frame.data = new byte[file.pageSize];
+      frame.buffer = ByteBuffer.wrap(frame.data);
+    } else if (zeroed) {
+      Arrays.fill(frame.data, (byte) 0);
+    }
+
+    frame.path = file.path;
+    frame.pageNo = pageNo;
+    frame.pinCount = 0;
+    frame.referenced = false;
+    frame.dirty = false;
+    frame.loading = false;
+    frame.owner = null;
+    frames.put(new FrameKey(file.path, pageNo), frame);
+    return frame;
+  }
+
+}
@@ -0,0 +1,112 @@
+package storage;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Layout of the cells stored in table and index pages. Cells are sized
+ * first and then encoded straight into the page image at their offset.
+ *
+ * table leaf cell    : payload size (2), rowid (4), column count (1), type codes, values
+ * table interior cell: left child page (4), rowid (4)
+ * index cell         : [left page (4)], payload size (2), rowid count (2), type code (1), key, rowids
+ *
+ * Index values are stored with the binary comparable encoding of IndexKey.
+ */
+public class CellCodec {
+
+  // the longest TEXT value whose length still fits in its one byte type code
+  public static final int MAX_TEXT_LENGTH = Byte.MAX_VALUE - DataType.TEXT.getValue();
+
+  // serial type code of a value, TEXT codes carry the length of the value
+  public static byte typeCode(Attribute attribute) {
+    if (attribute.dataType == DataType.TEXT)
+      return (byte) (DataType.TEXT.getValue() + attribute.fieldValuebyte.length);
+
+    return attribute.dataType.getValue();
+  }
+
+  private static int valueLength(Attribute attribute) {
+    return attribute.fieldValuebyte == null ? 0 : attribute.fieldValuebyte.length;
+  }
+
+  public static int tableCellSize(List<Attribute> attributes) {
+    int size = 7 + attributes.size();
+    for (Attribute attribute : attributes)
+      size += valueLength(attribute);
+    return size;
+  }
+
+  public static void writeTableCell(ByteBuffer image, int offset, int rowId, List<Attribute> attributes) {
+    int columnCount = attributes.size();
+
+    image.putShort(offset, (short) (tableCellSize(attributes) - 6));
+    image.putInt(offset + 2, rowId);
+    image.put(offset + 6, (byte) columnCount);
+
+    int valueOffset = offset + 7 + columnCount;
+    for (int i = 0; i < columnCount; i++) {
+      Attribute attribute = attributes.get(i);
+      image.put(offset + 7 + i, typeCode(attribute));
+
+      if (attribute.fieldValuebyte != null) {
+        image.put(valueOffset, attribute.fieldValuebyte);
+        valueOffset += attribute.fieldValuebyte.length;
+      }
+    }
+  }
+
+  public static int interiorCellSize() {
+    return 8;
+  }
+
+  public static void writeInteriorCell(ByteBuffer image, int offset, int leftChildPageNo, int rowId) {
+    image.putInt(offset, leftChildPageNo);
+    image.putInt(offset + 4, rowId);
+  }
+
+  public static int indexCellSize(boolean interior, Attribute value, int rowIdCount) {
+    return (interior ? 4 : 0) + 2 + indexPayloadSize(value, rowIdCount);
+  }
+
+  /*
+   * The largest index cell a page of the given size takes. An interior index
+   * page is only split once it holds three cells, so any three cells have to
+   * fit in a page together with their pointers and spare bytes.
+   */
+  public static int maxIndexCellSize(int pageSize) {
+    return (pageSize - 0x10 - 3 * 4) / 3;
+  }
+
+  // to check if the cell of a value with that many row ids can be stored in an index of the given page size
+  public static boolean indexCellFits(int pageSize, Attribute value, int rowIdCount) {
+    return valueLength(value) <= MAX_TEXT_LENGTH
+        && indexCellSize(true, value, rowIdCount) <= maxIndexCellSize(pageSize);
+  }
+
+  private static int indexPayloadSize(Attribute value, int rowIdCount) {
+    return 3 + valueLength(value) + 4 * rowIdCount;
+  }
+
+  public static void writeIndexCell(ByteBuffer image, int offset, boolean interior, int leftPageNo, Attribute value,
+      List<Integer> rowIds) {
+    if (interior) {
+      image.putInt(offset, leftPageNo);
+      offset += 4;
+    }
+
+    image.putShort(offset, (short) indexPayloadSize(value, rowIds.size()));
+    image.putShort(offset + 2, (short) rowIds.size());
+    image.put(offset + 4, typeCode(value));
+    offset += 5;
+
+    IndexKey.encode(value, image, offset);
+    offset += valueLength(value);
+
+    for (int rowId : rowIds) {
+      image.putInt(offset, rowId);
+      offset += 4;
+    }
+  }
+
+}
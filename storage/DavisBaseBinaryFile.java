@@ -11,36 +11,297 @@ public class DavisBaseBinaryFile {
   public static boolean dataStoreInitialized = false;
   public static String davisbaseColumns = "davisbase_columns";
   public static String davisbaseTables = "davisbase_tables";
+  public static String davisbaseStatistics = "davisbase_statistics";
 
-  /* This makes sure that Page size is always a power of 2, default value: 512 */
-  static int pageSize = (int) Math.pow(2, Constants.PAGE_SIZE_POWER);
+  PageFile file;
 
-  RandomAccessFile file;
-
-  public DavisBaseBinaryFile(RandomAccessFile file) {
+  public DavisBaseBinaryFile(PageFile file) {
     this.file = file;
   }
 
   /* to check if a record with the condition exists in the table */
   public boolean recordExists(TableMetaData tablemetaData, Condition condition) throws IOException {
+    if (isExcludedByBloomFilters(tablemetaData, condition))
+      return false;
+
     BPlusOneTree bPlusOneTree = new BPlusOneTree(file, tablemetaData.rootPageNum, tablemetaData.tableName);
-    for (Integer pageNum : bPlusOneTree.getAllLeaves(condition)) {
-      Page page = new Page(file, pageNum);
-
-      // loop through records and find records that match the condition
-      for (TableRecord record : page.getPageRecords()) {
-        if (condition != null) {
-          if (!condition.checkCondition(record.getAttributes().get(condition.columnOrdinal).fieldValue))
-            continue;
-        }
 
-        return true;
+    // the leaves are searched in parallel, the first record that matches the condition stops the search
+    return ParallelScan.anyMatch(file, bPlusOneTree.getAllLeaves(condition), ParallelScan.matching(condition));
+  }
+
+  /*
+   * Checks the Bloom filters of the columns compared with = for a value the
+   * column certainly does not hold, in which case no row passes the
+   * condition and the table does not have to be read.
+   */
+  private boolean isExcludedByBloomFilters(TableMetaData tablemetaData, Condition condition) throws IOException {
+    if (condition == null)
+      return false;
+
+    for (Condition conjunct : condition.getConjuncts()) {
+      if (conjunct.columnOrdinal == Condition.ROWID_ORDINAL || conjunct.getOperation() != Constants.OperatorType.EQUALTO
+          || conjunct.comparisonValue.equalsIgnoreCase(Constants.NULL_STRING)
+          || !tablemetaData.colNameAttributes.get(conjunct.columnOrdinal).hasBloomFilter)
+        continue;
+
+      Attribute value;
+      try {
+        value = new Attribute(conjunct.dataType, conjunct.comparisonValue);
+      } catch (Exception e) {
+        continue;
+      }
+
+      PageFile bloomFile = new PageFile(Utils.getBloomFilePath(tablemetaData.tableName, conjunct.columnName),
+          Constants.READ_MODE);
+
+      try {
+        if (!new BloomFilter(bloomFile).mightContain(value))
+          return true;
+      } finally {
+        Utils.closeIOFile(bloomFile);
       }
     }
 
     return false;
   }
 
+  /*
+   * Bulk load path: inserts all the rows into the rightmost leaf, splitting
+   * pages as they fill, after checking the unique columns once for the whole
+   * batch. Index entries are grouped by key and inserted in key order. Returns
+   * the number of rows inserted, or -1 if a unique column would be violated
+   * or an index key would outgrow its page.
+   */
+  public int insertRecords(TableMetaData tablemetaData, List<List<Attribute>> rows) throws IOException {
+    String violatedColumn = findUniqueViolation(tablemetaData, rows);
+
+    if (violatedColumn != null) {
+      Utils.log(Constants.TableMetaData.INSERTION_ERROR_1 + violatedColumn + Constants.TableMetaData.INSERTION_ERROR_2);
+      return -1;
+    }
+
+    // the rows get the rowids that follow the last one handed out
+    List<Integer> newRowIds = new ArrayList<>();
+    for (int i = 1; i <= rows.size(); i++)
+      newRowIds.add(file.getLastRowId() + i);
+
+    for (ColumnInfo colInfo : tablemetaData.colNameAttributes) {
+      if (!colInfo.hasIndex)
+        continue;
+
+      PageFile indexFile = new PageFile(Utils.getNDXFilePath(tablemetaData.tableName, colInfo.columnName),
+          Constants.READ_MODE);
+      boolean keysFit = indexKeysFit(indexFile, rows, newRowIds);
+      Utils.closeIOFile(indexFile);
+
+      if (!keysFit) {
+        Utils.log(Constants.TableMetaData.INDEX_KEY_ERROR_1 + colInfo.columnName
+            + Constants.TableMetaData.INDEX_KEY_ERROR_2);
+        return -1;
+      }
+    }
+
+    Page page = new Page(file, BPlusOneTree.getPageNumForInsertion(file, getRootPageNo(file)));
+    List<Integer> rowIds = new ArrayList<>();
+
+    for (List<Attribute> row : rows) {
+      rowIds.add(page.appendTableRow(tablemetaData.tableName, row));
+    }
+
+    for (int i = 0; i < tablemetaData.colNameAttributes.size(); i++) {
+      ColumnInfo colInfo = tablemetaData.colNameAttributes.get(i);
+
+      if (colInfo.hasIndex) {
+        insertIndexBatch(Utils.getNDXFilePath(tablemetaData.tableName, colInfo.columnName), rows, rowIds);
+      }
+
+      if (colInfo.hasHashIndex) {
+        PageFile hashFile = new PageFile(Utils.getHashFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_WRITE_MODE);
+        HashIndex hashIndex = new HashIndex(hashFile);
+
+        for (int j = 0; j < rows.size(); j++)
+          hashIndex.insert(rows.get(j).get(i), rowIds.get(j));
+
+        Utils.closeIOFile(hashFile);
+      }
+
+      if (colInfo.hasBitmapIndex) {
+        PageFile bitmapFile = new PageFile(Utils.getBitmapFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_WRITE_MODE);
+        BitmapIndex bitmapIndex = new BitmapIndex(bitmapFile);
+
+        for (int j = 0; j < rows.size(); j++)
+          bitmapIndex.insert(rows.get(j).get(i), rowIds.get(j));
+
+        Utils.closeIOFile(bitmapFile);
+      }
+
+      if (colInfo.hasBloomFilter) {
+        PageFile bloomFile = new PageFile(Utils.getBloomFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_WRITE_MODE);
+        BloomFilter bloomFilter = new BloomFilter(bloomFile);
+
+        for (List<Attribute> row : rows)
+          bloomFilter.add(row.get(i));
+
+        Utils.closeIOFile(bloomFile);
+      }
+    }
+
+    return rows.size();
+  }
+
+  // to find a unique column whose value repeats within the rows or already exists in the table
+  private String findUniqueViolation(TableMetaData tablemetaData, List<List<Attribute>> rows) throws IOException {
+    Map<Integer, Set<String>> scannedColumns = new HashMap<>();
+
+    for (int i = 0; i < tablemetaData.colNameAttributes.size(); i++) {
+      ColumnInfo colInfo = tablemetaData.colNameAttributes.get(i);
+
+      if (!colInfo.isUnique)
+        continue;
+
+      Set<String> batchValues = new HashSet<>();
+      for (List<Attribute> row : rows) {
+        if (!batchValues.add(row.get(i).fieldValue))
+          return colInfo.columnName;
+      }
+
+      // a hash index is probed with the values of the rows when there is no tree index
+      if (!colInfo.hasIndex && colInfo.hasHashIndex) {
+        PageFile hashFile = new PageFile(Utils.getHashFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_MODE);
+
+        try {
+          HashIndex hashIndex = new HashIndex(hashFile);
+          for (List<Attribute> row : rows) {
+            if (!hashIndex.getRowIds(row.get(i)).isEmpty())
+              return colInfo.columnName;
+          }
+        } finally {
+          Utils.closeIOFile(hashFile);
+        }
+
+        continue;
+      }
+
+      // values the Bloom filter of the column rules out are not looked for in the table
+      if (!colInfo.hasIndex && colInfo.hasBloomFilter) {
+        PageFile bloomFile = new PageFile(Utils.getBloomFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_MODE);
+
+        try {
+          BloomFilter bloomFilter = new BloomFilter(bloomFile);
+          batchValues.clear();
+          for (List<Attribute> row : rows) {
+            if (bloomFilter.mightContain(row.get(i)))
+              batchValues.add(row.get(i).fieldValue);
+          }
+        } finally {
+          Utils.closeIOFile(bloomFile);
+        }
+
+        if (batchValues.isEmpty())
+          continue;
+      }
+
+      if (!colInfo.hasIndex) {
+        scannedColumns.put(i, batchValues);
+        continue;
+      }
+
+      PageFile indexFile = new PageFile(Utils.getNDXFilePath(tablemetaData.tableName, colInfo.columnName),
+          Constants.READ_MODE);
+
+      try {
+        for (String value : batchValues) {
+          Condition condition = new Condition(colInfo.dataType);
+          condition.columnOrdinal = i;
+          condition.columnName = colInfo.columnName;
+          condition.setOperator(Constants.EQUALS_OP);
+          condition.setConditionValue(value);
+
+          if (!new BTree(indexFile).getRowIdValue(condition).isEmpty())
+            return colInfo.columnName;
+        }
+      } finally {
+        Utils.closeIOFile(indexFile);
+      }
+    }
+
+    // unique columns without an index are checked with a single scan of the table
+    if (!scannedColumns.isEmpty()) {
+      BPlusOneTree bPlusOneTree = new BPlusOneTree(file, getRootPageNo(file), tablemetaData.tableName);
+
+      TableRecord duplicate = ParallelScan.findFirst(file, bPlusOneTree.getAllLeaves(),
+          record -> getRepeatedColumn(record, scannedColumns) != -1);
+
+      if (duplicate != null)
+        return tablemetaData.colNameAttributes.get(getRepeatedColumn(duplicate, scannedColumns)).columnName;
+    }
+
+    return null;
+  }
+
+  // the first of the columns whose value in the record is one of the values given for it, -1 for none
+  private static int getRepeatedColumn(TableRecord record, Map<Integer, Set<String>> columnValues) {
+    for (Map.Entry<Integer, Set<String>> column : columnValues.entrySet()) {
+      if (column.getValue().contains(record.getAttribute(column.getKey()).fieldValue))
+        return column.getKey();
+    }
+
+    return -1;
+  }
+
+  // to add the index entries of a batch, one insert per distinct key in key order
+  private static void insertIndexBatch(String indexPath, List<List<Attribute>> rows, List<Integer> rowIds)
+      throws IOException {
+    PageFile indexFile = new PageFile(indexPath, Constants.READ_WRITE_MODE);
+    BTree bTree = new BTree(indexFile);
+
+    try {
+      for (Map.Entry<Page.IndexRecord.IndexNode, List<Integer>> key : groupByKey(bTree, rows, rowIds).entrySet()) {
+        bTree.insert(key.getKey().indexValue, key.getValue());
+      }
+    } finally {
+      Utils.closeIOFile(indexFile);
+    }
+  }
+
+  /*
+   * Checks that the cell of every key of the rows can take their rowids
+   * besides the ones it holds. Index cells hold every rowid of their key, so
+   * the statement is rejected before any row is written when one of them
+   * would outgrow a page, rather than leaving the index without the rows.
+   */
+  private static boolean indexKeysFit(PageFile indexFile, List<List<Attribute>> rows, List<Integer> rowIds)
+      throws IOException {
+    BTree bTree = new BTree(indexFile);
+
+    for (Map.Entry<Page.IndexRecord.IndexNode, List<Integer>> key : groupByKey(bTree, rows, rowIds).entrySet()) {
+      if (!bTree.canInsert(key.getKey().indexValue, key.getValue()))
+        return false;
+    }
+
+    return true;
+  }
+
+  // the rowids of the rows grouped by their index key, in the order of the index
+  private static TreeMap<Page.IndexRecord.IndexNode, List<Integer>> groupByKey(BTree bTree, List<List<Attribute>> rows,
+      List<Integer> rowIds) throws IOException {
+    TreeMap<Page.IndexRecord.IndexNode, List<Integer>> keyRowIds = new TreeMap<>(
+        Page.IndexRecord.IndexNode.KEY_ORDER);
+
+    for (int i = 0; i < rows.size(); i++) {
+      Page.IndexRecord.IndexNode node = new Page.IndexRecord.IndexNode(bTree.getKey(rows.get(i)), null);
+      keyRowIds.computeIfAbsent(node, k -> new ArrayList<>()).add(rowIds.get(i));
+    }
+
+    return keyRowIds;
+  }
+
   /* update the records that match the mentioned condition and returns count */
   public int updateRecords(TableMetaData tablemetaData, Condition condition,
       List<String> columNames, List<String> newValues) throws IOException {
@@ -70,71 +331,167 @@ public class DavisBaseBinaryFile {
 
     BPlusOneTree bPlusOneTree = new BPlusOneTree(file, tablemetaData.rootPageNum, tablemetaData.tableName);
 
-    // loop through each page and check the record that matches update condition
-    for (Integer pageNo : bPlusOneTree.getAllLeaves(condition)) {
-      short deleteCountPerPage = 0;
-      Page page = new Page(file, pageNo);
+    Map<String, PageFile> indexFiles = getIndexFiles(tablemetaData, newValueMap.keySet());
+    Map<Integer, PageFile> hashFiles = getColumnIndexFiles(tablemetaData, newValueMap.keySet(), false);
+    Map<Integer, PageFile> bitmapFiles = getColumnIndexFiles(tablemetaData, newValueMap.keySet(), true);
+
+    // matching rows are listed first, writing back a resized row may move the other rows of its page
+    List<Integer> rowIds = new ArrayList<>();
+    // the updated rows, kept only to check their index keys before anything is written
+    List<List<Attribute>> newRows = new ArrayList<>();
+    if (!isExcludedByBloomFilters(tablemetaData, condition)) {
+      ParallelScan.forEach(file, bPlusOneTree.getAllLeaves(condition), ParallelScan.matching(condition),
+          record -> {
+            rowIds.add(record.rowId);
+
+            if (!indexFiles.isEmpty()) {
+              List<Attribute> newRow = new ArrayList<>(record.getAttributes());
+              for (Map.Entry<Integer, Attribute> newValue : newValueMap.entrySet())
+                newRow.set(newValue.getKey(), newValue.getValue());
+              newRows.add(newRow);
+            }
+          });
+    }
 
-      // loop through each page record to check if it matches the condition
-      for (TableRecord record : page.getPageRecords()) {
-        if (condition != null) {
-          if (!condition.checkCondition(record.getAttributes().get(condition.columnOrdinal).fieldValue)) {
-            continue;
-          }
-        }
+    // the rows leave their old keys one at a time, so the new keys are checked with the rowids they hold now
+    String outgrownIndex = null;
+    for (Map.Entry<String, PageFile> indexFile : indexFiles.entrySet()) {
+      if (outgrownIndex == null && !indexKeysFit(indexFile.getValue(), newRows, rowIds))
+        outgrownIndex = indexFile.getKey();
+    }
 
-        count++;
+    if (outgrownIndex != null) {
+      Utils.log(Constants.TableMetaData.INDEX_KEY_ERROR_1 + outgrownIndex + Constants.TableMetaData.INDEX_KEY_ERROR_2);
+      rowIds.clear();
+    }
 
-        // for each new value to be updated check for delete possibility
-        for (int i : newValueMap.keySet()) {
-          Attribute oldValue = record.getAttributes().get(i);
-          int rowId = record.rowId;
+    Page page = null;
 
-          if ((record.getAttributes().get(i).dataType == DataType.TEXT
-              && record.getAttributes().get(i).fieldValue.length() == newValueMap.get(i).fieldValue.length())
-              || (record.getAttributes().get(i).dataType != DataType.NULL
-                  && record.getAttributes().get(i).dataType != DataType.TEXT)) {
-            page.updateRecord(record, i, newValueMap.get(i).fieldValueByte);
-          } else {
-            page.DeleteTableRecord(tablemetaData.tableName,
-                Integer.valueOf(record.pageHeaderIndex - deleteCountPerPage).shortValue());
+    for (int rowId : rowIds) {
+      // the leaf is looked up again when the row is not on the page at hand
+      if (page == null || page.getRecord(rowId) == null)
+        page = new Page(file, bPlusOneTree.getPageNum(rowId, new Page(file, getRootPageNo(file))));
 
-            deleteCountPerPage++;
+      TableRecord record = page.getRecord(rowId);
+      count++;
 
-            List<Attribute> attrs = record.getAttributes();
-            Attribute attr;
+      List<Attribute> oldRow = new ArrayList<>(record.getAttributes());
+      List<Attribute> newRow = new ArrayList<>(oldRow);
+      for (Map.Entry<Integer, Attribute> newValue : newValueMap.entrySet())
+        newRow.set(newValue.getKey(), newValue.getValue());
 
-            attrs.remove(i);
-            attr = newValueMap.get(i);
-            attrs.add(i, attr);
+      // values of the same size are overwritten in place, otherwise the row is written again
+      boolean resized = false;
+      for (int i : newValueMap.keySet()) {
+        resized |= !((record.getAttribute(i).dataType == DataType.TEXT
+            && record.getAttribute(i).fieldValue.length() == newValueMap.get(i).fieldValue.length())
+            || (record.getAttribute(i).dataType != DataType.NULL
+                && record.getAttribute(i).dataType != DataType.TEXT));
+      }
 
-            rowId = page.addTableRow(tablemetaData.tableName, attrs);
-          }
+      if (!resized) {
+        for (int i : newValueMap.keySet())
+          page.updateRecord(record, i, newValueMap.get(i).fieldValuebyte);
+      } else {
+        page.DeleteTableRecord(tablemetaData.tableName, record.pageHeaderIndex);
+        page.reinsertTableRow(tablemetaData.tableName, newRow, rowId);
+        page = null;
+      }
 
-          if (tablemetaData.colNameAttributes.get(i).hasIndex && condition != null) {
-            RandomAccessFile indexFile = new RandomAccessFile(Utils.getNDXFilePath(
-                tablemetaData.colNameAttributes.get(i).tableName,
-                tablemetaData.colNameAttributes.get(i).columnName),
-                Constants.READ_WRITE_MODE);
+      // the index entries of the record move to its new key
+      for (PageFile indexFile : indexFiles.values()) {
+        BTree bTree = new BTree(indexFile);
+        bTree.delete(bTree.getKey(oldRow), rowId);
+        bTree.insert(bTree.getKey(newRow), rowId);
+      }
 
-            BTree bTree = new BTree(indexFile);
+      for (Map.Entry<Integer, PageFile> hashFile : hashFiles.entrySet()) {
+        HashIndex hashIndex = new HashIndex(hashFile.getValue());
+        hashIndex.delete(oldRow.get(hashFile.getKey()), rowId);
+        hashIndex.insert(newRow.get(hashFile.getKey()), rowId);
+      }
 
-            bTree.delete(oldValue, record.rowId);
-            bTree.insert(newValueMap.get(i), rowId);
+      for (Map.Entry<Integer, PageFile> bitmapFile : bitmapFiles.entrySet()) {
+        BitmapIndex bitmapIndex = new BitmapIndex(bitmapFile.getValue());
+        bitmapIndex.delete(oldRow.get(bitmapFile.getKey()), rowId);
+        bitmapIndex.insert(newRow.get(bitmapFile.getKey()), rowId);
+      }
+    }
 
-            Utils.closeIOFile(indexFile);
-          }
-        }
+    for (PageFile indexFile : indexFiles.values())
+      Utils.closeIOFile(indexFile);
+
+    for (PageFile hashFile : hashFiles.values())
+      Utils.closeIOFile(hashFile);
+
+    for (PageFile bitmapFile : bitmapFiles.values())
+      Utils.closeIOFile(bitmapFile);
+
+    // the new values go into the Bloom filters of their columns, the old ones stay there until VACUUM
+    if (count > 0) {
+      for (Map.Entry<Integer, Attribute> newValue : newValueMap.entrySet()) {
+        ColumnInfo colInfo = tablemetaData.colNameAttributes.get(newValue.getKey());
+
+        if (!colInfo.hasBloomFilter)
+          continue;
+
+        PageFile bloomFile = new PageFile(Utils.getBloomFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_WRITE_MODE);
+        new BloomFilter(bloomFile).add(newValue.getValue());
+        Utils.closeIOFile(bloomFile);
       }
     }
 
-    if (!tablemetaData.tableName.equals(davisbaseTables) && !tablemetaData.tableName.equals(davisbaseColumns)) {
+    if (outgrownIndex == null && !tablemetaData.tableName.equals(davisbaseTables)
+        && !tablemetaData.tableName.equals(davisbaseColumns)) {
       Utils.log("Record(s) are updated");
     }
 
     return count;
   }
 
+  // to open the indexes of the table whose keys hold one of the columns, by the column they are named after
+  private static Map<String, PageFile> getIndexFiles(TableMetaData tablemetaData, Collection<Integer> columnOrdinals)
+      throws IOException {
+    Map<String, PageFile> indexFiles = new LinkedHashMap<>();
+
+    for (ColumnInfo colInfo : tablemetaData.colNameAttributes) {
+      if (!colInfo.hasIndex)
+        continue;
+
+      PageFile indexFile = new PageFile(Utils.getNDXFilePath(tablemetaData.tableName, colInfo.columnName),
+          Constants.READ_WRITE_MODE);
+
+      boolean keyHoldsColumn = false;
+      for (int columnOrdinal : columnOrdinals)
+        keyHoldsColumn |= new BTree(indexFile).covers(List.of(columnOrdinal));
+
+      if (keyHoldsColumn)
+        indexFiles.put(colInfo.columnName, indexFile);
+      else
+        Utils.closeIOFile(indexFile);
+    }
+
+    return indexFiles;
+  }
+
+  // to open the hash or bitmap indexes of the given columns, by column ordinal
+  private static Map<Integer, PageFile> getColumnIndexFiles(TableMetaData tablemetaData,
+      Collection<Integer> columnOrdinals, boolean bitmap) throws IOException {
+    Map<Integer, PageFile> indexFiles = new HashMap<>();
+
+    for (int columnOrdinal : columnOrdinals) {
+      ColumnInfo colInfo = tablemetaData.colNameAttributes.get(columnOrdinal);
+
+      if (bitmap ? colInfo.hasBitmapIndex : colInfo.hasHashIndex)
+        indexFiles.put(columnOrdinal, new PageFile(bitmap ? Utils.getBitmapFilePath(tablemetaData.tableName,
+            colInfo.columnName) : Utils.getHashFilePath(tablemetaData.tableName, colInfo.columnName),
+            Constants.READ_WRITE_MODE));
+    }
+
+    return indexFiles;
+  }
+
   /* to select records from the table that matches the condition */
   public void selectRecords(TableMetaData tablemetaData, List<String> columNames, Condition condition)
       throws IOException {
@@ -170,59 +527,57 @@ public class DavisBaseBinaryFile {
     Utils.log("");
     Utils.log(Utils.line("-", totalTablePrintLength));
 
-    BPlusOneTree bPlusOneTree = new BPlusOneTree(file, tablemetaData.rootPageNum, tablemetaData.tableName);
+    // a value the Bloom filters rule out has no rows to print
+    if (isExcludedByBloomFilters(tablemetaData, condition)) {
+      Utils.log("");
+      return;
+    }
 
-    String currentValue;
+    BPlusOneTree bPlusOneTree = new BPlusOneTree(file, tablemetaData.rootPageNum, tablemetaData.tableName);
 
-    // loop through all the leaves of bPlusOne tree
-    for (Integer pageNo : bPlusOneTree.getAllLeaves(condition)) {
-      Page page = new Page(file, pageNo);
+    // a covering index answers the query without reading the table
+    List<TableRecord> coveredRecords = bPlusOneTree.getCoveredRecords(condition, ordinalPositions,
+        tablemetaData.colNameAttributes.size());
 
-      // loop through each page record to check if it matches the condition
-      for (TableRecord record : page.getPageRecords()) {
-        if (condition != null) {
-          if (!condition.checkCondition(record.getAttributes().get(condition.columnOrdinal).fieldValue))
-            continue;
-        }
+    if (coveredRecords != null) {
+      for (TableRecord record : coveredRecords) {
+        if (condition.checkCondition(record))
+          printRecord(record, ordinalPositions, printPosition);
+      }
+    } else {
+      // the leaves are read and filtered in parallel, the matching records are printed in leaf order
+      ParallelScan.forEach(file, bPlusOneTree.getAllLeaves(condition), ParallelScan.matching(condition),
+          record -> printRecord(record, ordinalPositions, printPosition));
+    }
 
-        int columnCount = 0;
+    Utils.log("");
+  }
 
-        if (showRowId) {
-          currentValue = Integer.valueOf(record.rowId).toString();
-          System.out.print(currentValue);
-          System.out.print(Utils.line(" ", printPosition.get(++columnCount) - currentValue.length()));
-        }
+  // to print the selected columns of a record
+  private static void printRecord(TableRecord record, List<Integer> ordinalPositions, List<Integer> printPosition) {
+    String currentValue;
+    int columnCount = 0;
 
-        // loop through each ordinal positions
-        for (int i : ordinalPositions) {
-          currentValue = record.getAttributes().get(i).fieldValue;
-          System.out.print(currentValue);
-          System.out.print(Utils.line(" ", printPosition.get(++columnCount) - currentValue.length()));
-        }
+    if (showRowId) {
+      currentValue = Integer.valueOf(record.rowId).toString();
+      System.out.print(currentValue);
+      System.out.print(Utils.line(" ", printPosition.get(++columnCount) - currentValue.length()));
+    }
 
-        Utils.log("");
-      }
+    // loop through each ordinal positions
+    for (int i : ordinalPositions) {
+      currentValue = record.getAttribute(i).fieldValue;
+      System.out.print(currentValue);
+      System.out.print(Utils.line(" ", printPosition.get(++columnCount) - currentValue.length()));
     }
 
     Utils.log("");
   }
 
-  // Find the root page manually
-  public static int getRootPageNo(RandomAccessFile binFile) {
-    int rPage = 0;
-
+  // to read the root page recorded in the file header
+  public static int getRootPageNo(PageFile binFile) {
     try {
-      // loop through each page
-      for (int i = 0; i < binFile.length() / DavisBaseBinaryFile.pageSize; i++) {
-        binFile.seek((long) i * DavisBaseBinaryFile.pageSize + 0x0A);
-        int a = binFile.readInt();
-
-        if (a == -1) {
-          return i;
-        }
-      }
-
-      return rPage;
+      return binFile.getRootPageNo();
     } catch (Exception e) {
       Utils.log(Constants.RecordOperations.FETCH_ROOT_PAGE_ERROR);
       Utils.log(e + "");
@@ -231,6 +586,143 @@ public class DavisBaseBinaryFile {
     return -1;
   }
 
+  /*
+   * Writes the rows of the table again into a new tree, in rowid order
+   * through the bulk load path, and puts every page of the old tree on the
+   * free list of the file, where later splits take their pages from. Rows
+   * keep their rowids, so the indexes that point to them stay valid. The
+   * leaves are in rowid order but a row written back by an update sits at
+   * the end of its leaf, so the rows of each leaf are sorted before they
+   * are appended to the rightmost leaf of the new tree.
+   */
+  public void rebuildTable(TableMetaData tablemetaData) throws IOException {
+    BPlusOneTree oldTree = new BPlusOneTree(file, getRootPageNo(file), tablemetaData.tableName);
+    List<Integer> oldPages = oldTree.getAllPages();
+
+    int rootPageNo = Page.addNewPage(file, Page.PageType.LEAF, -1, -1);
+    file.setRootPageNo(rootPageNo);
+
+    Page page = new Page(file, rootPageNo);
+    int count = 0;
+
+    for (int pageNo : oldTree.getAllLeaves()) {
+      List<TableRecord> records = new ArrayList<>(new Page(file, pageNo).getPageRecords());
+      records.sort(Comparator.comparingInt(record -> record.rowId));
+
+      for (TableRecord record : records) {
+        page.reinsertTableRow(tablemetaData.tableName, record.getAttributes(), record.rowId);
+        count++;
+      }
+    }
+
+    // the rows were moved rather than added
+    file.adjustRecordCount(-count);
+    TableMetaData.recordCountChanged(tablemetaData.tableName, -count);
+
+    for (int pageNo : oldPages)
+      file.freePage(pageNo);
+  }
+
+  /*
+   * Reads every row of the table to gather the statistics of each of its
+   * columns, setting the record count and average row length of the table
+   * metadata on the way. Histograms are given fewer buckets until they fit
+   * in a TEXT value, whose length is limited by its type code.
+   */
+  public List<ColumnStatistics> analyze(TableMetaData tablemetaData) throws IOException {
+    List<ColumnStatistics.Builder> builders = new ArrayList<>();
+
+    for (ColumnInfo colInfo : tablemetaData.colNameAttributes)
+      builders.add(new ColumnStatistics.Builder(colInfo.dataType));
+
+    BPlusOneTree bPlusOneTree = new BPlusOneTree(file, tablemetaData.rootPageNum, tablemetaData.tableName);
+    long[] totals = new long[2];
+
+    // the rows reach the builders in leaf order, so the same rows always give the same sample
+    ParallelScan.forEach(file, bPlusOneTree.getAllLeaves(), record -> true, record -> {
+      List<Attribute> attributes = record.getAttributes();
+
+      for (int i = 0; i < builders.size() && i < attributes.size(); i++)
+        builders.get(i).add(attributes.get(i));
+
+      totals[0]++;
+      totals[1] += CellCodec.tableCellSize(attributes);
+    });
+
+    long rowCount = totals[0];
+    long totalLength = totals[1];
+
+    tablemetaData.recordCount = (int) rowCount;
+    tablemetaData.avgLength = rowCount == 0 ? 0 : (int) Math.min(Short.MAX_VALUE, totalLength / rowCount);
+
+    List<ColumnStatistics> statistics = new ArrayList<>();
+
+    for (ColumnStatistics.Builder builder : builders) {
+      int bucketCount = ColumnStatistics.HISTOGRAM_BUCKETS;
+      ColumnStatistics columnStatistics = builder.build(bucketCount);
+
+      // a histogram of no buckets is empty, and is kept as NULL
+      while (columnStatistics.histogram.length() > CellCodec.MAX_TEXT_LENGTH && bucketCount > 0)
+        columnStatistics = builder.build(--bucketCount);
+
+      statistics.add(columnStatistics);
+    }
+
+    return statistics;
+  }
+
+  /*
+   * Creates the davisbase_statistics catalog the first time a table is
+   * analyzed, with one row for each analyzed column.
+   */
+  public static void createStatisticsCatalog() throws Exception {
+    PageFile davisbaseStatisticsCatalog = new PageFile(
+        Utils.getTBLFilePath(davisbaseStatistics), Constants.READ_WRITE_MODE);
+
+    Page.addNewPage(davisbaseStatisticsCatalog, Page.PageType.LEAF, -1, -1);
+
+    Utils.closeIOFile(davisbaseStatisticsCatalog);
+
+    PageFile davisbaseTablesCatalog = new PageFile(
+        Utils.getTBLFilePath(davisbaseTables), Constants.READ_WRITE_MODE);
+
+    TableMetaData davisbaseTableMetaData = new TableMetaData(davisbaseTables);
+
+    Page page = new Page(davisbaseTablesCatalog,
+        BPlusOneTree.getPageNumForInsertion(davisbaseTablesCatalog, davisbaseTableMetaData.rootPageNum));
+
+    page.addTableRow(davisbaseTables, Arrays.asList(new Attribute(DataType.TEXT, davisbaseStatistics),
+        new Attribute(DataType.INT, "0"), new Attribute(DataType.SMALLINT, "0"),
+        new Attribute(DataType.SMALLINT, String.valueOf(PageFile.FIRST_PAGE_NO))));
+
+    Utils.closeIOFile(davisbaseTablesCatalog);
+
+    PageFile davisbaseColumnsCatalog = new PageFile(
+        Utils.getTBLFilePath(davisbaseColumns), Constants.READ_WRITE_MODE);
+
+    TableMetaData davisbaseColumnsMetaData = new TableMetaData(davisbaseColumns);
+
+    Page page_ = new Page(davisbaseColumnsCatalog,
+        BPlusOneTree.getPageNumForInsertion(davisbaseColumnsCatalog, davisbaseColumnsMetaData.rootPageNum));
+
+    short ordinal_position = 1;
+
+    page_.addNewColumn(
+        new ColumnInfo(davisbaseStatistics, DataType.TEXT, "table_name", false, false, ordinal_position++));
+    page_.addNewColumn(
+        new ColumnInfo(davisbaseStatistics, DataType.TEXT, "column_name", false, false, ordinal_position++));
+    page_.addNewColumn(
+        new ColumnInfo(davisbaseStatistics, DataType.BIGINT, "distinct_count", false, false, ordinal_position++));
+    page_.addNewColumn(
+        new ColumnInfo(davisbaseStatistics, DataType.DOUBLE, "null_fraction", false, false, ordinal_position++));
+    page_.addNewColumn(
+        new ColumnInfo(davisbaseStatistics, DataType.TEXT, "histogram", false, true, ordinal_position++));
+
+    Utils.closeIOFile(davisbaseColumnsCatalog);
+
+    TableMetaData.refreshCatalog(davisbaseStatistics);
+  }
+
   /**
    * This static method creates the DavisBase data storage container and then
    * initializes two .tbl files to implement the two system tables,
@@ -240,6 +732,8 @@ public class DavisBaseBinaryFile {
    * if they already exist.
    */
   public static void initializeDataStore() {
+    TableMetaData.clearCatalog();
+
     // Generate data container directory at the current OS location hold
     try {
       String[] oldTableFiles;
@@ -253,6 +747,7 @@ public class DavisBaseBinaryFile {
       // loop and remove old table files
       for (String oldTableFile : oldTableFiles) {
         File anOldFile = new File(dataDir, oldTableFile);
+        BufferPool.invalidate(anOldFile.getPath());
         anOldFile.delete();
       }
     } catch (SecurityException se) {
@@ -262,25 +757,23 @@ public class DavisBaseBinaryFile {
 
     // generate davisbase_tables catalogs
     try {
-      int currentPageNo = 0;
-
-      RandomAccessFile davisbaseTablesCatalog = new RandomAccessFile(
+      PageFile davisbaseTablesCatalog = new PageFile(
           Utils.getTBLFilePath(davisbaseTables), Constants.READ_WRITE_MODE);
 
-      Page.addNewPage(davisbaseTablesCatalog, Page.PageType.LEAF, -1, -1);
+      int currentPageNo = Page.addNewPage(davisbaseTablesCatalog, Page.PageType.LEAF, -1, -1);
 
       Page page = new Page(davisbaseTablesCatalog, currentPageNo);
 
       page.addTableRow(davisbaseTables, Arrays.asList(new Attribute(DataType.TEXT, DavisBaseBinaryFile.davisbaseTables),
           new Attribute(DataType.INT, "2"),
           new Attribute(DataType.SMALLINT, "0"),
-          new Attribute(DataType.SMALLINT, "0")));
+          new Attribute(DataType.SMALLINT, String.valueOf(currentPageNo))));
 
       page.addTableRow(davisbaseTables,
           Arrays.asList(new Attribute(DataType.TEXT, DavisBaseBinaryFile.davisbaseColumns),
-              new Attribute(DataType.INT, "11"),
+              new Attribute(DataType.INT, "12"),
               new Attribute(DataType.SMALLINT, "0"),
-              new Attribute(DataType.SMALLINT, "2")));
+              new Attribute(DataType.SMALLINT, String.valueOf(PageFile.FIRST_PAGE_NO))));
 
       Utils.closeIOFile(davisbaseTablesCatalog);
     } catch (Exception e) {
@@ -290,12 +783,12 @@ public class DavisBaseBinaryFile {
 
     // generate davisbase_columns catalogs
     try {
-      RandomAccessFile davisbaseColumnsCatalog = new RandomAccessFile(
+      PageFile davisbaseColumnsCatalog = new PageFile(
           Utils.getTBLFilePath(davisbaseColumns), Constants.READ_WRITE_MODE);
 
-      Page.addNewPage(davisbaseColumnsCatalog, Page.PageType.LEAF, -1, -1);
+      int currentPageNo = Page.addNewPage(davisbaseColumnsCatalog, Page.PageType.LEAF, -1, -1);
 
-      Page page = new Page(davisbaseColumnsCatalog, 0);
+      Page page = new Page(davisbaseColumnsCatalog, currentPageNo);
 
       short ordinal_position = 1;
 
@@ -323,8 +816,16 @@ public class DavisBaseBinaryFile {
           new ColumnInfo(davisbaseColumns, DataType.SMALLINT, "column_key", false, true, ordinal_position++));
       page.addNewColumn(
           new ColumnInfo(davisbaseColumns, DataType.SMALLINT, "is_unique", false, false, ordinal_position++));
+      page.addNewColumn(
+          new ColumnInfo(davisbaseColumns, DataType.TEXT, "index_type", false, true, ordinal_position++));
 
       Utils.closeIOFile(davisbaseColumnsCatalog);
+
+      // the root pages depend on the page size, record the actual ones in the catalog
+      new TableMetaData(davisbaseTables).updateMetaData();
+      new TableMetaData(davisbaseColumns).updateMetaData();
+      TableMetaData.loadCatalog();
+
       dataStoreInitialized = true;
     } catch (Exception e) {
       Utils.log(Constants.RecordOperations.CREATE_COLUMNS_ERROR);
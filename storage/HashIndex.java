@@ -0,0 +1,356 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import utils.Constants;
+import utils.Utils;
+
+/**
+ * An index created USING HASH, kept in a linear hash file next to the table.
+ * It only answers equality conditions on its column, which it does by
+ * reading the chain of pages of a single bucket.
+ * <p>
+ * The root page of the file is the first page of the bucket directory.
+ * Directory pages are chained through their right page pointer and hold
+ * the first page number of each bucket in turn. Bucket pages hold an entry
+ * count, the offset where their entries end and the overflow page chained
+ * after them, followed by the entries, each one its key length (2), rowid
+ * (4) and key. Keys are the composite encoding of IndexKey of the value.
+ * <p>
+ * The file starts with INITIAL_BUCKETS buckets. Whenever an insert has to
+ * chain an overflow page the bucket at the split pointer is split, moving
+ * the entries that hash to the new bucket at the end of the directory, so
+ * the number of buckets grows with the number of entries and each bucket
+ * stays about a page long. The split pointer and the number of times the
+ * buckets doubled are kept in the file header.
+ */
+public class HashIndex {
+  private static final int INITIAL_BUCKETS = 4;
+
+  // offsets of the bucket page fields
+  private static final int BUCKET_ENTRY_COUNT = 2;
+  private static final int BUCKET_END = 4;
+  private static final int BUCKET_OVERFLOW_PAGE = 6;
+  private static final int FIRST_ENTRY = 0x10;
+
+  private static final int DIRECTORY_NEXT_PAGE = 6;
+  private static final int ENTRY_HEADER_SIZE = 6;
+
+  PageFile binaryFile;
+  // page numbers of the directory pages, read from the chain once per handle
+  private List<Integer> directoryPages;
+
+  public HashIndex(PageFile file) {
+    this.binaryFile = file;
+  }
+
+  // to write the directory and the initial buckets of a new hash file keyed on one column
+  public static void create(PageFile file, int columnOrdinal, DataType dataType) throws IOException {
+    file.setIndexColumns(new int[] { columnOrdinal }, new DataType[] { dataType });
+
+    int directoryPageNo = file.allocatePage();
+    addPage(file, directoryPageNo, Page.PageType.HASHDIRECTORY);
+    file.setRootPageNo(directoryPageNo);
+
+    HashIndex hashIndex = new HashIndex(file);
+    for (int bucket = 0; bucket < INITIAL_BUCKETS; bucket++)
+      hashIndex.setBucketPageNo(bucket, hashIndex.addBucketPage());
+  }
+
+  // to add the entry of a row
+  public void insert(Attribute value, int rowId) throws IOException {
+    byte[] key = getKey(value);
+
+    if (FIRST_ENTRY + ENTRY_HEADER_SIZE + key.length >= binaryFile.pageSize) {
+      Utils.log(Constants.PageOperations.PAGE_OVERFLOW_ERROR);
+      return;
+    }
+
+    binaryFile.adjustRecordCount(1);
+
+    // a bucket that overflowed makes room by splitting the next bucket in turn
+    if (addEntry(getBucketPageNo(getBucket(hash(key))), key, rowId))
+      splitBucket();
+  }
+
+  // to remove the entry of a row
+  public void delete(Attribute value, int rowId) throws IOException {
+    byte[] key = getKey(value);
+    int pageNo = getBucketPageNo(getBucket(hash(key)));
+
+    while (pageNo != -1) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = getEnd(image);
+
+        for (int position = FIRST_ENTRY; position < end; position += entrySize(image, position)) {
+          if (image.getInt(position + 2) != rowId || !hasKey(image, position, key))
+            continue;
+
+          // the entries after it are moved down over the removed one
+          int size = entrySize(image, position);
+          System.arraycopy(frame.data, position + size, frame.data, position, end - position - size);
+          image.putShort(BUCKET_ENTRY_COUNT, (short) (image.getShort(BUCKET_ENTRY_COUNT) - 1));
+          image.putShort(BUCKET_END, (short) (end - size));
+          BufferPool.markDirty(frame, binaryFile, 0, end);
+
+          binaryFile.adjustRecordCount(-1);
+          return;
+        }
+
+        pageNo = image.getInt(BUCKET_OVERFLOW_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+  }
+
+  // to get the rowids of the rows holding a value, reading the pages of one bucket
+  public List<Integer> getRowIds(Attribute value) throws IOException {
+    List<Integer> rowIds = new ArrayList<>();
+    byte[] key = getKey(value);
+    int pageNo = getBucketPageNo(getBucket(hash(key)));
+
+    while (pageNo != -1) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = getEnd(image);
+
+        for (int position = FIRST_ENTRY; position < end; position += entrySize(image, position)) {
+          if (hasKey(image, position, key))
+            rowIds.add(image.getInt(position + 2));
+        }
+
+        pageNo = image.getInt(BUCKET_OVERFLOW_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    return rowIds;
+  }
+
+  private static byte[] getKey(Attribute value) {
+    return IndexKey.encodeComposite(List.of(value));
+  }
+
+  // FNV-1a over the key bytes followed by the murmur finalizer, so the low bits used for buckets are well mixed
+  private static int hash(byte[] key) {
+    int h = 0x811C9DC5;
+    for (byte b : key)
+      h = (h ^ (b & 0xFF)) * 0x01000193;
+
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  // buckets before the split pointer were already split and use one more bit of the hash
+  private int getBucket(int hash) throws IOException {
+    int bucketCount = INITIAL_BUCKETS << binaryFile.getHashLevel();
+    int bucket = hash & (bucketCount - 1);
+
+    if (bucket < binaryFile.getHashNextSplit())
+      bucket = hash & (2 * bucketCount - 1);
+
+    return bucket;
+  }
+
+  /*
+   * Splits the bucket at the split pointer into itself and a new bucket at
+   * the end of the directory, rehashing its entries with one more bit.
+   * Overflow pages the entries no longer need go back to the free list.
+   */
+  private void splitBucket() throws IOException {
+    int level = binaryFile.getHashLevel();
+    int bucketCount = INITIAL_BUCKETS << level;
+    int nextSplit = binaryFile.getHashNextSplit();
+
+    int oldPageNo = getBucketPageNo(nextSplit);
+    int newPageNo = addBucketPage();
+    setBucketPageNo(nextSplit + bucketCount, newPageNo);
+
+    // the entries of the bucket are read before its first page is emptied
+    List<byte[]> keys = new ArrayList<>();
+    List<Integer> rowIds = new ArrayList<>();
+    List<Integer> overflowPages = new ArrayList<>();
+
+    for (int pageNo = oldPageNo; pageNo != -1;) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = getEnd(image);
+
+        for (int position = FIRST_ENTRY; position < end; position += entrySize(image, position)) {
+          byte[] key = new byte[image.getShort(position)];
+          image.get(position + ENTRY_HEADER_SIZE, key);
+          keys.add(key);
+          rowIds.add(image.getInt(position + 2));
+        }
+
+        if (pageNo != oldPageNo)
+          overflowPages.add(pageNo);
+        pageNo = image.getInt(BUCKET_OVERFLOW_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    for (int overflowPageNo : overflowPages)
+      binaryFile.freePage(overflowPageNo);
+    addPage(binaryFile, oldPageNo, Page.PageType.HASHBUCKET);
+
+    for (int i = 0; i < keys.size(); i++) {
+      int bucket = hash(keys.get(i)) & (2 * bucketCount - 1);
+      addEntry(bucket == nextSplit ? oldPageNo : newPageNo, keys.get(i), rowIds.get(i));
+    }
+
+    if (nextSplit + 1 == bucketCount)
+      binaryFile.setHashSplit(level + 1, 0);
+    else
+      binaryFile.setHashSplit(level, nextSplit + 1);
+  }
+
+  // to append an entry to the last page of a bucket, returns true if an overflow page had to be chained
+  private boolean addEntry(int pageNo, byte[] key, int rowId) throws IOException {
+    int entrySize = ENTRY_HEADER_SIZE + key.length;
+
+    while (true) {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        int end = getEnd(image);
+
+        if (end + entrySize < binaryFile.pageSize) {
+          image.putShort(end, (short) key.length);
+          image.putInt(end + 2, rowId);
+          image.put(end + ENTRY_HEADER_SIZE, key);
+          image.putShort(BUCKET_ENTRY_COUNT, (short) (image.getShort(BUCKET_ENTRY_COUNT) + 1));
+          image.putShort(BUCKET_END, (short) (end + entrySize));
+          BufferPool.markDirty(frame, binaryFile, 0, end + entrySize);
+          return false;
+        }
+
+        int overflowPageNo = image.getInt(BUCKET_OVERFLOW_PAGE);
+
+        if (overflowPageNo == -1) {
+          overflowPageNo = addBucketPage();
+          image.putInt(BUCKET_OVERFLOW_PAGE, overflowPageNo);
+          BufferPool.markDirty(frame, binaryFile, BUCKET_OVERFLOW_PAGE, BUCKET_OVERFLOW_PAGE + Integer.BYTES);
+          addEntry(overflowPageNo, key, rowId);
+          return true;
+        }
+
+        pageNo = overflowPageNo;
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+  }
+
+  // the end offset is read unsigned so it holds every offset of the largest pages
+  private static int getEnd(ByteBuffer image) {
+    return Short.toUnsignedInt(image.getShort(BUCKET_END));
+  }
+
+  private static int entrySize(ByteBuffer image, int position) {
+    return ENTRY_HEADER_SIZE + image.getShort(position);
+  }
+
+  private static boolean hasKey(ByteBuffer image, int position, byte[] key) {
+    return image.getShort(position) == key.length
+        && IndexKey.compare(key, image, position + ENTRY_HEADER_SIZE, key.length) == 0;
+  }
+
+  private int addBucketPage() throws IOException {
+    int pageNo = binaryFile.allocatePage();
+    addPage(binaryFile, pageNo, Page.PageType.HASHBUCKET);
+    return pageNo;
+  }
+
+  // to write an empty bucket or directory page over a page of the file
+  private static void addPage(PageFile file, int pageNo, Page.PageType pageType) throws IOException {
+    BufferPool.Frame frame = BufferPool.pinNew(file, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      image.put(0, pageType.getValue());
+      image.putInt(6, -1);
+      if (pageType == Page.PageType.HASHBUCKET)
+        image.putShort(BUCKET_END, (short) FIRST_ENTRY);
+      BufferPool.markDirty(frame, file);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  private int getDirectoryCapacity() {
+    return (binaryFile.pageSize - FIRST_ENTRY) / Integer.BYTES;
+  }
+
+  private void loadDirectory() throws IOException {
+    if (directoryPages != null)
+      return;
+
+    directoryPages = new ArrayList<>();
+    for (int pageNo = binaryFile.getRootPageNo(); pageNo != -1;) {
+      directoryPages.add(pageNo);
+
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        pageNo = frame.buffer.getInt(DIRECTORY_NEXT_PAGE);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+  }
+
+  private int getBucketPageNo(int bucket) throws IOException {
+    loadDirectory();
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, directoryPages.get(bucket / getDirectoryCapacity()));
+    try {
+      return frame.buffer.getInt(FIRST_ENTRY + bucket % getDirectoryCapacity() * Integer.BYTES);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to record the first page of a bucket, chaining a directory page when the last one is full
+  private void setBucketPageNo(int bucket, int pageNo) throws IOException {
+    loadDirectory();
+
+    int directoryIndex = bucket / getDirectoryCapacity();
+
+    if (directoryIndex == directoryPages.size()) {
+      int directoryPageNo = binaryFile.allocatePage();
+      addPage(binaryFile, directoryPageNo, Page.PageType.HASHDIRECTORY);
+
+      BufferPool.Frame last = BufferPool.pin(binaryFile, directoryPages.get(directoryIndex - 1));
+      try {
+        last.buffer.putInt(DIRECTORY_NEXT_PAGE, directoryPageNo);
+        BufferPool.markDirty(last, binaryFile, DIRECTORY_NEXT_PAGE, DIRECTORY_NEXT_PAGE + Integer.BYTES);
+      } finally {
+        BufferPool.unpin(last);
+      }
+
+      directoryPages.add(directoryPageNo);
+    }
+
+    int offset = FIRST_ENTRY + bucket % getDirectoryCapacity() * Integer.BYTES;
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, directoryPages.get(directoryIndex));
+    try {
+      frame.buffer.putInt(offset, pageNo);
+      BufferPool.markDirty(frame, binaryFile, offset, offset + Integer.BYTES);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+}
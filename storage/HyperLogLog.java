@@ -0,0 +1,52 @@
+package storage;
+
+/**
+ * A HyperLogLog sketch counting the distinct values of a column in one pass
+ * with a fixed amount of memory. Values are hashed like the keys of a Bloom
+ * filter, the first REGISTER_BITS bits of the hash choose a register and
+ * the register keeps the longest run of leading zeros seen in the rest.
+ * With 2^12 registers the estimate is within about 2% of the count, and
+ * small counts are estimated from the number of empty registers instead.
+ */
+public class HyperLogLog {
+  private static final int REGISTER_BITS = 12;
+  private static final int REGISTER_COUNT = 1 << REGISTER_BITS;
+
+  private final byte[] registers = new byte[REGISTER_COUNT];
+
+  // to count a value, NULL values are not counted
+  public void add(Attribute value) {
+    byte[] key = BloomFilter.getKey(value);
+
+    if (key == null)
+      return;
+
+    long hash = BloomFilter.hash(key);
+    int register = (int) (hash >>> (64 - REGISTER_BITS));
+    int rank = Long.numberOfLeadingZeros(hash << REGISTER_BITS | 1L << (REGISTER_BITS - 1)) + 1;
+
+    if (rank > registers[register])
+      registers[register] = (byte) rank;
+  }
+
+  public long getEstimate() {
+    double sum = 0;
+    int emptyRegisters = 0;
+
+    for (byte rank : registers) {
+      sum += 1.0 / (1L << rank);
+      if (rank == 0)
+        emptyRegisters++;
+    }
+
+    double alpha = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+    double estimate = alpha * REGISTER_COUNT * REGISTER_COUNT / sum;
+
+    // linear counting is more accurate while many registers are still empty
+    if (estimate <= 2.5 * REGISTER_COUNT && emptyRegisters > 0)
+      estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / emptyRegisters);
+
+    return Math.round(estimate);
+  }
+
+}
@@ -0,0 +1,167 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Binary comparable encoding of the values stored in index cells. Encoded
+ * keys of the same column order like their values when compared as unsigned
+ * bytes, so index pages can be searched in place without decoding a value.
+ *
+ * integers, YEAR, TIME, DATE and DATETIME: big endian with the sign bit flipped
+ * FLOAT and DOUBLE                      : sign bit flipped for positives, all bits flipped for negatives
+ * TEXT                                  : the value bytes
+ * NULL                                  : empty, sorting before every other key
+ *
+ * The key of an index on several columns is stored as a TEXT key holding
+ * the encoded value of each column in turn. Every value starts with a flag,
+ * 0 for NULL and 1 otherwise, and TEXT values escape their 0 bytes as 0 FF
+ * and end with 0 0, so the key of a row sorts by its first column, then by
+ * the next one, and a first column value alone is a prefix of its keys.
+ */
+public class IndexKey {
+
+  // to get the encoded key of a value
+  public static byte[] encode(Attribute attribute) {
+    byte[] value = attribute.fieldValuebyte == null ? new byte[0] : attribute.fieldValuebyte;
+    byte[] key = new byte[value.length];
+    System.arraycopy(value, 0, key, 0, value.length);
+    transform(attribute.dataType, key, true);
+    return key;
+  }
+
+  // to write the encoded key of a value into a page image
+  public static void encode(Attribute attribute, ByteBuffer image, int offset) {
+    if (attribute.fieldValuebyte == null)
+      return;
+
+    image.put(offset, attribute.fieldValuebyte);
+    transform(attribute.dataType, image.array(), offset, attribute.fieldValuebyte.length, true);
+  }
+
+  // to get the value of a key read from a page image
+  public static byte[] decode(DataType dataType, ByteBuffer image, int offset, int length) {
+    byte[] value = new byte[length];
+    image.get(offset, value);
+    transform(dataType, value, false);
+    return value;
+  }
+
+  // to compare a key with the one stored in a page image as unsigned bytes
+  public static int compare(byte[] key, ByteBuffer image, int offset, int length) {
+    int common = Math.min(key.length, length);
+
+    for (int i = 0; i < common; i++) {
+      int diff = (key[i] & 0xFF) - (image.get(offset + i) & 0xFF);
+      if (diff != 0)
+        return diff;
+    }
+
+    return key.length - length;
+  }
+
+  public static int compare(byte[] key1, byte[] key2) {
+    return Arrays.compareUnsigned(key1, key2);
+  }
+
+  // to get the key of an index on several columns
+  public static byte[] encodeComposite(List<Attribute> values) {
+    ByteArrayOutputStream key = new ByteArrayOutputStream();
+
+    for (Attribute value : values)
+      encodeComponent(value, key);
+
+    return key.toByteArray();
+  }
+
+  // to append the encoding of one column value to a composite key
+  public static void encodeComponent(Attribute value, ByteArrayOutputStream key) {
+    if (value.dataType == DataType.NULL) {
+      key.write(0);
+      return;
+    }
+
+    key.write(1);
+    byte[] encoded = encode(value);
+
+    if (value.dataType != DataType.TEXT) {
+      key.write(encoded, 0, encoded.length);
+      return;
+    }
+
+    for (byte b : encoded) {
+      key.write(b);
+      if (b == 0)
+        key.write(0xFF);
+    }
+
+    key.write(0);
+    key.write(0);
+  }
+
+  // to get the column values of a composite key
+  public static List<Attribute> decodeComposite(byte[] key, DataType[] dataTypes) {
+    List<Attribute> values = new ArrayList<>();
+    int position = 0;
+
+    for (DataType dataType : dataTypes) {
+      if (key[position++] == 0) {
+        values.add(new Attribute(DataType.NULL, new byte[0]));
+        continue;
+      }
+
+      ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+      if (dataType != DataType.TEXT) {
+        int length = DataType.getLength(dataType);
+        value.write(key, position, length);
+        position += length;
+      } else {
+        while (key[position] != 0 || key[position + 1] != 0) {
+          value.write(key[position]);
+          position += key[position] == 0 ? 2 : 1;
+        }
+        position += 2;
+      }
+
+      byte[] valueBytes = value.toByteArray();
+      transform(dataType, valueBytes, false);
+      values.add(new Attribute(dataType, valueBytes));
+    }
+
+    return values;
+  }
+
+  private static void transform(DataType dataType, byte[] data, boolean encode) {
+    transform(dataType, data, 0, data.length, encode);
+  }
+
+  private static void transform(DataType dataType, byte[] data, int offset, int length, boolean encode) {
+    if (length == 0)
+      return;
+
+    switch (dataType) {
+      case FLOAT:
+      case DOUBLE:
+        // positive values have the sign bit clear before encoding and set after it
+        boolean negative = encode ? data[offset] < 0 : data[offset] >= 0;
+        if (negative) {
+          for (int i = offset; i < offset + length; i++)
+            data[i] = (byte) ~data[i];
+        } else {
+          data[offset] ^= (byte) 0x80;
+        }
+        break;
+
+      case TEXT:
+      case NULL:
+        break;
+
+      default:
+        data[offset] ^= (byte) 0x80;
+        break;
+    }
+  }
+
+}
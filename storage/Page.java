@@ -1,6 +1,8 @@
 package storage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import utils.*;
@@ -10,55 +12,56 @@ public class Page {
   public PageType pageType;
   short noOfCells = 0;
   public int pageNo;
-  short contentStartOffset;
+  int contentStartOffset;
   public int rightPage;
   public int parentPageNo;
   private List<TableRecord> records;
   boolean refreshTableRecords = false;
-  long pageStart;
   int lastRowId;
   int availableSpace;
-  RandomAccessFile binaryFile;
+  PageFile binaryFile;
   List<TableInteriorRecord> leftChildren;
 
   public DataType indexValueDataType;
-  public TreeSet<Long> lIndexValues;
-  public TreeSet<String> sIndexValues;
+  // index records in the order of their encoded keys, the order of the cell pointers
+  public TreeSet<IndexRecord> sortedIndexRecords;
+  // index records by the pointer key of their value
   public HashMap<String, IndexRecord> indexValuePointer;
   private Map<Integer, TableRecord> recordsMap;
 
   // constructor
-  public Page(RandomAccessFile file, int pageNo) {
+  public Page(PageFile file, int pageNo) {
     try {
       this.pageNo = pageNo;
       indexValueDataType = null;
-      lIndexValues = new TreeSet<>();
-      sIndexValues = new TreeSet<>();
+      sortedIndexRecords = new TreeSet<>(IndexRecord.KEY_ORDER);
       indexValuePointer = new HashMap<>();
       recordsMap = new HashMap<>();
 
       this.binaryFile = file;
       lastRowId = 0;
-      pageStart = (long) DavisBaseBinaryFile.pageSize * pageNo;
-      binaryFile.seek(pageStart);
-      pageType = PageType.get(binaryFile.readByte());
-      binaryFile.readByte();
-      noOfCells = binaryFile.readShort();
-      contentStartOffset = binaryFile.readShort();
-      availableSpace = contentStartOffset - 0x10 - (noOfCells * 2);
-
-      rightPage = binaryFile.readInt();
-
-      parentPageNo = binaryFile.readInt();
-
-      binaryFile.readShort();
-
-      if (pageType == PageType.LEAF)
-        fillTableRecords();
-      if (pageType == PageType.INTERIOR)
-        fillLeftChildren();
-      if (pageType == PageType.INTERIORINDEX || pageType == PageType.LEAFINDEX)
-        fillIndexRecords();
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        pageType = PageType.get(image.get(0));
+        noOfCells = image.getShort(2);
+        contentStartOffset = getContentStartOffset(image, binaryFile.pageSize);
+        availableSpace = contentStartOffset - 0x10 - (noOfCells * 2);
+
+        rightPage = image.getInt(6);
+
+        parentPageNo = image.getInt(0x0A);
+
+        // header and cells are decoded from the same pinned page image
+        if (pageType == PageType.LEAF)
+          fillTableRecords(image);
+        if (pageType == PageType.INTERIOR)
+          fillLeftChildren(image);
+        if (pageType == PageType.INTERIORINDEX || pageType == PageType.LEAFINDEX)
+          fillIndexRecords(image);
+      } finally {
+        BufferPool.unpin(frame);
+      }
 
     } catch (IOException ex) {
       Utils.log(Constants.PageOperations.PAGE_READ_ERROR + ex.getMessage());
@@ -69,45 +72,67 @@ public class Page {
   public List<String> getIndexValues() {
     List<String> strIndexValues = new ArrayList<>();
 
-    if (sIndexValues.size() > 0)
-      strIndexValues.addAll(Arrays.asList(sIndexValues.toArray(new String[0])));
-    if (lIndexValues.size() > 0) {
-      Long[] lArray = lIndexValues.toArray(new Long[0]);
-      for (Long aLong : lArray) {
-        strIndexValues.add(aLong.toString());
-      }
-    }
+    for (IndexRecord record : sortedIndexRecords)
+      strIndexValues.add(record.getIndexNode().indexValue.fieldValue);
+
     return strIndexValues;
   }
 
+  // offsets are unsigned, a content start of 0 stands for a full 64 KiB page
+  private static int getContentStartOffset(ByteBuffer image, int pageSize) {
+    int offset = Short.toUnsignedInt(image.getShort(4));
+    return offset == 0 ? pageSize : offset;
+  }
+
   // to get page type
-  public static PageType getPageType(RandomAccessFile file, int pageNo) throws IOException {
+  public static PageType getPageType(PageFile file, int pageNo) throws IOException {
     try {
-      int pageStart = DavisBaseBinaryFile.pageSize * pageNo;
-      file.seek(pageStart);
-      return PageType.get(file.readByte());
+      BufferPool.Frame frame = BufferPool.pin(file, pageNo);
+      try {
+        return PageType.get(frame.buffer.get(0));
+      } finally {
+        BufferPool.unpin(frame);
+      }
     } catch (IOException ex) {
       Utils.log(Constants.PageOperations.PAGE_FETCH_ERROR + ex.getMessage());
       throw ex;
     }
   }
 
+  // to get the right page pointer, the next leaf for table leaves
+  public static int getRightPageNo(PageFile file, int pageNo) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(file, pageNo);
+    try {
+      return frame.buffer.getInt(6);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
   // to add new page file
-  public static int addNewPage(RandomAccessFile file, PageType pageType, int rightPage, int parentPageNo) {
+  public static int addNewPage(PageFile file, PageType pageType, int rightPage, int parentPageNo) {
     try {
-      int pageNo = Long.valueOf((file.length() / DavisBaseBinaryFile.pageSize)).intValue();
-      file.setLength(file.length() + DavisBaseBinaryFile.pageSize);
-      file.seek((long) DavisBaseBinaryFile.pageSize * pageNo);
-      file.write(pageType.getValue());
-      file.write(0x00);
-      file.writeShort(0);
-      file.writeShort((short) (DavisBaseBinaryFile.pageSize));
-
-      file.writeInt(rightPage);
-
-      file.writeInt(parentPageNo);
-      file.write(0x00);
-      file.write(0x00);
+      int pageNo = file.allocatePage();
+
+      BufferPool.Frame frame = BufferPool.pinNew(file, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
+        image.put(0, pageType.getValue());
+        image.putShort(2, (short) 0);
+        image.putShort(4, (short) file.pageSize);
+
+        image.putInt(6, rightPage);
+
+        image.putInt(0x0A, parentPageNo);
+        BufferPool.markDirty(frame, file);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+
+      // a page taken from the free list may still have the summary of the leaf it was
+      if (file.getZoneMap() != null)
+        file.getZoneMap().invalidate(pageNo);
+
       return pageNo;
     } catch (IOException ex) {
       Utils.log(Constants.PageOperations.PAGE_ADD_ERROR + ex.getMessage());
@@ -116,19 +141,22 @@ public class Page {
   }
 
   // to update page record by finding offset
-  public void updateRecord(TableRecord record, int ordinalPosition, Byte[] newValue) throws IOException {
-    binaryFile.seek(pageStart + record.recordOffset + 7);
-    int valueOffset = 0;
-
-    // loop to find the required offset value
-    for (int i = 0; i < ordinalPosition; i++) {
-
-      valueOffset += DataType.getLength(binaryFile.readByte());
+  public void updateRecord(TableRecord record, int ordinalPosition, byte[] newValue) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+
+      // overwrite with new value
+      int valueStart = record.getColumnOffset(ordinalPosition);
+      image.put(valueStart, newValue);
+      BufferPool.markDirty(frame, binaryFile, valueStart, valueStart + newValue.length);
+    } finally {
+      BufferPool.unpin(frame);
     }
 
-    binaryFile.seek(pageStart + record.recordOffset + 7 + record.colDataTypes.length + valueOffset);
-    // overwrite with new value
-    binaryFile.write(ByteConvertor.Bytestobytes(newValue));
+    if (binaryFile.getZoneMap() != null)
+      binaryFile.getZoneMap().addValue(pageNo, ordinalPosition,
+          new Attribute(record.getAttribute(ordinalPosition).dataType, newValue));
   }
 
   // to add new column to the table
@@ -141,7 +169,9 @@ public class Page {
               new Attribute(DataType.SMALLINT, columnInfo.ordinalPosition.toString()),
               new Attribute(DataType.TEXT, columnInfo.isNullable ? "YES" : "NO"),
               columnInfo.isPrimaryKey ? new Attribute(DataType.TEXT, "PRI") : new Attribute(DataType.NULL, "NULL"),
-              new Attribute(DataType.TEXT, columnInfo.isUnique ? "YES" : "NO")));
+              new Attribute(DataType.TEXT, columnInfo.isUnique ? "YES" : "NO"),
+              columnInfo.getIndexTypes() == null ? new Attribute(DataType.NULL, "NULL")
+                  : new Attribute(DataType.TEXT, columnInfo.getIndexTypes())));
     } catch (Exception e) {
       Utils.log(Constants.PageOperations.COLUMN_ADD_ERROR);
     }
@@ -149,51 +179,44 @@ public class Page {
 
   // to add new table entry
   public int addTableRow(String tableName, List<Attribute> attributes) throws IOException {
-    List<Byte> colDataTypes = new ArrayList<>();
-    List<Byte> recordBody = new ArrayList<>();
-
-    TableMetaData metaData = null;
     if (DavisBaseBinaryFile.dataStoreInitialized) {
-      metaData = new TableMetaData(tableName);
+      TableMetaData metaData = new TableMetaData(tableName);
       if (!metaData.validateInsert(attributes))
         return -1;
     }
 
-    // loop to add values to the attributes
-    for (Attribute attribute : attributes) {
-
-      recordBody.addAll(Arrays.asList(attribute.fieldValueByte));
+    return appendTableRow(tableName, attributes);
+  }
 
-      if (attribute.dataType == DataType.TEXT) {
-        colDataTypes.add(Integer.valueOf(DataType.TEXT.getValue() + (attribute.fieldValue.length())).byteValue());
-      } else {
-        colDataTypes.add(attribute.dataType.getValue());
-      }
-    }
+  // to add a table entry whose unique columns were already checked
+  public int appendTableRow(String tableName, List<Attribute> attributes) throws IOException {
+    return writeTableRow(tableName, attributes, binaryFile.nextRowId());
+  }
 
-    lastRowId++;
+  // to write back a row that was deleted to be resized, keeping its rowid so indexes stay valid
+  public int reinsertTableRow(String tableName, List<Attribute> attributes, int rowId) throws IOException {
+    return writeTableRow(tableName, attributes, rowId);
+  }
 
-    short payLoadSize = Integer.valueOf(recordBody.size() +
-        colDataTypes.size() + 1).shortValue();
+  private int incomingRowId;
 
-    List<Byte> recordHeader = new ArrayList<>();
+  private int writeTableRow(String tableName, List<Attribute> attributes, int rowId) throws IOException {
+    lastRowId = Math.max(lastRowId, rowId);
+    incomingRowId = rowId;
 
-    recordHeader.addAll(Arrays.asList(ByteConvertor.shortToBytes(payLoadSize)));
-    recordHeader.addAll(Arrays.asList(ByteConvertor.intToBytes(lastRowId)));
-    recordHeader.add(Integer.valueOf(colDataTypes.size()).byteValue());
-    recordHeader.addAll(colDataTypes);
+    addNewPageRecord(CellCodec.tableCellSize(attributes),
+        (image, offset) -> CellCodec.writeTableCell(image, offset, rowId, attributes));
 
-    addNewPageRecord(recordHeader.toArray(new Byte[0]),
-        recordBody.toArray(new Byte[0]));
+    // the row is on this page, which an overflow moved to the leaf it belongs to
+    if (binaryFile.getZoneMap() != null)
+      binaryFile.getZoneMap().addRow(pageNo, attributes);
 
     refreshTableRecords = true;
-    if (DavisBaseBinaryFile.dataStoreInitialized) {
-      assert metaData != null;
-      metaData.recordCount++;
-      metaData.updateMetaData();
-    }
+    binaryFile.adjustRecordCount(1);
+    if (DavisBaseBinaryFile.dataStoreInitialized)
+      TableMetaData.recordCountChanged(tableName, 1);
 
-    return lastRowId;
+    return rowId;
   }
 
   // to fetch the page records
@@ -207,24 +230,30 @@ public class Page {
     return records;
   }
 
+  // to get the record of a rowid, null when the row is not on this page
+  public TableRecord getRecord(int rowId) {
+    getPageRecords();
+    return recordsMap.get(rowId);
+  }
+
   // to delete page records using record index
   private void DeletePageRecord(short recordIndex) {
     try {
-      for (int i = recordIndex + 1; i < noOfCells; i++) {
-        binaryFile.seek(pageStart + 0x10 + (i * 2L));
-        short cellStart = binaryFile.readShort();
-
-        if (cellStart == 0)
-          continue;
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        ByteBuffer image = frame.buffer;
 
-        binaryFile.seek(pageStart + 0x10 + ((i - 1) * 2L));
-        binaryFile.writeShort(cellStart);
-      }
+        // shift the cell pointers after the deleted one left in a single copy
+        System.arraycopy(image.array(), 0x10 + (recordIndex + 1) * 2, image.array(), 0x10 + recordIndex * 2,
+            Math.max(0, noOfCells - recordIndex - 1) * 2);
 
-      noOfCells--;
+        noOfCells--;
 
-      binaryFile.seek(pageStart + 2);
-      binaryFile.writeShort(noOfCells);
+        image.putShort(2, noOfCells);
+        BufferPool.markDirty(frame, binaryFile, 2, 0x10 + (noOfCells + 1) * 2);
+      } finally {
+        BufferPool.unpin(frame);
+      }
 
     } catch (IOException e) {
       Utils.log(Constants.RecordOperations.RECORD_DELETE_ERROR + recordIndex + "in page " + pageNo);
@@ -234,48 +263,60 @@ public class Page {
   // to delete table records using record index
   public void DeleteTableRecord(String tableName, short recordIndex) {
     DeletePageRecord(recordIndex);
-    TableMetaData metaData = new TableMetaData(tableName);
-    metaData.recordCount--;
-    metaData.updateMetaData();
+    try {
+      binaryFile.adjustRecordCount(-1);
+    } catch (IOException e) {
+      Utils.log(Constants.RecordOperations.RECORD_DELETE_ERROR + recordIndex + "in page " + pageNo);
+    }
+    TableMetaData.recordCountChanged(tableName, -1);
     refreshTableRecords = true;
   }
 
+  // encodes a cell into the page image at the given offset
+  private interface CellWriter {
+    void write(ByteBuffer image, int offset);
+  }
+
   // to add new page records
-  private void addNewPageRecord(Byte[] recordHeader, Byte[] recordBody) throws IOException {
+  private void addNewPageRecord(int cellSize, CellWriter cellWriter) throws IOException {
+
+    if (cellSize + 4 > availableSpace) {
+      // the split adds the incoming index value, a value it cannot store fails the statement
+      if (pageType != PageType.LEAF) {
+        handleIndexOverflow();
+        return;
+      }
 
-    if (recordHeader.length + recordBody.length + 4 > availableSpace) {
       try {
-        if (pageType == PageType.LEAF || pageType == PageType.INTERIOR) {
-          handleTableOverFlow();
-        } else {
-          handleIndexOverflow();
-          return;
-        }
+        handleTableOverFlow(cellSize);
       } catch (IOException e) {
         Utils.log(Constants.PageOperations.TABLE_OVERFLOW_ERROR);
       }
     }
 
-    short cellStart = contentStartOffset;
+    int cellStart = contentStartOffset;
 
-    short newCellStart = Integer.valueOf((cellStart - recordBody.length - recordHeader.length - 2)).shortValue();
-    binaryFile.seek((long) pageNo * DavisBaseBinaryFile.pageSize + newCellStart);
+    int newCellStart = cellStart - cellSize - 2;
 
-    binaryFile.write(ByteConvertor.Bytestobytes(recordHeader));
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      cellWriter.write(image, newCellStart);
 
-    binaryFile.write(ByteConvertor.Bytestobytes(recordBody));
+      image.putShort(0x10 + (noOfCells * 2), (short) newCellStart);
 
-    binaryFile.seek(pageStart + 0x10 + (noOfCells * 2));
-    binaryFile.writeShort(newCellStart);
+      contentStartOffset = newCellStart;
 
-    contentStartOffset = newCellStart;
+      image.putShort(4, (short) contentStartOffset);
 
-    binaryFile.seek(pageStart + 4);
-    binaryFile.writeShort(contentStartOffset);
+      noOfCells++;
+      image.putShort(2, noOfCells);
 
-    noOfCells++;
-    binaryFile.seek(pageStart + 2);
-    binaryFile.writeShort(noOfCells);
+      // header, cell pointer and cell are written back as one region
+      BufferPool.markDirty(frame, binaryFile, 2, newCellStart + cellSize);
+    } finally {
+      BufferPool.unpin(frame);
+    }
 
     availableSpace = contentStartOffset - 0x10 - (noOfCells * 2);
   }
@@ -284,11 +325,40 @@ public class Page {
 
   // to handle index overflow
   private void handleIndexOverflow() throws IOException {
+    // each cell takes its pointer and two spare bytes besides its own size
+    boolean interior = pageType == PageType.INTERIORINDEX;
+    int incomingCellSize = CellCodec.indexCellSize(interior, incomingInsert.indexValue,
+        new HashSet<>(incomingInsert.rowids).size());
+
+    // a value whose row ids do not fit in a page on their own cannot be stored by splitting
+    if (0x10 + 4 + incomingCellSize + 4 > binaryFile.pageSize)
+      throw new IOException(Constants.PageOperations.PAGE_OVERFLOW_ERROR);
+
+    int usedSpace = 0x10 + (sortedIndexRecords.size() + 1) * 4 + incomingCellSize;
+    for (IndexRecord record : sortedIndexRecords)
+      usedSpace += CellCodec.indexCellSize(interior, record.getIndexNode().indexValue, record.rowIds.size());
+
+    // to reclaim the space of deleted and rewritten values when that makes room for the incoming one
+    if (usedSpace + 4 <= binaryFile.pageSize) {
+      List<IndexRecord> indexRecordsTemp = new ArrayList<>(sortedIndexRecords);
+      IndexRecord.IndexNode incomingInsertTemp = this.incomingInsert;
+
+      cleanPage();
+
+      for (IndexRecord record : indexRecordsTemp) {
+        addIndex(record.getIndexNode(), record.leftPageNo);
+      }
+
+      addIndex(incomingInsertTemp, incomingInsertTemp.leftPageNo);
+      return;
+    }
+
     if (pageType == PageType.LEAFINDEX) {
 
       if (parentPageNo == -1) {
 
         parentPageNo = addNewPage(binaryFile, PageType.INTERIORINDEX, pageNo, -1);
+        binaryFile.setRootPageNo(parentPageNo);
       }
 
       int newLeftLeafPageNo = addNewPage(binaryFile, PageType.LEAFINDEX, pageNo, parentPageNo);
@@ -303,8 +373,7 @@ public class Page {
 
       Page parentPage = new Page(binaryFile, parentPageNo);
 
-      int comparisonResult = Condition.compare(incomingInsertTemp.indexValue.fieldValue,
-          toInsertParentIndexNode.indexValue.fieldValue, incomingInsert.indexValue.dataType);
+      int comparisonResult = IndexRecord.IndexNode.KEY_ORDER.compare(incomingInsertTemp, toInsertParentIndexNode);
 
       if (comparisonResult == 0) {
         toInsertParentIndexNode.rowids.addAll(incomingInsertTemp.rowids);
@@ -312,37 +381,35 @@ public class Page {
         shiftPage(parentPage);
         return;
       } else if (comparisonResult < 0) {
-        leftLeafPage.addIndex(incomingInsertTemp);
+        leftLeafPage.addIndex(incomingInsertTemp, incomingInsertTemp.leftPageNo);
         shiftPage(leftLeafPage);
       } else {
-        addIndex(incomingInsertTemp);
+        addIndex(incomingInsertTemp, incomingInsertTemp.leftPageNo);
       }
 
       parentPage.addIndex(toInsertParentIndexNode, newLeftLeafPageNo);
     } else {
       if (noOfCells < 3 && !idxPageCleaned) {
         idxPageCleaned = true;
-        String[] indexValuesTemp = getIndexValues().toArray(new String[0]);
-        HashMap<String, IndexRecord> indexValuePointerTemp = (HashMap<String, IndexRecord>) indexValuePointer.clone();
+        List<IndexRecord> indexRecordsTemp = new ArrayList<>(sortedIndexRecords);
         IndexRecord.IndexNode incomingInsertTemp = this.incomingInsert;
 
         cleanPage();
 
-        for (String s : indexValuesTemp) {
-          addIndex(indexValuePointerTemp.get(s).getIndexNode(), indexValuePointerTemp.get(s).leftPageNo);
+        for (IndexRecord record : indexRecordsTemp) {
+          addIndex(record.getIndexNode(), record.leftPageNo);
         }
 
-        addIndex(incomingInsertTemp);
+        addIndex(incomingInsertTemp, incomingInsertTemp.leftPageNo);
         return;
       }
 
-      if (idxPageCleaned) {
-        Utils.log(Constants.PageOperations.PAGE_OVERFLOW_ERROR);
-        return;
-      }
+      if (idxPageCleaned)
+        throw new IOException(Constants.PageOperations.PAGE_OVERFLOW_ERROR);
 
       if (parentPageNo == -1) {
         parentPageNo = addNewPage(binaryFile, PageType.INTERIORINDEX, pageNo, -1);
+        binaryFile.setRootPageNo(parentPageNo);
       }
 
       int newLeftInteriorPageNo = addNewPage(binaryFile, PageType.INTERIORINDEX, pageNo, parentPageNo);
@@ -357,45 +424,63 @@ public class Page {
 
       Page parentPage = new Page(binaryFile, parentPageNo);
 
-      int comparisonResult = Condition.compare(incomingInsertTemp.indexValue.fieldValue,
-          toInsertParentIndexNode.indexValue.fieldValue, incomingInsert.indexValue.dataType);
+      int comparisonResult = IndexRecord.IndexNode.KEY_ORDER.compare(incomingInsertTemp, toInsertParentIndexNode);
 
-      Page middleOrphan = new Page(binaryFile, toInsertParentIndexNode.leftPageNo);
-      middleOrphan.setParent(parentPageNo);
-      leftInteriorPage.setRightPageNo(middleOrphan.pageNo);
+      // the left child of the middle value becomes the right page of the new left page
+      leftInteriorPage.setRightPageNo(toInsertParentIndexNode.leftPageNo);
+
+      int rightInteriorPageNo = pageNo;
 
       if (comparisonResult == 0) {
         toInsertParentIndexNode.rowids.addAll(incomingInsertTemp.rowids);
+        adoptIndexChildren(newLeftInteriorPageNo);
+        adoptIndexChildren(rightInteriorPageNo);
         parentPage.addIndex(toInsertParentIndexNode, newLeftInteriorPageNo);
         shiftPage(parentPage);
         return;
       } else if (comparisonResult < 0) {
-        leftInteriorPage.addIndex(incomingInsertTemp);
+        leftInteriorPage.addIndex(incomingInsertTemp, incomingInsertTemp.leftPageNo);
         shiftPage(leftInteriorPage);
       } else {
-        addIndex(incomingInsertTemp);
+        addIndex(incomingInsertTemp, incomingInsertTemp.leftPageNo);
       }
 
+      adoptIndexChildren(newLeftInteriorPageNo);
+      adoptIndexChildren(rightInteriorPageNo);
       parentPage.addIndex(toInsertParentIndexNode, newLeftInteriorPageNo);
     }
   }
 
+  // to point the children of an interior index page at it after values moved between pages
+  private void adoptIndexChildren(int interiorPageNo) throws IOException {
+    Page interiorPage = new Page(binaryFile, interiorPageNo);
+
+    for (IndexRecord record : interiorPage.indexValuePointer.values()) {
+      if (record.leftPageNo != -1)
+        setParent(binaryFile, record.leftPageNo, interiorPageNo);
+    }
+
+    if (interiorPage.rightPage != -1)
+      setParent(binaryFile, interiorPage.rightPage, interiorPageNo);
+  }
+
   // removes previous values and resets the page
   private void cleanPage() throws IOException {
 
     noOfCells = 0;
-    contentStartOffset = Long.valueOf(DavisBaseBinaryFile.pageSize).shortValue();
+    contentStartOffset = binaryFile.pageSize;
     availableSpace = contentStartOffset - 0x10;
-    byte[] emptybytes = new byte[512 - 16];
-    Arrays.fill(emptybytes, (byte) 0);
-    binaryFile.seek(pageStart + 16);
-    binaryFile.write(emptybytes);
-    binaryFile.seek(pageStart + 2);
-    binaryFile.writeShort(noOfCells);
-    binaryFile.seek(pageStart + 4);
-    binaryFile.writeShort(contentStartOffset);
-    lIndexValues = new TreeSet<>();
-    sIndexValues = new TreeSet<>();
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      Arrays.fill(image.array(), 16, binaryFile.pageSize, (byte) 0);
+      image.putShort(2, noOfCells);
+      image.putShort(4, (short) contentStartOffset);
+      BufferPool.markDirty(frame, binaryFile, 2, binaryFile.pageSize);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+    sortedIndexRecords = new TreeSet<>(IndexRecord.KEY_ORDER);
     indexValuePointer = new HashMap<>();
 
   }
@@ -404,27 +489,20 @@ public class Page {
   private IndexRecord.IndexNode splitIndexRecordsBetweenPages(Page newleftPage) throws IOException {
 
     try {
-      int mid = getIndexValues().size() / 2;
-      String[] indexValuesTemp = getIndexValues().toArray(new String[0]);
+      List<IndexRecord> indexRecordsTemp = new ArrayList<>(sortedIndexRecords);
+      int mid = indexRecordsTemp.size() / 2;
 
-      IndexRecord.IndexNode toInsertParentIndexNode = indexValuePointer.get(indexValuesTemp[mid]).getIndexNode();
-      toInsertParentIndexNode.leftPageNo = indexValuePointer.get(indexValuesTemp[mid]).leftPageNo;
-
-      HashMap<String, IndexRecord> indexValuePointerTemp = (HashMap<String, IndexRecord>) indexValuePointer.clone();
+      IndexRecord.IndexNode toInsertParentIndexNode = indexRecordsTemp.get(mid).getIndexNode();
+      toInsertParentIndexNode.leftPageNo = indexRecordsTemp.get(mid).leftPageNo;
 
       for (int i = 0; i < mid; i++) {
-        newleftPage.addIndex(indexValuePointerTemp.get(indexValuesTemp[i]).getIndexNode(),
-            indexValuePointerTemp.get(indexValuesTemp[i]).leftPageNo);
+        newleftPage.addIndex(indexRecordsTemp.get(i).getIndexNode(), indexRecordsTemp.get(i).leftPageNo);
       }
 
       cleanPage();
-      sIndexValues = new TreeSet<>();
-      lIndexValues = new TreeSet<>();
-      indexValuePointer = new HashMap<>();
 
-      for (int i = mid + 1; i < indexValuesTemp.length; i++) {
-        addIndex(indexValuePointerTemp.get(indexValuesTemp[i]).getIndexNode(),
-            indexValuePointerTemp.get(indexValuesTemp[i]).leftPageNo);
+      for (int i = mid + 1; i < indexRecordsTemp.size(); i++) {
+        addIndex(indexRecordsTemp.get(i).getIndexNode(), indexRecordsTemp.get(i).leftPageNo);
       }
 
       return toInsertParentIndexNode;
@@ -434,81 +512,178 @@ public class Page {
     }
   }
 
-  // to handle table overflow
-  private void handleTableOverFlow() throws IOException {
-    int newRightLeafPageNo = addNewPage(binaryFile, pageType, -1, -1);
-    if (pageType == PageType.LEAF) {
+  // to handle table overflow, leaving this page on the leaf the incoming row belongs to
+  private void handleTableOverFlow(int cellSize) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    ByteBuffer snapshot;
+    try {
+      snapshot = ByteBuffer.wrap(Arrays.copyOf(frame.buffer.array(), binaryFile.pageSize));
+    } finally {
+      BufferPool.unpin(frame);
+    }
 
-      if (parentPageNo == -1) {
+    // live cells as {rowid, offset, length}, the space of deleted and resized rows is not among them
+    List<int[]> cells = new ArrayList<>();
+    int liveBytes = 0;
+    int maxRowId = Integer.MIN_VALUE;
+    for (int i = 0; i < noOfCells; i++) {
+      int cellStart = Short.toUnsignedInt(snapshot.getShort(0x10 + (i * 2)));
+      if (cellStart == 0)
+        continue;
+
+      int length = 6 + Short.toUnsignedInt(snapshot.getShort(cellStart));
+      int rowId = snapshot.getInt(cellStart + 2);
+      cells.add(new int[] { rowId, cellStart, length });
+      liveBytes += length;
+      maxRowId = Math.max(maxRowId, rowId);
+    }
 
-        int newParentPageNo = addNewPage(binaryFile, PageType.INTERIOR,
-            newRightLeafPageNo, -1);
+    // to reclaim the space of removed rows when that makes room for the incoming one
+    if (binaryFile.pageSize - liveBytes - 0x10 - (noOfCells * 2) >= cellSize + 4) {
+      writeTableCells(pageNo, snapshot, cells);
+      shiftPage(new Page(binaryFile, pageNo));
+      return;
+    }
 
-        setRightPageNo(newRightLeafPageNo);
+    int incomingRowId = this.incomingRowId;
+    boolean rightMost = parentPageNo == -1 || getRightPageNo(binaryFile, parentPageNo) == pageNo;
 
-        setParent(newParentPageNo);
+    // a new leaf takes over the next leaf link of the page it splits from
+    int newLeafPageNo = addNewPage(binaryFile, PageType.LEAF, rightPage, parentPageNo);
+    int separator;
 
-        Page newParentPage = new Page(binaryFile, newParentPageNo);
-        newParentPageNo = newParentPage.addLeftTableChild(pageNo, lastRowId);
+    if (rightMost && incomingRowId > maxRowId) {
+      // appended rows start the new right most leaf
+      separator = incomingRowId;
+    } else {
+      // the rows from the middle rowid on move to the new leaf
+      List<Integer> rowIds = new ArrayList<>();
+      for (int[] cell : cells)
+        rowIds.add(cell[0]);
+      rowIds.add(incomingRowId);
+      Collections.sort(rowIds);
+      separator = rowIds.get(rowIds.size() / 2);
+
+      List<int[]> keptCells = new ArrayList<>();
+      List<int[]> movedCells = new ArrayList<>();
+      for (int[] cell : cells)
+        (cell[0] < separator ? keptCells : movedCells).add(cell);
+
+      writeTableCells(newLeafPageNo, snapshot, movedCells);
+      writeTableCells(pageNo, snapshot, keptCells);
+    }
 
-        newParentPage.setRightPageNo(newRightLeafPageNo);
+    setRightPageNo(newLeafPageNo);
+    insertTableChild(parentPageNo, pageNo, separator, newLeafPageNo);
 
-        Page newLeafPage = new Page(binaryFile, newRightLeafPageNo);
-        newLeafPage.setParent(newParentPageNo);
+    Page targetPage = new Page(binaryFile, incomingRowId < separator ? pageNo : newLeafPageNo);
+    shiftPage(targetPage);
 
-        shiftPage(newLeafPage);
-      } else {
+    if (cellSize + 4 > availableSpace)
+      handleTableOverFlow(cellSize);
+  }
 
-        Page parentPage = new Page(binaryFile, parentPageNo);
-        parentPageNo = parentPage.addLeftTableChild(pageNo, lastRowId);
+  // to rewrite the cells of a table leaf from a page image, packed against the end of the page
+  private void writeTableCells(int targetPageNo, ByteBuffer source, List<int[]> cells) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, targetPageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      Arrays.fill(image.array(), 0x10, binaryFile.pageSize, (byte) 0);
+
+      int cellStart = binaryFile.pageSize;
+      int pointer = 0x10;
+      for (int[] cell : cells) {
+        cellStart -= cell[2];
+        System.arraycopy(source.array(), cell[1], image.array(), cellStart, cell[2]);
+        image.putShort(pointer, (short) cellStart);
+        pointer += 2;
+      }
 
-        parentPage.setRightPageNo(newRightLeafPageNo);
+      image.putShort(2, (short) cells.size());
+      image.putShort(4, (short) cellStart);
+      BufferPool.markDirty(frame, binaryFile, 2, binaryFile.pageSize);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
 
-        setRightPageNo(newRightLeafPageNo);
+  // to add the key between a split page and its new right page to their parent, splitting full parents
+  private void insertTableChild(int parentNo, int leftPageNo, int key, int rightPageNo) throws IOException {
+    if (parentNo == -1) {
+      int rootPageNo = addNewPage(binaryFile, PageType.INTERIOR, rightPageNo, -1);
+      writeInteriorCells(rootPageNo, Collections.singletonList(new TableInteriorRecord(key, leftPageNo)),
+          rightPageNo);
+      setParent(binaryFile, leftPageNo, rootPageNo);
+      setParent(binaryFile, rightPageNo, rootPageNo);
+      binaryFile.setRootPageNo(rootPageNo);
+      return;
+    }
 
-        Page newLeafPage = new Page(binaryFile, newRightLeafPageNo);
-        newLeafPage.setParent(parentPageNo);
+    Page parentPage = new Page(binaryFile, parentNo);
+    List<TableInteriorRecord> children = new ArrayList<>(parentPage.leftChildren);
+    int parentRightPage = parentPage.rightPage;
 
-        shiftPage(newLeafPage);
-      }
+    // the new page takes the place of the split one, which becomes the left child of the key
+    if (parentRightPage == leftPageNo) {
+      parentRightPage = rightPageNo;
     } else {
+      for (TableInteriorRecord child : children) {
+        if (child.leftChildPageNo == leftPageNo)
+          child.leftChildPageNo = rightPageNo;
+      }
+    }
 
-      int newParentPageNo = addNewPage(binaryFile, PageType.INTERIOR,
-          newRightLeafPageNo, -1);
-
-      setRightPageNo(newRightLeafPageNo);
+    int position = 0;
+    while (position < children.size() && children.get(position).rowId < key)
+      position++;
+    children.add(position, new TableInteriorRecord(key, leftPageNo));
+    setParent(binaryFile, rightPageNo, parentNo);
 
-      setParent(newParentPageNo);
+    if (0x10 + children.size() * (CellCodec.interiorCellSize() + 2) <= binaryFile.pageSize) {
+      writeInteriorCells(parentNo, children, parentRightPage);
+      return;
+    }
 
-      Page newParentPage = new Page(binaryFile, newParentPageNo);
-      newParentPageNo = newParentPage.addLeftTableChild(pageNo, lastRowId);
+    // the middle key moves up, its left child becomes the right page of the lower half
+    int mid = children.size() / 2;
+    TableInteriorRecord middle = children.get(mid);
+    List<TableInteriorRecord> upperChildren = new ArrayList<>(children.subList(mid + 1, children.size()));
+    int newInteriorPageNo = addNewPage(binaryFile, PageType.INTERIOR, parentRightPage, parentPage.parentPageNo);
 
-      newParentPage.setRightPageNo(newRightLeafPageNo);
+    writeInteriorCells(parentNo, children.subList(0, mid), middle.leftChildPageNo);
+    writeInteriorCells(newInteriorPageNo, upperChildren, parentRightPage);
 
-      Page newLeafPage = new Page(binaryFile, newRightLeafPageNo);
-      newLeafPage.setParent(newParentPageNo);
+    for (TableInteriorRecord child : upperChildren)
+      setParent(binaryFile, child.leftChildPageNo, newInteriorPageNo);
+    setParent(binaryFile, parentRightPage, newInteriorPageNo);
 
-      shiftPage(newLeafPage);
-    }
+    insertTableChild(parentPage.parentPageNo, parentNo, middle.rowId, newInteriorPageNo);
   }
 
-  // adds left children and returns page no
-  private int addLeftTableChild(int leftChildPageNo, int rowId) throws IOException {
-    for (TableInteriorRecord intRecord : leftChildren) {
-      if (intRecord.rowId == rowId)
-        return pageNo;
-    }
-
-    if (pageType == PageType.INTERIOR) {
-
-      List<Byte> recordHeader = new ArrayList<>(Arrays.asList(ByteConvertor.intToBytes(leftChildPageNo)));
-      List<Byte> recordBody = new ArrayList<>(Arrays.asList(ByteConvertor.intToBytes(rowId)));
+  // to rewrite an interior table page with its children in key order
+  private void writeInteriorCells(int interiorPageNo, List<TableInteriorRecord> children, int rightPageNo)
+      throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, interiorPageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      Arrays.fill(image.array(), 0x10, binaryFile.pageSize, (byte) 0);
+
+      int cellStart = binaryFile.pageSize;
+      int pointer = 0x10;
+      for (TableInteriorRecord child : children) {
+        cellStart -= CellCodec.interiorCellSize();
+        CellCodec.writeInteriorCell(image, cellStart, child.leftChildPageNo, child.rowId);
+        image.putShort(pointer, (short) cellStart);
+        pointer += 2;
+      }
 
-      addNewPageRecord(recordHeader.toArray(new Byte[0]),
-          recordBody.toArray(new Byte[0]));
+      image.putShort(2, (short) children.size());
+      image.putShort(4, (short) cellStart);
+      image.putInt(6, rightPageNo);
+      BufferPool.markDirty(frame, binaryFile, 2, binaryFile.pageSize);
+    } finally {
+      BufferPool.unpin(frame);
     }
-
-    return pageNo;
   }
 
   // to shift existing page to handle overflow
@@ -520,31 +695,44 @@ public class Page {
     rightPage = newPage.rightPage;
     parentPageNo = newPage.parentPageNo;
     leftChildren = newPage.leftChildren;
-    sIndexValues = newPage.sIndexValues;
-    lIndexValues = newPage.lIndexValues;
+    sortedIndexRecords = newPage.sortedIndexRecords;
     indexValuePointer = newPage.indexValuePointer;
     records = newPage.records;
-    pageStart = newPage.pageStart;
     availableSpace = newPage.availableSpace;
   }
 
   // to set parent for a page
   public void setParent(int parentPageNo) throws IOException {
-    binaryFile.seek((long) DavisBaseBinaryFile.pageSize * pageNo + 0x0A);
-    binaryFile.writeInt(parentPageNo);
+    setParent(binaryFile, pageNo, parentPageNo);
     this.parentPageNo = parentPageNo;
   }
 
+  // to set the parent of a page without decoding it
+  private static void setParent(PageFile file, int pageNo, int parentPageNo) throws IOException {
+    BufferPool.Frame frame = BufferPool.pin(file, pageNo);
+    try {
+      frame.buffer.putInt(0x0A, parentPageNo);
+      BufferPool.markDirty(frame, file, 0x0A, 0x0E);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
   // to set right page
   public void setRightPageNo(int rightPageNo) throws IOException {
-    binaryFile.seek((long) DavisBaseBinaryFile.pageSize * pageNo + 0x06);
-    binaryFile.writeInt(rightPageNo);
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+    try {
+      frame.buffer.putInt(0x06, rightPageNo);
+      BufferPool.markDirty(frame, binaryFile, 0x06, 0x0A);
+    } finally {
+      BufferPool.unpin(frame);
+    }
     this.rightPage = rightPageNo;
   }
 
   // to delete index
   public void DeleteIndex(IndexRecord.IndexNode node) throws IOException {
-    DeletePageRecord(indexValuePointer.get(node.indexValue.fieldValue).pageHeaderIndex);
+    DeletePageRecord(indexValuePointer.get(node.getPointerKey()).pageHeaderIndex);
     fillIndexRecords();
     refreshHeaderOffset();
   }
@@ -562,51 +750,39 @@ public class Page {
     incomingInsert.leftPageNo = leftPageNo;
     List<Integer> rowIds = new ArrayList<>();
 
-    getIndexValues();
+    IndexRecord existing = indexValuePointer.get(node.getPointerKey());
+
+    // checked before the cell is touched, so a value that outgrows its page is left as it was
+    Set<Integer> cellRowIds = new HashSet<>(node.rowids);
+    if (existing != null)
+      cellRowIds.addAll(existing.rowIds);
+
+    if (!CellCodec.indexCellFits(binaryFile.pageSize, node.indexValue, cellRowIds.size()))
+      throw new IOException(Constants.PageOperations.PAGE_OVERFLOW_ERROR);
 
-    if (getIndexValues().contains(node.indexValue.fieldValue)) {
-      leftPageNo = indexValuePointer.get(node.indexValue.fieldValue).leftPageNo;
+    if (existing != null) {
+      leftPageNo = existing.leftPageNo;
       incomingInsert.leftPageNo = leftPageNo;
-      rowIds = indexValuePointer.get(node.indexValue.fieldValue).rowIds;
+      rowIds = existing.rowIds;
       rowIds.addAll(incomingInsert.rowids);
       incomingInsert.rowids = rowIds;
 
-      DeletePageRecord(indexValuePointer.get(node.indexValue.fieldValue).pageHeaderIndex);
+      DeletePageRecord(existing.pageHeaderIndex);
 
-      if (indexValueDataType == DataType.TEXT || indexValueDataType == null)
-        sIndexValues.remove(node.indexValue.fieldValue);
-      else
-        lIndexValues.remove(Long.parseLong(node.indexValue.fieldValue));
+      sortedIndexRecords.remove(existing);
     }
 
     rowIds.addAll(node.rowids);
 
     rowIds = new ArrayList<>(new HashSet<>(rowIds));
 
-    List<Byte> recordHead = new ArrayList<>();
+    boolean interior = pageType == PageType.INTERIORINDEX;
+    int indexLeftPageNo = leftPageNo;
+    List<Integer> indexRowIds = rowIds;
 
-    List<Byte> recordBody = new ArrayList<>(List.of(Integer.valueOf(rowIds.size()).byteValue()));
-
-    if (node.indexValue.dataType == DataType.TEXT)
-      recordBody.add(Integer.valueOf(node.indexValue.dataType.getValue()
-          + node.indexValue.fieldValue.length()).byteValue());
-    else
-      recordBody.add(node.indexValue.dataType.getValue());
-
-    recordBody.addAll(Arrays.asList(node.indexValue.fieldValueByte));
-
-    for (Integer rowId : rowIds) {
-      recordBody.addAll(Arrays.asList(ByteConvertor.intToBytes(rowId)));
-    }
-
-    short payload = Integer.valueOf(recordBody.size()).shortValue();
-    if (pageType == PageType.INTERIORINDEX)
-      recordHead.addAll(Arrays.asList(ByteConvertor.intToBytes(leftPageNo)));
-
-    recordHead.addAll(Arrays.asList(ByteConvertor.shortToBytes(payload)));
-
-    addNewPageRecord(recordHead.toArray(new Byte[0]),
-        recordBody.toArray(new Byte[0]));
+    addNewPageRecord(CellCodec.indexCellSize(interior, node.indexValue, rowIds.size()),
+        (image, offset) -> CellCodec.writeIndexCell(image, offset, interior, indexLeftPageNo, node.indexValue,
+            indexRowIds));
 
     fillIndexRecords();
     refreshHeaderOffset();
@@ -615,9 +791,16 @@ public class Page {
   // to refresh header offset
   private void refreshHeaderOffset() {
     try {
-      binaryFile.seek(pageStart + 0x10);
-      for (String indexVal : getIndexValues()) {
-        binaryFile.writeShort(indexValuePointer.get(indexVal).pageOffset);
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        int pointer = 0x10;
+        for (IndexRecord record : sortedIndexRecords) {
+          frame.buffer.putShort(pointer, (short) record.pageOffset);
+          pointer += 2;
+        }
+        BufferPool.markDirty(frame, binaryFile, 0x10, pointer);
+      } finally {
+        BufferPool.unpin(frame);
       }
 
     } catch (IOException ex) {
@@ -627,113 +810,116 @@ public class Page {
 
   // to fill the records
   private void fillTableRecords() {
-    short payLoadSize;
-    byte noOfcolumns;
+    try {
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        fillTableRecords(frame.buffer);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    } catch (IOException ex) {
+      Utils.log(Constants.PageOperations.RECORD_FILL_ERROR + ex.getMessage());
+    }
+  }
+
+  // to decode the records from the page image
+  private void fillTableRecords(ByteBuffer image) {
     records = new ArrayList<>();
     recordsMap = new HashMap<>();
 
-    try {
-      for (short i = 0; i < noOfCells; i++) {
-        binaryFile.seek(pageStart + 0x10 + (i * 2));
-        short cellStart = binaryFile.readShort();
-        if (cellStart == 0)
-          continue;
-        binaryFile.seek(pageStart + cellStart);
+    // the records read their columns from a copy of the page, the pool may reuse the frame
+    ByteBuffer snapshot = ByteBuffer.wrap(Arrays.copyOf(image.array(), image.capacity()));
+
+    for (short i = 0; i < noOfCells; i++) {
+      int cellStart = Short.toUnsignedInt(image.getShort(0x10 + (i * 2)));
+      if (cellStart == 0)
+        continue;
 
-        payLoadSize = binaryFile.readShort();
-        int rowId = binaryFile.readInt();
-        noOfcolumns = binaryFile.readByte();
+      int rowId = image.getInt(cellStart + 2);
 
-        if (lastRowId < rowId)
-          lastRowId = rowId;
+      if (lastRowId < rowId)
+        lastRowId = rowId;
 
-        byte[] colDatatypes = new byte[noOfcolumns];
-        byte[] recordBody = new byte[payLoadSize - noOfcolumns - 1];
+      TableRecord record = new TableRecord(i, rowId, cellStart, snapshot);
+      records.add(record);
+      recordsMap.put(rowId, record);
+    }
+  }
 
-        binaryFile.read(colDatatypes);
-        binaryFile.read(recordBody);
+  // to decode the left children of the page from the page image
+  private void fillLeftChildren(ByteBuffer image) {
+    leftChildren = new ArrayList<>();
 
-        TableRecord record = new TableRecord(i, rowId, cellStart, colDatatypes, recordBody);
-        records.add(record);
-        recordsMap.put(rowId, record);
-      }
-    } catch (IOException ex) {
-      Utils.log(Constants.PageOperations.RECORD_FILL_ERROR + ex.getMessage());
+    int leftChildPageNo;
+    int rowId;
+    for (int i = 0; i < noOfCells; i++) {
+      int cellStart = Short.toUnsignedInt(image.getShort(0x10 + (i * 2)));
+      if (cellStart == 0)
+        continue;
+
+      leftChildPageNo = image.getInt(cellStart);
+      rowId = image.getInt(cellStart + 4);
+      leftChildren.add(new TableInteriorRecord(rowId, leftChildPageNo));
     }
   }
 
-  // to fill the left children of the page
-  private void fillLeftChildren() {
+  // to fill index records
+  private void fillIndexRecords() {
     try {
-      leftChildren = new ArrayList<>();
-
-      int leftChildPageNo;
-      int rowId;
-      for (int i = 0; i < noOfCells; i++) {
-        binaryFile.seek(pageStart + 0x10 + (i * 2));
-        short cellStart = binaryFile.readShort();
-        if (cellStart == 0)
-          continue;
-        binaryFile.seek(pageStart + cellStart);
-
-        leftChildPageNo = binaryFile.readInt();
-        rowId = binaryFile.readInt();
-        leftChildren.add(new TableInteriorRecord(rowId, leftChildPageNo));
+      BufferPool.Frame frame = BufferPool.pin(binaryFile, pageNo);
+      try {
+        fillIndexRecords(frame.buffer);
+      } finally {
+        BufferPool.unpin(frame);
       }
     } catch (IOException ex) {
       Utils.log(Constants.PageOperations.RECORD_FILL_ERROR + ex.getMessage());
     }
   }
 
-  // to fill index records
-  private void fillIndexRecords() {
-    try {
-      lIndexValues = new TreeSet<>();
-      sIndexValues = new TreeSet<>();
-      indexValuePointer = new HashMap<>();
-
-      int leftPageNo = -1;
-      byte noOfRowIds;
-      byte dataType;
-      for (short i = 0; i < noOfCells; i++) {
-        binaryFile.seek(pageStart + 0x10 + (i * 2));
-        short cellStart = binaryFile.readShort();
-        if (cellStart == 0)
-          continue;
-        binaryFile.seek(pageStart + cellStart);
-
-        if (pageType == PageType.INTERIORINDEX)
-          leftPageNo = binaryFile.readInt();
+  // to decode the index records from the page image
+  private void fillIndexRecords(ByteBuffer image) {
+    sortedIndexRecords = new TreeSet<>(IndexRecord.KEY_ORDER);
+    indexValuePointer = new HashMap<>();
 
-        binaryFile.readShort();
+    int leftPageNo = -1;
+    int noOfRowIds;
+    byte dataType;
+    for (short i = 0; i < noOfCells; i++) {
+      int cellStart = Short.toUnsignedInt(image.getShort(0x10 + (i * 2)));
+      if (cellStart == 0)
+        continue;
+      int position = cellStart;
+
+      if (pageType == PageType.INTERIORINDEX) {
+        leftPageNo = image.getInt(position);
+        position += 4;
+      }
 
-        noOfRowIds = binaryFile.readByte();
-        dataType = binaryFile.readByte();
+      position += 2;
 
-        if (indexValueDataType == null && DataType.get(dataType) != DataType.NULL)
-          indexValueDataType = DataType.get(dataType);
+      noOfRowIds = Short.toUnsignedInt(image.getShort(position));
+      position += 2;
+      dataType = image.get(position++);
 
-        byte[] indexValue = new byte[DataType.getLength(dataType)];
-        binaryFile.read(indexValue);
+      if (indexValueDataType == null && DataType.get(dataType) != DataType.NULL)
+        indexValueDataType = DataType.get(dataType);
 
-        List<Integer> lstRowIds = new ArrayList<>();
-        for (int j = 0; j < noOfRowIds; j++) {
-          lstRowIds.add(binaryFile.readInt());
-        }
+      byte[] indexValue = IndexKey.decode(DataType.get(dataType), image, position, DataType.getLength(dataType));
+      position += indexValue.length;
 
-        IndexRecord record = new IndexRecord(i, DataType.get(dataType), noOfRowIds, indexValue, lstRowIds, leftPageNo,
-            rightPage, pageNo, cellStart);
+      List<Integer> lstRowIds = new ArrayList<>();
+      for (int j = 0; j < noOfRowIds; j++) {
+        lstRowIds.add(image.getInt(position));
+        position += 4;
+      }
 
-        if (indexValueDataType == DataType.TEXT || indexValueDataType == null)
-          sIndexValues.add(record.getIndexNode().indexValue.fieldValue);
-        else
-          lIndexValues.add(Long.parseLong(record.getIndexNode().indexValue.fieldValue));
+      IndexRecord record = new IndexRecord(i, DataType.get(dataType), noOfRowIds, indexValue, lstRowIds, leftPageNo,
+          rightPage, pageNo, cellStart);
 
-        indexValuePointer.put(record.getIndexNode().indexValue.fieldValue, record);
+      sortedIndexRecords.add(record);
+      indexValuePointer.put(record.getIndexNode().getPointerKey(), record);
 
-      }
-    } catch (IOException ex) {
-      Utils.log(Constants.PageOperations.RECORD_FILL_ERROR + ex.getMessage());
     }
   }
 
@@ -742,7 +928,13 @@ public class Page {
     INTERIOR((byte) 5),
     INTERIORINDEX((byte) 2),
     LEAF((byte) 13),
-    LEAFINDEX((byte) 10);
+    LEAFINDEX((byte) 10),
+    HASHDIRECTORY((byte) 6),
+    HASHBUCKET((byte) 14),
+    BITMAPDIRECTORY((byte) 7),
+    BITMAPCHUNK((byte) 15),
+    ZONEMAP((byte) 3),
+    BLOOMFILTER((byte) 11);
 
     private static final Map<Byte, PageType> pageTypeLookup = new HashMap<>();
 
@@ -782,25 +974,29 @@ public class Page {
   // defines the indexes to the page
   public static class IndexRecord {
 
-    public Byte noOfRowIds;
+    public int noOfRowIds;
     public DataType dataType;
-    public Byte[] indexValue;
+    public byte[] indexValue;
     public List<Integer> rowIds;
     public short pageHeaderIndex;
-    public short pageOffset;
+    public int pageOffset;
     int leftPageNo;
     int rightPageNo;
     int pageNo;
     private final IndexNode indexNode;
 
-    IndexRecord(short pageHeaderIndex, DataType dataType, Byte NoOfRowIds, byte[] indexValue, List<Integer> rowIds,
-        int leftPageNo, int rightPageNo, int pageNo, short pageOffset) {
+    // orders the records of a page like their cell pointers
+    static final Comparator<IndexRecord> KEY_ORDER = Comparator.comparing(IndexRecord::getIndexNode,
+        IndexNode.KEY_ORDER);
+
+    IndexRecord(short pageHeaderIndex, DataType dataType, int NoOfRowIds, byte[] indexValue, List<Integer> rowIds,
+        int leftPageNo, int rightPageNo, int pageNo, int pageOffset) {
 
       this.pageOffset = pageOffset;
       this.pageHeaderIndex = pageHeaderIndex;
       this.noOfRowIds = NoOfRowIds;
       this.dataType = dataType;
-      this.indexValue = ByteConvertor.byteToBytes(indexValue);
+      this.indexValue = indexValue;
       this.rowIds = rowIds;
 
       indexNode = new IndexNode(new Attribute(this.dataType, indexValue), rowIds);
@@ -817,11 +1013,33 @@ public class Page {
       public Attribute indexValue;
       public List<Integer> rowids;
       public int leftPageNo;
+      private byte[] key;
+
+      // orders nodes by encoded key, a NULL sorts before an empty TEXT value
+      public static final Comparator<IndexNode> KEY_ORDER = (node1, node2) -> {
+        int comparison = IndexKey.compare(node1.getKey(), node2.getKey());
+        if (comparison != 0)
+          return comparison;
+
+        return Boolean.compare(node1.indexValue.dataType != DataType.NULL, node2.indexValue.dataType != DataType.NULL);
+      };
 
       public IndexNode(Attribute indexValue, List<Integer> rowids) {
         this.indexValue = indexValue;
         this.rowids = rowids;
       }
+
+      public byte[] getKey() {
+        if (key == null)
+          key = IndexKey.encode(indexValue);
+        return key;
+      }
+
+      // identifies the value within a page, encoded keys are distinct where printed values may not be
+      public String getPointerKey() {
+        String prefix = indexValue.dataType == DataType.NULL ? "N" : "V";
+        return prefix + new String(getKey(), StandardCharsets.ISO_8859_1);
+      }
     }
 
   }
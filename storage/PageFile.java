@@ -0,0 +1,314 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import utils.Constants;
+
+/**
+ * A table or index file whose pages are read and written through the
+ * shared buffer pool. The path is kept so that every handle opened on the
+ * same file shares one set of cached pages.
+ * <p>
+ * Page 0 of every file is a header page. It starts with FILE_MAGIC followed
+ * by the power of two page size chosen when the file was created, so tree
+ * pages start at FIRST_PAGE_NO. The header also records the root page, the
+ * number of pages, the head of the free page list, the last rowid handed
+ * out and the number of records, so none of them has to be found by
+ * scanning the file. Index files also record the table columns they are
+ * keyed on, with the ordinal and type code of each, and hash index files
+ * the state of their linear hashing. The header is
+ * cached in the buffer pool like any other page. FILE_MAGIC changes with
+ * the layout of the cells or of the catalog, so files of an older layout
+ * are not opened.
+ */
+public class PageFile extends RandomAccessFile {
+
+  public static final int FILE_MAGIC = 0x44425334;
+  public static final int FIRST_PAGE_NO = 1;
+
+  // offsets of the header page fields
+  private static final int HEADER_ROOT_PAGE = 0x08;
+  private static final int HEADER_PAGE_COUNT = 0x0C;
+  private static final int HEADER_FREE_LIST = 0x10;
+  private static final int HEADER_LAST_ROWID = 0x14;
+  private static final int HEADER_RECORD_COUNT = 0x18;
+  private static final int HEADER_END = 0x1C;
+  private static final int HEADER_INDEX_COLUMNS = 0x1C;
+  // hash index files are keyed on one column, so their fields follow its ordinal and type code
+  private static final int HEADER_HASH_LEVEL = 0x20;
+  private static final int HEADER_HASH_NEXT_SPLIT = 0x24;
+
+  public final String path;
+  public final int pageSizePower;
+  public final int pageSize;
+  private final StorageBackend backend;
+  // the zone map of a table file, looked up once per handle
+  private ZoneMap zoneMap;
+  private boolean zoneMapLoaded;
+
+  public PageFile(String path, String mode) throws IOException {
+    this(path, mode, Constants.PAGE_SIZE_POWER);
+  }
+
+  // the page size is only used when the file is created, existing files keep their own
+  public PageFile(String path, String mode, int pageSizePower) throws IOException {
+    super(path, mode);
+    this.path = path;
+
+    try {
+      if (length() == 0) {
+        this.pageSizePower = pageSizePower;
+        if (!mode.equals(Constants.READ_MODE))
+          writeNewHeader();
+      } else {
+        seek(0);
+        if (readInt() != FILE_MAGIC)
+          throw new IOException(Constants.PageOperations.FILE_FORMAT_ERROR + path);
+        this.pageSizePower = readByte();
+      }
+    } catch (IOException e) {
+      super.close();
+      throw e;
+    }
+
+    this.pageSize = 1 << this.pageSizePower;
+
+    if (Constants.STORAGE_MODE == Constants.StorageMode.MEMORY_MAPPED)
+      backend = new StorageBackend.MemoryMapped(this, mode);
+    else
+      backend = new StorageBackend.RandomAccess(this);
+  }
+
+  // to check if a file was written with the current header format
+  public static boolean hasValidHeader(String path) {
+    try (RandomAccessFile file = new RandomAccessFile(path, Constants.READ_MODE)) {
+      return file.length() >= Integer.BYTES && file.readInt() == FILE_MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public int getRootPageNo() throws IOException {
+    return getHeaderField(HEADER_ROOT_PAGE);
+  }
+
+  // to record a new root page after a root split
+  public void setRootPageNo(int rootPageNo) throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      header.buffer.putInt(HEADER_ROOT_PAGE, rootPageNo);
+      BufferPool.markDirty(header, this, HEADER_ROOT_PAGE, HEADER_ROOT_PAGE + Integer.BYTES);
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  public int getPageCount() throws IOException {
+    return getHeaderField(HEADER_PAGE_COUNT);
+  }
+
+  public int getLastRowId() throws IOException {
+    return getHeaderField(HEADER_LAST_ROWID);
+  }
+
+  // to record the table columns an index file is keyed on, the indexed column first
+  public void setIndexColumns(int[] ordinals, DataType[] dataTypes) throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      ByteBuffer image = header.buffer;
+      image.put(HEADER_INDEX_COLUMNS, (byte) ordinals.length);
+
+      for (int i = 0; i < ordinals.length; i++) {
+        image.put(HEADER_INDEX_COLUMNS + 1 + i * 2, (byte) ordinals[i]);
+        image.put(HEADER_INDEX_COLUMNS + 2 + i * 2, dataTypes[i].getValue());
+      }
+
+      BufferPool.markDirty(header, this, HEADER_INDEX_COLUMNS, HEADER_INDEX_COLUMNS + 1 + ordinals.length * 2);
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  public int[] getIndexColumnOrdinals() throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      int[] ordinals = new int[header.buffer.get(HEADER_INDEX_COLUMNS)];
+      for (int i = 0; i < ordinals.length; i++)
+        ordinals[i] = header.buffer.get(HEADER_INDEX_COLUMNS + 1 + i * 2);
+      return ordinals;
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  public DataType[] getIndexColumnTypes() throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      DataType[] dataTypes = new DataType[header.buffer.get(HEADER_INDEX_COLUMNS)];
+      for (int i = 0; i < dataTypes.length; i++)
+        dataTypes[i] = DataType.get(header.buffer.get(HEADER_INDEX_COLUMNS + 2 + i * 2));
+      return dataTypes;
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  // the number of times the buckets of a hash index file doubled
+  public int getHashLevel() throws IOException {
+    return getHeaderField(HEADER_HASH_LEVEL);
+  }
+
+  // the next bucket of a hash index file to split
+  public int getHashNextSplit() throws IOException {
+    return getHeaderField(HEADER_HASH_NEXT_SPLIT);
+  }
+
+  public void setHashSplit(int level, int nextSplit) throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      header.buffer.putInt(HEADER_HASH_LEVEL, level);
+      header.buffer.putInt(HEADER_HASH_NEXT_SPLIT, nextSplit);
+      BufferPool.markDirty(header, this, HEADER_HASH_LEVEL, HEADER_HASH_NEXT_SPLIT + Integer.BYTES);
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  // to hand out the next rowid of a table file
+  public int nextRowId() throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      int rowId = header.buffer.getInt(HEADER_LAST_ROWID) + 1;
+      header.buffer.putInt(HEADER_LAST_ROWID, rowId);
+      BufferPool.markDirty(header, this, HEADER_LAST_ROWID, HEADER_LAST_ROWID + Integer.BYTES);
+      return rowId;
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  // the record count of a table file, written back together with its pages
+  public int getRecordCount() throws IOException {
+    return getHeaderField(HEADER_RECORD_COUNT);
+  }
+
+  public void adjustRecordCount(int delta) throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      header.buffer.putInt(HEADER_RECORD_COUNT, header.buffer.getInt(HEADER_RECORD_COUNT) + delta);
+      BufferPool.markDirty(header, this, HEADER_RECORD_COUNT, HEADER_RECORD_COUNT + Integer.BYTES);
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  /*
+   * Returns the number of a page that can be overwritten, taking it from the
+   * free list when there is one and appending to the file otherwise. Free
+   * pages are chained through their right page pointer.
+   */
+  public int allocatePage() throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      ByteBuffer image = header.buffer;
+      int pageNo = image.getInt(HEADER_FREE_LIST);
+
+      if (pageNo != -1) {
+        BufferPool.Frame freePage = BufferPool.pin(this, pageNo);
+        try {
+          image.putInt(HEADER_FREE_LIST, freePage.buffer.getInt(6));
+        } finally {
+          BufferPool.unpin(freePage);
+        }
+      } else {
+        pageNo = image.getInt(HEADER_PAGE_COUNT);
+        image.putInt(HEADER_PAGE_COUNT, pageNo + 1);
+        if (length() < (long) (pageNo + 1) * pageSize)
+          setLength((long) (pageNo + 1) * pageSize);
+      }
+
+      BufferPool.markDirty(header, this, HEADER_ROOT_PAGE, HEADER_END);
+      return pageNo;
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  // to put a page that is no longer part of the tree on the free list
+  public void freePage(int pageNo) throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      BufferPool.Frame page = BufferPool.pinNew(this, pageNo);
+      try {
+        page.buffer.putInt(6, header.buffer.getInt(HEADER_FREE_LIST));
+        BufferPool.markDirty(page, this);
+      } finally {
+        BufferPool.unpin(page);
+      }
+
+      header.buffer.putInt(HEADER_FREE_LIST, pageNo);
+      BufferPool.markDirty(header, this, HEADER_FREE_LIST, HEADER_FREE_LIST + Integer.BYTES);
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  // to read a whole page image from the file
+  public void readPage(int pageNo, byte[] image) throws IOException {
+    backend.readPage(pageNo, image);
+  }
+
+  // to write the modified region of a page image back to the file with one call
+  public void writePage(int pageNo, byte[] image, int offset, int length) throws IOException {
+    backend.writePage(pageNo, image, offset, length);
+  }
+
+  // the zone map kept next to a table file, null when the table has none
+  public ZoneMap getZoneMap() throws IOException {
+    if (!zoneMapLoaded) {
+      zoneMapLoaded = true;
+      String zoneMapPath = path.replaceAll("\\.tbl$", ".zmp");
+
+      if (!zoneMapPath.equals(path) && new File(zoneMapPath).exists())
+        zoneMap = new ZoneMap(new PageFile(zoneMapPath, Constants.READ_WRITE_MODE));
+    }
+
+    return zoneMap;
+  }
+
+  // flushes the pages this handle modified before closing it
+  @Override
+  public void close() throws IOException {
+    if (zoneMap != null)
+      zoneMap.close();
+
+    BufferPool.flush(this);
+    backend.close();
+    super.close();
+  }
+
+  private int getHeaderField(int offset) throws IOException {
+    BufferPool.Frame header = BufferPool.pin(this, 0);
+    try {
+      return header.buffer.getInt(offset);
+    } finally {
+      BufferPool.unpin(header);
+    }
+  }
+
+  // to write the header page of a newly created file, the first page added becomes the root
+  private void writeNewHeader() throws IOException {
+    setLength(1L << pageSizePower);
+    seek(0);
+    writeInt(FILE_MAGIC);
+    writeByte(pageSizePower);
+    seek(HEADER_ROOT_PAGE);
+    writeInt(FIRST_PAGE_NO);
+    writeInt(FIRST_PAGE_NO);
+    writeInt(-1);
+    writeInt(0);
+    writeInt(0);
+  }
+
+}
@@ -0,0 +1,200 @@
+package storage;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+import utils.Condition;
+import utils.Constants;
+import utils.TableRecord;
+
+/**
+ * Reads the records of table leaves on the threads of a fork/join pool.
+ * The leaves are taken from their iterator in batches, and the leaves of a
+ * batch are split in halves until a range holds at most LEAVES_PER_TASK
+ * leaves, which one task decodes and filters. Pages are read through the
+ * buffer pool, whose reads are positional and made outside its lock, so
+ * the tasks do not share a file pointer or wait on each other's reads.
+ * <p>
+ * The leaves are listed and the matching records are handed to the caller
+ * on the calling thread, so the leaf iterators, which may write zone map
+ * summaries, and the callers, which may write the table, never run beside
+ * the tasks. Records are handed over in the order of the leaves, the order
+ * a scan on one thread finds them in.
+ * <p>
+ * The number of threads is read from SCAN_THREADS once, when the first
+ * scan runs, and the pool lives until shutdown is called on exit.
+ */
+public class ParallelScan {
+  private static final int LEAVES_PER_TASK = 8;
+  // batches of this many ranges per thread keep the memory held by the records of a batch bounded
+  private static final int RANGES_PER_THREAD = 4;
+  private static final int THREADS = Math.max(1, Constants.SCAN_THREADS);
+
+  private static ForkJoinPool pool;
+
+  // what is done with each matching record on the calling thread, which may write to the files
+  public interface RecordAction {
+    void accept(TableRecord record) throws IOException;
+  }
+
+  // the pool is created with the first scan long enough to be split
+  private static synchronized ForkJoinPool getPool() {
+    if (pool == null)
+      pool = new ForkJoinPool(THREADS);
+
+    return pool;
+  }
+
+  // to stop the threads of the pool, a later scan creates it again
+  public static synchronized void shutdown() {
+    if (pool != null)
+      pool.shutdown();
+
+    pool = null;
+  }
+
+  // the filter of a condition, compiled on the calling thread before the tasks read it
+  public static Predicate<TableRecord> matching(Condition condition) {
+    if (condition == null)
+      return record -> true;
+
+    for (Condition conjunct : condition.getConjuncts())
+      conjunct.compile();
+
+    return condition::checkCondition;
+  }
+
+  // to hand the records of the leaves passing the filter to the action, in the order of the leaves
+  public static void forEach(PageFile file, Iterable<Integer> leaves, Predicate<TableRecord> filter,
+      RecordAction action) throws IOException {
+    Iterator<Integer> leafIterator = leaves.iterator();
+
+    while (leafIterator.hasNext()) {
+      List<Integer> batch = nextBatch(leafIterator);
+
+      for (TableRecord record : run(new ScanTask(file, batch, 0, batch.size(), filter, null)))
+        action.accept(record);
+    }
+  }
+
+  // to get the first record of the leaves passing the filter, in the order of the leaves, null when none does
+  public static TableRecord findFirst(PageFile file, Iterable<Integer> leaves, Predicate<TableRecord> filter)
+      throws IOException {
+    Iterator<Integer> leafIterator = leaves.iterator();
+
+    while (leafIterator.hasNext()) {
+      List<Integer> batch = nextBatch(leafIterator);
+      List<TableRecord> records = run(new ScanTask(file, batch, 0, batch.size(), filter, null));
+
+      if (!records.isEmpty()) {
+        close(leafIterator);
+        return records.get(0);
+      }
+    }
+
+    return null;
+  }
+
+  // to check if a record of the leaves passes the filter, stopping the tasks once one is found
+  public static boolean anyMatch(PageFile file, Iterable<Integer> leaves, Predicate<TableRecord> filter)
+      throws IOException {
+    Iterator<Integer> leafIterator = leaves.iterator();
+    AtomicBoolean found = new AtomicBoolean();
+
+    while (leafIterator.hasNext() && !found.get()) {
+      List<Integer> batch = nextBatch(leafIterator);
+      run(new ScanTask(file, batch, 0, batch.size(), filter, found));
+    }
+
+    close(leafIterator);
+    return found.get();
+  }
+
+  // leaves listed from an index keep its file open until they are all read, a scan that stops early closes it
+  private static void close(Iterator<Integer> leafIterator) throws IOException {
+    if (leafIterator instanceof Closeable)
+      ((Closeable) leafIterator).close();
+  }
+
+  private static List<Integer> nextBatch(Iterator<Integer> leafIterator) {
+    int batchSize = THREADS * RANGES_PER_THREAD * LEAVES_PER_TASK;
+    List<Integer> batch = new ArrayList<>();
+
+    while (batch.size() < batchSize && leafIterator.hasNext())
+      batch.add(leafIterator.next());
+
+    return batch;
+  }
+
+  // a batch of a single range is read on the calling thread
+  private static List<TableRecord> run(ScanTask task) {
+    if (task.to - task.from <= LEAVES_PER_TASK || THREADS <= 1)
+      return task.compute();
+
+    return getPool().invoke(task);
+  }
+
+  // to decode and filter a range of the leaves of a batch, joining the records of its halves in order
+  private static class ScanTask extends RecursiveTask<List<TableRecord>> {
+    private static final long serialVersionUID = 1L;
+
+    private final PageFile file;
+    private final List<Integer> leaves;
+    private final int from;
+    private final int to;
+    private final Predicate<TableRecord> filter;
+    // set by the first match when only the existence of one is asked for
+    private final AtomicBoolean found;
+
+    ScanTask(PageFile file, List<Integer> leaves, int from, int to, Predicate<TableRecord> filter,
+        AtomicBoolean found) {
+      this.file = file;
+      this.leaves = leaves;
+      this.from = from;
+      this.to = to;
+      this.filter = filter;
+      this.found = found;
+    }
+
+    @Override
+    protected List<TableRecord> compute() {
+      if (to - from > LEAVES_PER_TASK && THREADS > 1) {
+        int middle = (from + to) >>> 1;
+        ScanTask left = new ScanTask(file, leaves, from, middle, filter, found);
+        ScanTask right = new ScanTask(file, leaves, middle, to, filter, found);
+
+        left.fork();
+        List<TableRecord> rightRecords = right.compute();
+        List<TableRecord> records = left.join();
+        records.addAll(rightRecords);
+        return records;
+      }
+
+      List<TableRecord> records = new ArrayList<>();
+
+      for (int i = from; i < to; i++) {
+        if (found != null && found.get())
+          break;
+
+        for (TableRecord record : new Page(file, leaves.get(i)).getPageRecords()) {
+          if (!filter.test(record))
+            continue;
+
+          if (found != null) {
+            found.set(true);
+            break;
+          }
+
+          records.add(record);
+        }
+      }
+
+      return records;
+    }
+  }
+
+}
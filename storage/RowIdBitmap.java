@@ -0,0 +1,203 @@
+package storage;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A compressed set of rowids, split like a Roaring bitmap into chunks of
+ * consecutive rowids keyed by their high bits. The low bits of each chunk
+ * are kept as a sorted array while it holds few of them and as a bitmap
+ * once the array would be larger than the bitmap, so sets of any density
+ * take at most a bit per rowid and are combined a chunk at a time.
+ * <p>
+ * The chunk size is chosen by the bitmap index so that a chunk fits in one
+ * of its pages, which hold a chunk in the same two forms.
+ */
+public class RowIdBitmap {
+  private final int chunkBits;
+  // the most values a chunk keeps as an array, whose size is then the size of the bitmap
+  private final int arrayLimit;
+  private final TreeMap<Integer, Chunk> chunks = new TreeMap<>();
+
+  // the low bits of the rowids of a chunk, in values while it is an array and in words once it is a bitmap
+  private static class Chunk {
+    char[] values;
+    long[] words;
+    int cardinality;
+  }
+
+  public RowIdBitmap(int chunkBits) {
+    this.chunkBits = chunkBits;
+    this.arrayLimit = (1 << chunkBits) / 16;
+  }
+
+  // to add a chunk stored in a page image, values are 2 byte arrays or 8 byte bitmap words from the offset
+  public void addChunk(int chunkKey, boolean bitmap, int cardinality, ByteBuffer image, int offset) {
+    Chunk chunk = new Chunk();
+    chunk.cardinality = cardinality;
+
+    if (bitmap) {
+      chunk.words = new long[(1 << chunkBits) / 64];
+      for (int i = 0; i < chunk.words.length; i++)
+        chunk.words[i] = image.getLong(offset + i * 8);
+    } else {
+      chunk.values = new char[cardinality];
+      for (int i = 0; i < cardinality; i++)
+        chunk.values[i] = image.getChar(offset + i * 2);
+    }
+
+    chunks.put(chunkKey, chunk);
+  }
+
+  public int getCardinality() {
+    int cardinality = 0;
+    for (Chunk chunk : chunks.values())
+      cardinality += chunk.cardinality;
+    return cardinality;
+  }
+
+  // to get the rowids of the set in ascending order
+  public int[] toArray() {
+    int[] rowIds = new int[getCardinality()];
+    int count = 0;
+
+    for (Map.Entry<Integer, Chunk> entry : chunks.entrySet()) {
+      int high = entry.getKey() << chunkBits;
+      Chunk chunk = entry.getValue();
+
+      if (chunk.values != null) {
+        for (char value : chunk.values)
+          rowIds[count++] = high | value;
+        continue;
+      }
+
+      for (int i = 0; i < chunk.words.length; i++) {
+        for (long word = chunk.words[i]; word != 0; word &= word - 1)
+          rowIds[count++] = high | i * 64 + Long.numberOfTrailingZeros(word);
+      }
+    }
+
+    return rowIds;
+  }
+
+  // to add the rowids of another set to this one
+  public void or(RowIdBitmap other) {
+    for (Map.Entry<Integer, Chunk> entry : other.chunks.entrySet()) {
+      Chunk chunk = chunks.get(entry.getKey());
+      chunks.put(entry.getKey(), chunk == null ? entry.getValue() : or(chunk, entry.getValue()));
+    }
+  }
+
+  // to keep only the rowids this set shares with another one
+  public void and(RowIdBitmap other) {
+    Iterator<Map.Entry<Integer, Chunk>> entries = chunks.entrySet().iterator();
+
+    while (entries.hasNext()) {
+      Map.Entry<Integer, Chunk> entry = entries.next();
+      Chunk otherChunk = other.chunks.get(entry.getKey());
+      Chunk chunk = otherChunk == null ? null : and(entry.getValue(), otherChunk);
+
+      if (chunk == null || chunk.cardinality == 0)
+        entries.remove();
+      else
+        entry.setValue(chunk);
+    }
+  }
+
+  private Chunk or(Chunk chunk1, Chunk chunk2) {
+    if (chunk1.values != null && chunk2.values != null) {
+      char[] values = new char[chunk1.cardinality + chunk2.cardinality];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+
+      while (i < chunk1.cardinality || j < chunk2.cardinality) {
+        if (j == chunk2.cardinality || i < chunk1.cardinality && chunk1.values[i] < chunk2.values[j])
+          values[count++] = chunk1.values[i++];
+        else if (i == chunk1.cardinality || chunk2.values[j] < chunk1.values[i])
+          values[count++] = chunk2.values[j++];
+        else {
+          values[count++] = chunk1.values[i++];
+          j++;
+        }
+      }
+
+      Chunk result = new Chunk();
+      result.values = Arrays.copyOf(values, count);
+      result.cardinality = count;
+      return count > arrayLimit ? toBitmap(result) : result;
+    }
+
+    long[] words1 = toBitmap(chunk1).words;
+    long[] words2 = toBitmap(chunk2).words;
+
+    Chunk result = new Chunk();
+    result.words = new long[words1.length];
+    for (int i = 0; i < words1.length; i++) {
+      result.words[i] = words1[i] | words2[i];
+      result.cardinality += Long.bitCount(result.words[i]);
+    }
+
+    return result;
+  }
+
+  private Chunk and(Chunk chunk1, Chunk chunk2) {
+    // an array is filtered by the other chunk, which keeps the result an array
+    if (chunk1.values != null || chunk2.values != null) {
+      Chunk array = chunk1.values != null ? chunk1 : chunk2;
+      Chunk other = array == chunk1 ? chunk2 : chunk1;
+
+      Chunk result = new Chunk();
+      result.values = new char[array.cardinality];
+      for (char value : array.values) {
+        if (contains(other, value))
+          result.values[result.cardinality++] = value;
+      }
+
+      result.values = Arrays.copyOf(result.values, result.cardinality);
+      return result;
+    }
+
+    Chunk result = new Chunk();
+    result.words = new long[chunk1.words.length];
+    for (int i = 0; i < chunk1.words.length; i++) {
+      result.words[i] = chunk1.words[i] & chunk2.words[i];
+      result.cardinality += Long.bitCount(result.words[i]);
+    }
+
+    return result.cardinality > arrayLimit ? result : toArray(result);
+  }
+
+  private static boolean contains(Chunk chunk, char value) {
+    if (chunk.values != null)
+      return Arrays.binarySearch(chunk.values, value) >= 0;
+
+    return (chunk.words[value >>> 6] & 1L << value) != 0;
+  }
+
+  private Chunk toBitmap(Chunk chunk) {
+    if (chunk.words != null)
+      return chunk;
+
+    Chunk result = new Chunk();
+    result.words = new long[(1 << chunkBits) / 64];
+    result.cardinality = chunk.cardinality;
+    for (char value : chunk.values)
+      result.words[value >>> 6] |= 1L << value;
+
+    return result;
+  }
+
+  private static Chunk toArray(Chunk chunk) {
+    Chunk result = new Chunk();
+    result.values = new char[chunk.cardinality];
+
+    for (int i = 0; i < chunk.words.length; i++) {
+      for (long word = chunk.words[i]; word != 0; word &= word - 1)
+        result.values[result.cardinality++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+    }
+
+    return result;
+  }
+
+}
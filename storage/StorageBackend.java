@@ -0,0 +1,119 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import utils.Constants;
+
+/**
+ * Moves page images between a PageFile and the buffer pool. The backend is
+ * chosen with Constants.STORAGE_MODE when the file is opened.
+ */
+public interface StorageBackend {
+
+  void readPage(int pageNo, byte[] image) throws IOException;
+
+  // writes length bytes of the page image starting at offset within the page
+  void writePage(int pageNo, byte[] image, int offset, int length) throws IOException;
+
+  void close() throws IOException;
+
+  /*
+   * Reads and writes pages with positional calls on the channel of the file,
+   * which do not move a shared file pointer, so pages can be read by several
+   * threads at once.
+   */
+  class RandomAccess implements StorageBackend {
+    private final FileChannel channel;
+    private final int pageSize;
+
+    RandomAccess(PageFile file) {
+      this.channel = file.getChannel();
+      this.pageSize = file.pageSize;
+    }
+
+    public void readPage(int pageNo, byte[] image) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(image);
+      long position = (long) pageSize * pageNo;
+
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0)
+          throw new EOFException();
+      }
+    }
+
+    public void writePage(int pageNo, byte[] image, int offset, int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(image, offset, length);
+      long position = (long) pageSize * pageNo;
+
+      while (buffer.hasRemaining())
+        channel.write(buffer, position + buffer.position());
+    }
+
+    public void close() {
+    }
+  }
+
+  /*
+   * Maps the file in chunks of Constants.MAP_CHUNK_SIZE bytes. A chunk is
+   * only mapped up to the current end of the file and is remapped when the
+   * file grows past it, so mapping never changes the file length. Pages are
+   * copied with absolute gets, so several threads can read them at once.
+   */
+  class MemoryMapped implements StorageBackend {
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private final int pageSize;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    MemoryMapped(PageFile file, String mode) {
+      this.channel = file.getChannel();
+      this.pageSize = file.pageSize;
+      this.mapMode = mode.equals(Constants.READ_MODE) ? FileChannel.MapMode.READ_ONLY
+          : FileChannel.MapMode.READ_WRITE;
+    }
+
+    public void readPage(int pageNo, byte[] image) throws IOException {
+      long position = (long) pageSize * pageNo;
+      chunkFor(position, image.length).get((int) (position % Constants.MAP_CHUNK_SIZE), image);
+    }
+
+    public void writePage(int pageNo, byte[] image, int offset, int length) throws IOException {
+      long position = (long) pageSize * pageNo;
+      chunkFor(position, image.length).put((int) (position % Constants.MAP_CHUNK_SIZE) + offset, image, offset,
+          length);
+    }
+
+    public void close() {
+      chunks.clear();
+    }
+
+    // to get the mapped chunk holding the given range, mapping it if needed
+    private synchronized MappedByteBuffer chunkFor(long position, int length) throws IOException {
+      int index = (int) (position / Constants.MAP_CHUNK_SIZE);
+      int offset = (int) (position % Constants.MAP_CHUNK_SIZE);
+
+      while (chunks.size() <= index)
+        chunks.add(null);
+
+      MappedByteBuffer chunk = chunks.get(index);
+
+      if (chunk == null || chunk.capacity() < offset + length) {
+        long chunkStart = (long) index * Constants.MAP_CHUNK_SIZE;
+        long size = Math.min(Constants.MAP_CHUNK_SIZE, channel.size() - chunkStart);
+
+        if (size < offset + length)
+          throw new EOFException();
+
+        chunk = channel.map(mapMode, chunkStart, size);
+        chunks.set(index, chunk);
+      }
+
+      return chunk;
+    }
+  }
+
+}
@@ -0,0 +1,325 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import utils.Condition;
+import utils.Constants;
+import utils.TableRecord;
+
+/**
+ * The zone map of a table, kept in data/<table>.zmp next to it. It holds a
+ * summary of every leaf page with the smallest and largest value of each
+ * column, so scans can pass over the leaves whose values cannot satisfy a
+ * condition without reading their rows.
+ * <p>
+ * The summaries are stored in slots of a fixed size, the slot of a table
+ * page being found from its page number. A slot starts with a flag telling
+ * if it is valid, followed for each column by its flags and the encoded
+ * smallest and largest values. Values are encoded like index keys, except
+ * TEXT values, which are lowered and kept with their length when they are
+ * ASCII and no longer than TEXT_PREFIX, leaving the column unsummarized
+ * otherwise. A page holding a NULL in a column is never passed over on a
+ * condition on that column.
+ * <p>
+ * A summary only has to hold the values of its page, not to be exact, so
+ * rows written to a page widen it and rows deleted from it leave it as it
+ * is. New leaves start without one, and the first scan that reads such a
+ * leaf summarizes it.
+ */
+public class ZoneMap {
+  private static final int TEXT_PREFIX = 16;
+  private static final int FIRST_SLOT = 0x10;
+
+  // flags of a column summary
+  private static final int HAS_VALUES = 1;
+  private static final int HAS_NULL = 2;
+  private static final int UNSUMMARIZED = 4;
+
+  PageFile binaryFile;
+  private final DataType[] columnTypes;
+  // offsets of the column summaries in a slot, and the length of their values
+  private final int[] columnOffsets;
+  private final int[] valueLengths;
+  private final int slotSize;
+  private final int slotsPerPage;
+
+  public ZoneMap(PageFile file) throws IOException {
+    this.binaryFile = file;
+    this.columnTypes = file.getIndexColumnTypes();
+    this.columnOffsets = new int[columnTypes.length];
+    this.valueLengths = new int[columnTypes.length];
+
+    int offset = 1;
+    for (int i = 0; i < columnTypes.length; i++) {
+      columnOffsets[i] = offset;
+      valueLengths[i] = getValueLength(columnTypes[i]);
+      offset += 1 + 2 * valueLengths[i];
+    }
+
+    this.slotSize = offset;
+    this.slotsPerPage = (file.pageSize - FIRST_SLOT) / slotSize;
+  }
+
+  private static int getValueLength(DataType dataType) {
+    return dataType == DataType.TEXT ? 1 + TEXT_PREFIX : DataType.getLength(dataType);
+  }
+
+  /*
+   * Creates the zone map of a new table, unless a slot of its columns does
+   * not fit in a page or the columns do not fit in the file header, in
+   * which case the table is scanned without one.
+   */
+  public static void create(String path, int pageSizePower, DataType[] columnTypes) throws IOException {
+    int slotSize = 1;
+    for (DataType columnType : columnTypes)
+      slotSize += 1 + 2 * getValueLength(columnType);
+
+    if (columnTypes.length > Byte.MAX_VALUE || FIRST_SLOT + slotSize > 1 << pageSizePower)
+      return;
+
+    int[] ordinals = new int[columnTypes.length];
+    for (int i = 0; i < ordinals.length; i++)
+      ordinals[i] = i;
+
+    PageFile file = new PageFile(path, Constants.READ_WRITE_MODE, pageSizePower);
+    file.setIndexColumns(ordinals, columnTypes);
+    file.close();
+  }
+
+  public void close() throws IOException {
+    binaryFile.close();
+  }
+
+  // to check if a page has a summary
+  public boolean hasSummary(int pageNo) throws IOException {
+    int zonePageNo = getZonePageNo(pageNo);
+
+    if (zonePageNo >= binaryFile.getPageCount())
+      return false;
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, zonePageNo);
+    try {
+      return frame.buffer.get(getSlotOffset(pageNo)) != 0;
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to drop the summary of a page whose rows were replaced, like a new leaf taken from the free list
+  public void invalidate(int pageNo) throws IOException {
+    int zonePageNo = getZonePageNo(pageNo);
+
+    if (zonePageNo >= binaryFile.getPageCount())
+      return;
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, zonePageNo);
+    try {
+      int offset = getSlotOffset(pageNo);
+      frame.buffer.put(offset, (byte) 0);
+      BufferPool.markDirty(frame, binaryFile, offset, offset + 1);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to write the summary of the rows of a page
+  public void summarize(int pageNo, List<TableRecord> records) throws IOException {
+    int zonePageNo = getZonePageNo(pageNo);
+
+    while (binaryFile.getPageCount() <= zonePageNo) {
+      int newPageNo = binaryFile.allocatePage();
+      BufferPool.Frame frame = BufferPool.pinNew(binaryFile, newPageNo);
+      try {
+        frame.buffer.put(0, Page.PageType.ZONEMAP.getValue());
+        BufferPool.markDirty(frame, binaryFile);
+      } finally {
+        BufferPool.unpin(frame);
+      }
+    }
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, zonePageNo);
+    try {
+      ByteBuffer image = frame.buffer;
+      int offset = getSlotOffset(pageNo);
+      Arrays.fill(frame.data, offset, offset + slotSize, (byte) 0);
+
+      for (TableRecord record : records) {
+        for (int i = 0; i < columnTypes.length && i < record.getColumnCount(); i++)
+          addValue(image, offset, i, record.isNull(i) ? null : record.getAttribute(i));
+      }
+
+      image.put(offset, (byte) 1);
+      BufferPool.markDirty(frame, binaryFile, offset, offset + slotSize);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to widen the summary of a page with a row written to it
+  public void addRow(int pageNo, List<Attribute> row) throws IOException {
+    for (int i = 0; i < row.size(); i++)
+      addValue(pageNo, i, row.get(i));
+  }
+
+  // to widen the summary of a page with a value written to one of its rows
+  public void addValue(int pageNo, int columnOrdinal, Attribute value) throws IOException {
+    if (columnOrdinal >= columnTypes.length || getZonePageNo(pageNo) >= binaryFile.getPageCount())
+      return;
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, getZonePageNo(pageNo));
+    try {
+      int offset = getSlotOffset(pageNo);
+      if (frame.buffer.get(offset) == 0)
+        return;
+
+      addValue(frame.buffer, offset, columnOrdinal, value.dataType == DataType.NULL ? null : value);
+      BufferPool.markDirty(frame, binaryFile, offset, offset + slotSize);
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  private void addValue(ByteBuffer image, int slotOffset, int column, Attribute value) {
+    int offset = slotOffset + columnOffsets[column];
+    int flags = image.get(offset);
+
+    if (value == null) {
+      image.put(offset, (byte) (flags | HAS_NULL));
+      return;
+    }
+
+    if ((flags & UNSUMMARIZED) != 0)
+      return;
+
+    byte[] key = getSummaryKey(column, value);
+
+    if (key == null) {
+      image.put(offset, (byte) (flags | UNSUMMARIZED));
+      return;
+    }
+
+    int minOffset = offset + 1;
+    int maxOffset = minOffset + valueLengths[column];
+
+    if ((flags & HAS_VALUES) == 0 || IndexKey.compare(key, readKey(image, column, minOffset)) < 0)
+      writeKey(image, column, minOffset, key);
+
+    if ((flags & HAS_VALUES) == 0 || IndexKey.compare(key, readKey(image, column, maxOffset)) > 0)
+      writeKey(image, column, maxOffset, key);
+
+    image.put(offset, (byte) (flags | HAS_VALUES));
+  }
+
+  // the bytes a value is summarized by, in the order the conditions compare values, null when it cannot be
+  private byte[] getSummaryKey(int column, Attribute value) {
+    if (columnTypes[column] != DataType.TEXT)
+      return value.dataType == columnTypes[column] ? IndexKey.encode(value) : null;
+
+    byte[] text = value.fieldValuebyte;
+    if (text.length > TEXT_PREFIX)
+      return null;
+
+    byte[] key = new byte[text.length];
+    for (int i = 0; i < text.length; i++) {
+      if (text[i] < 0)
+        return null;
+
+      key[i] = text[i] >= 'A' && text[i] <= 'Z' ? (byte) (text[i] + 'a' - 'A') : text[i];
+    }
+
+    return key;
+  }
+
+  private byte[] readKey(ByteBuffer image, int column, int offset) {
+    byte[] key;
+
+    if (columnTypes[column] == DataType.TEXT) {
+      key = new byte[image.get(offset)];
+      image.get(offset + 1, key);
+    } else {
+      key = new byte[valueLengths[column]];
+      image.get(offset, key);
+    }
+
+    return key;
+  }
+
+  private void writeKey(ByteBuffer image, int column, int offset, byte[] key) {
+    if (columnTypes[column] == DataType.TEXT) {
+      image.put(offset, (byte) key.length);
+      offset++;
+    }
+
+    image.put(offset, key);
+  }
+
+  /*
+   * Checks if a page with a summary can hold a row passing the condition,
+   * which it cannot when the values of a column lie outside those one of
+   * the conditions joined with AND accepts. Pages without one may hold any.
+   */
+  public boolean mayMatch(int pageNo, Condition condition) throws IOException {
+    if (getZonePageNo(pageNo) >= binaryFile.getPageCount())
+      return true;
+
+    BufferPool.Frame frame = BufferPool.pin(binaryFile, getZonePageNo(pageNo));
+    try {
+      ByteBuffer image = frame.buffer;
+      int slotOffset = getSlotOffset(pageNo);
+
+      if (image.get(slotOffset) == 0)
+        return true;
+
+      for (Condition conjunct : condition.getConjuncts()) {
+        int column = conjunct.columnOrdinal;
+        if (column < 0 || column >= columnTypes.length)
+          continue;
+
+        int offset = slotOffset + columnOffsets[column];
+        int flags = image.get(offset);
+
+        if ((flags & (HAS_NULL | UNSUMMARIZED)) != 0)
+          continue;
+
+        // a page without values in the column has no rows
+        if ((flags & HAS_VALUES) == 0)
+          return false;
+
+        TableRecord min = getSummaryRecord(column, readKey(image, column, offset + 1));
+        TableRecord max = getSummaryRecord(column, readKey(image, column, offset + 1 + valueLengths[column]));
+
+        if (!conjunct.mayMatchRange(min, max))
+          return false;
+      }
+
+      return true;
+    } finally {
+      BufferPool.unpin(frame);
+    }
+  }
+
+  // to get a record holding a summarized value in its column, for the comparisons of the conditions
+  private TableRecord getSummaryRecord(int column, byte[] key) {
+    DataType dataType = columnTypes[column];
+    byte[] value = dataType == DataType.TEXT ? key
+        : IndexKey.decode(dataType, ByteBuffer.wrap(key), 0, key.length);
+
+    List<Attribute> row = new ArrayList<>(Collections.nCopies(column + 1, new Attribute(DataType.NULL, new byte[0])));
+    row.set(column, new Attribute(dataType, value));
+
+    ByteBuffer image = ByteBuffer.allocate(CellCodec.tableCellSize(row));
+    CellCodec.writeTableCell(image, 0, 0, row);
+    return new TableRecord((short) 0, 0, 0, image);
+  }
+
+  private int getZonePageNo(int pageNo) {
+    return PageFile.FIRST_PAGE_NO + pageNo / slotsPerPage;
+  }
+
+  private int getSlotOffset(int pageNo) {
+    return FIRST_SLOT + pageNo % slotsPerPage * slotSize;
+  }
+
+}
@@ -1,100 +1,114 @@
 package utils;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
-import java.util.*;
-
+/**
+ * Big endian conversions between primitive values and byte arrays. Values
+ * are read and written in place at an offset so callers can encode straight
+ * into a page image or a reusable buffer without boxing each byte.
+ */
 public class ByteConvertor {
 
-  public static Byte[] byteToBytes(final byte[] data) {
-    int length = data == null ? 0 : data.length;
-    Byte[] result = new Byte[length];
-    for (int i = 0; i < length; i++)
-      result[i] = data[i];
-    return result;
+  public static void putShort(byte[] data, int offset, short value) {
+    data[offset] = (byte) (value >> 8);
+    data[offset + 1] = (byte) value;
   }
 
-  public static byte[] Bytestobytes(final Byte[] data) {
+  public static void putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >> 24);
+    data[offset + 1] = (byte) (value >> 16);
+    data[offset + 2] = (byte) (value >> 8);
+    data[offset + 3] = (byte) value;
+  }
 
-    if (data == null)
-      Utils.log("! Data is null");
+  public static void putLong(byte[] data, int offset, long value) {
+    putInt(data, offset, (int) (value >> 32));
+    putInt(data, offset + 4, (int) value);
+  }
 
-    int length = data == null ? 0 : data.length;
-    byte[] result = new byte[length];
-    for (int i = 0; i < length; i++)
-      result[i] = data[i];
-    return result;
+  public static void putFloat(byte[] data, int offset, float value) {
+    putInt(data, offset, Float.floatToIntBits(value));
   }
 
-  public static byte[] lsttobyteList(final List<Byte> lst) {
-    return Bytestobytes(lst.toArray(new Byte[0]));
+  public static void putDouble(byte[] data, int offset, double value) {
+    putLong(data, offset, Double.doubleToLongBits(value));
   }
 
-  public static Byte[] shortToBytes(final short data) {
-    return byteToBytes(ByteBuffer.allocate(Short.BYTES).order(ByteOrder.BIG_ENDIAN).putShort(data).array());
+  public static short getShort(byte[] data, int offset) {
+    return (short) ((data[offset] << 8) | (data[offset + 1] & 0xFF));
   }
 
-  public static byte[] shortTobytes(final short data) {
-    return ByteBuffer.allocate(Short.BYTES).order(ByteOrder.BIG_ENDIAN).putShort(data).array();
+  public static int getInt(byte[] data, int offset) {
+    return (data[offset] << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8)
+        | (data[offset + 3] & 0xFF);
   }
 
-  public static Byte[] intToBytes(final int data) {
-    return byteToBytes(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.BIG_ENDIAN).putInt(data).array());
+  public static long getLong(byte[] data, int offset) {
+    return ((long) getInt(data, offset) << 32) | (getInt(data, offset + 4) & 0xFFFFFFFFL);
   }
 
-  public static byte[] intTobytes(final int data) {
-    return ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.BIG_ENDIAN).putInt(data).array();
+  public static float getFloat(byte[] data, int offset) {
+    return Float.intBitsToFloat(getInt(data, offset));
   }
 
-  public static byte[] longTobytes(final long data) {
-    return ByteBuffer.allocate(Long.BYTES).putLong(data).array();
+  public static double getDouble(byte[] data, int offset) {
+    return Double.longBitsToDouble(getLong(data, offset));
   }
 
-  public static Byte[] longToBytes(final long data) {
-    return byteToBytes(ByteBuffer.allocate(Long.BYTES).putLong(data).array());
+  //
+
+  public static byte[] shortTobytes(final short data) {
+    byte[] result = new byte[Short.BYTES];
+    putShort(result, 0, data);
+    return result;
   }
 
-  public static Byte[] floatToBytes(final float data) {
-    return byteToBytes(ByteBuffer.allocate(Float.BYTES).putFloat(data).array());
+  public static byte[] intTobytes(final int data) {
+    byte[] result = new byte[Integer.BYTES];
+    putInt(result, 0, data);
+    return result;
   }
 
-  public static byte[] floatTobytes(final float data) {
-    return (ByteBuffer.allocate(Float.BYTES).putFloat(data).array());
+  public static byte[] longTobytes(final long data) {
+    byte[] result = new byte[Long.BYTES];
+    putLong(result, 0, data);
+    return result;
   }
 
-  public static Byte[] doubleToBytes(final double data) {
-    return byteToBytes(ByteBuffer.allocate(Double.BYTES).putDouble(data).array());
+  public static byte[] floatTobytes(final float data) {
+    byte[] result = new byte[Float.BYTES];
+    putFloat(result, 0, data);
+    return result;
   }
 
   public static byte[] doubleTobytes(final double data) {
-    return (ByteBuffer.allocate(Double.BYTES).putDouble(data).array());
+    byte[] result = new byte[Double.BYTES];
+    putDouble(result, 0, data);
+    return result;
   }
 
   //
 
   public static byte byteFromByteArray(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).get();
+    return bytes[0];
   }
 
   public static short shortFromByteArray(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getShort();
+    return getShort(bytes, 0);
   }
 
   public static int intFromByteArray(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getInt();
+    return getInt(bytes, 0);
   }
 
   public static long longFromByteArray(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getLong();
+    return getLong(bytes, 0);
   }
 
   public static float floatFromByteArray(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getFloat();
+    return getFloat(bytes, 0);
   }
 
   public static double doubleFromByteArray(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getDouble();
+    return getDouble(bytes, 0);
   }
 
-}
\ No newline at end of file
+}
@@ -1,17 +1,29 @@
 package utils;
 
 import storage.DataType;
-import java.io.*;
+import java.util.*;
 
 public class ColumnInfo {
+  // the kinds of index kept in the index_type column of davisbase_columns
+  public static final String BTREE_INDEX = "BTREE";
+  public static final String HASH_INDEX = "HASH";
+  public static final String BITMAP_INDEX = "BITMAP";
+  public static final String BLOOM_FILTER = "BLOOM";
+  private static final String INDEX_TYPE_SEPARATOR = ",";
+
   public boolean isUnique;
   public String tableName;
   public boolean isPrimaryKey;
   public boolean isNullable;
   public Short ordinalPosition;
   public boolean hasIndex;
+  public boolean hasHashIndex;
+  public boolean hasBitmapIndex;
+  public boolean hasBloomFilter;
   public DataType dataType;
   public String columnName;
+  // set once the table is analyzed
+  public ColumnStatistics statistics;
 
   public ColumnInfo() {
   }
@@ -31,11 +43,52 @@ public class ColumnInfo {
     this.ordinalPosition = ordinalPosition;
     this.columnName = columnName;
     this.isUnique = isUnique;
-    this.hasIndex = (new File(Utils.getNDXFilePath(tableName, columnName)).exists());
+  }
+
+  public ColumnInfo(ColumnInfo other) {
+    this.tableName = other.tableName;
+    this.dataType = other.dataType;
+    this.isNullable = other.isNullable;
+    this.ordinalPosition = other.ordinalPosition;
+    this.columnName = other.columnName;
+    this.isUnique = other.isUnique;
+    this.isPrimaryKey = other.isPrimaryKey;
+    this.hasIndex = other.hasIndex;
+    this.hasHashIndex = other.hasHashIndex;
+    this.hasBitmapIndex = other.hasBitmapIndex;
+    this.hasBloomFilter = other.hasBloomFilter;
+    this.statistics = other.statistics;
   }
 
   public void setAsPrimaryKey() {
     isPrimaryKey = true;
   }
 
+  // the index_type value of the column, null when it has no index
+  public String getIndexTypes() {
+    List<String> indexTypes = new ArrayList<>();
+
+    if (hasIndex)
+      indexTypes.add(BTREE_INDEX);
+    if (hasHashIndex)
+      indexTypes.add(HASH_INDEX);
+    if (hasBitmapIndex)
+      indexTypes.add(BITMAP_INDEX);
+    if (hasBloomFilter)
+      indexTypes.add(BLOOM_FILTER);
+
+    return indexTypes.isEmpty() ? null : String.join(INDEX_TYPE_SEPARATOR, indexTypes);
+  }
+
+  // to set the indexes of the column from its index_type value, which is null when it has none
+  public void setIndexTypes(String indexTypes) {
+    List<String> types = indexTypes == null ? Collections.emptyList()
+        : Arrays.asList(indexTypes.split(INDEX_TYPE_SEPARATOR));
+
+    hasIndex = types.contains(BTREE_INDEX);
+    hasHashIndex = types.contains(HASH_INDEX);
+    hasBitmapIndex = types.contains(BITMAP_INDEX);
+    hasBloomFilter = types.contains(BLOOM_FILTER);
+  }
+
 }
@@ -0,0 +1,298 @@
+package utils;
+
+import java.util.*;
+
+import storage.Attribute;
+import storage.DataType;
+import storage.HyperLogLog;
+import utils.Constants.OperatorType;
+
+/**
+ * The statistics ANALYZE gathers for a column and keeps in
+ * davisbase_statistics: the number of distinct values, the fraction of
+ * NULL values and an equi-depth histogram of the other values. The planner
+ * uses them to estimate the fraction of the rows a condition passes.
+ * <p>
+ * The histogram is kept as the bounds of HISTOGRAM_BUCKETS buckets holding
+ * the same number of values each, taken from a sample of the column. Bounds
+ * of numeric, date and time columns are numbers, compared and interpolated
+ * like the encoded values, and bounds of TEXT columns are their lowered
+ * first TEXT_BOUND_LENGTH characters. A value spanning whole buckets is one
+ * of the frequent values, whose share the distinct count alone would miss.
+ */
+public class ColumnStatistics {
+  public static final int HISTOGRAM_BUCKETS = 16;
+  private static final int TEXT_BOUND_LENGTH = 16;
+  private static final String BOUND_SEPARATOR = "|";
+
+  public final DataType dataType;
+  public final long distinctCount;
+  public final double nullFraction;
+  public final String histogram;
+
+  // the bounds of the histogram, numbers for all the types but TEXT
+  private final double[] numericBounds;
+  private final String[] textBounds;
+  private final int boundCount;
+
+  public ColumnStatistics(DataType dataType, long distinctCount, double nullFraction, String histogram) {
+    this.dataType = dataType;
+    this.distinctCount = distinctCount;
+    this.nullFraction = nullFraction;
+    this.histogram = histogram;
+
+    String[] bounds = histogram.isEmpty() ? new String[0] : histogram.split("\\" + BOUND_SEPARATOR, -1);
+    this.boundCount = bounds.length;
+
+    if (dataType == DataType.TEXT) {
+      this.textBounds = bounds;
+      this.numericBounds = null;
+    } else {
+      this.textBounds = null;
+      this.numericBounds = new double[bounds.length];
+      for (int i = 0; i < bounds.length; i++)
+        numericBounds[i] = Double.parseDouble(bounds[i]);
+    }
+  }
+
+  /*
+   * Estimates the fraction of the rows passing a condition on the column.
+   * Constants that do not parse give 1, so the estimate never rules an
+   * access path out on a condition it does not understand.
+   */
+  public double getSelectivity(Condition conjunct) {
+    double nonNullFraction = 1 - nullFraction;
+    OperatorType op = conjunct.getOperation();
+
+    if (conjunct.comparisonValue.equalsIgnoreCase(Constants.NULL_STRING)) {
+      if (op == OperatorType.EQUALTO)
+        return nullFraction;
+
+      return op == OperatorType.NOTEQUAL ? nonNullFraction : 1;
+    }
+
+    Object value = getSortKey(conjunct.comparisonValue);
+    if (value == null || boundCount == 0)
+      return value == null ? 1 : 0;
+
+    double selectivity;
+
+    switch (op) {
+      case EQUALTO:
+        selectivity = nonNullFraction * getEqualFraction(value);
+        break;
+
+      case NOTEQUAL:
+        selectivity = 1 - nonNullFraction * getEqualFraction(value);
+        break;
+
+      case LESSTHAN:
+        selectivity = nonNullFraction * getFractionBelow(value);
+        break;
+
+      case LESSTHANOREQUAL:
+        selectivity = nonNullFraction * (getFractionBelow(value) + getEqualFraction(value));
+        break;
+
+      case GREATERTHAN:
+        selectivity = nonNullFraction * (1 - getFractionBelow(value) - getEqualFraction(value));
+        break;
+
+      case GREATERTHANOREQUAL:
+        selectivity = nonNullFraction * (1 - getFractionBelow(value));
+        break;
+
+      case BETWEEN: {
+        Object upper = conjunct.upperValue == null ? null : getSortKey(conjunct.upperValue);
+        if (upper == null)
+          return 1;
+
+        double inRange = Math.max(0, getFractionBelow(upper) + getEqualFraction(upper) - getFractionBelow(value));
+        selectivity = nonNullFraction * (conjunct.negation ? 1 - Math.min(1, inRange) : inRange);
+        break;
+      }
+
+      default:
+        return 1;
+    }
+
+    return Math.max(0, Math.min(1, selectivity));
+  }
+
+  // the fraction of the non NULL values equal to a value
+  private double getEqualFraction(Object value) {
+    if (compareBound(0, value) > 0 || compareBound(boundCount - 1, value) < 0)
+      return 0;
+
+    int spannedBuckets = 0;
+    for (int i = 0; i < boundCount - 1; i++) {
+      if (compareBound(i, value) == 0 && compareBound(i + 1, value) == 0)
+        spannedBuckets++;
+    }
+
+    return Math.max(1.0 / Math.max(1, distinctCount), (double) spannedBuckets / getBucketCount());
+  }
+
+  // the fraction of the non NULL values below a value, interpolating within the bucket holding it
+  private double getFractionBelow(Object value) {
+    double buckets = 0;
+
+    for (int i = 0; i < boundCount - 1; i++) {
+      int lowDiff = compareBound(i, value);
+      int highDiff = compareBound(i + 1, value);
+
+      if (highDiff < 0 || highDiff == 0 && lowDiff < 0)
+        buckets++;
+      else if (lowDiff < 0)
+        buckets += interpolate(i, value);
+    }
+
+    return buckets / getBucketCount();
+  }
+
+  private int getBucketCount() {
+    return Math.max(1, boundCount - 1);
+  }
+
+  private int compareBound(int i, Object value) {
+    if (dataType == DataType.TEXT)
+      return textBounds[i].compareTo((String) value);
+
+    return Double.compare(numericBounds[i], (Double) value);
+  }
+
+  // the position of a value between the bounds of a bucket, the middle for TEXT
+  private double interpolate(int i, Object value) {
+    if (dataType == DataType.TEXT)
+      return 0.5;
+
+    double low = numericBounds[i];
+    double high = numericBounds[i + 1];
+    return high > low ? ((Double) value - low) / (high - low) : 0.5;
+  }
+
+  // the value a constant is compared with the bounds by, null when it does not parse
+  private Object getSortKey(String constant) {
+    try {
+      return getSortKey(new Attribute(dataType, constant));
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static Object getSortKey(Attribute value) {
+    if (value.dataType == DataType.TEXT) {
+      String text = value.fieldValue.toLowerCase().replace(BOUND_SEPARATOR, "");
+      return text.length() > TEXT_BOUND_LENGTH ? text.substring(0, TEXT_BOUND_LENGTH) : text;
+    }
+
+    byte[] bytes = value.fieldValuebyte;
+
+    switch (value.dataType) {
+      case TINYINT:
+        return (double) ByteConvertor.byteFromByteArray(bytes);
+
+      case YEAR:
+        return (double) ByteConvertor.byteFromByteArray(bytes) + 2000;
+
+      case SMALLINT:
+        return (double) ByteConvertor.shortFromByteArray(bytes);
+
+      case INT:
+      case TIME:
+        return (double) ByteConvertor.intFromByteArray(bytes);
+
+      case BIGINT:
+      case DATE:
+      case DATETIME:
+        return (double) ByteConvertor.longFromByteArray(bytes);
+
+      case FLOAT:
+        return (double) ByteConvertor.floatFromByteArray(bytes);
+
+      case DOUBLE:
+        return ByteConvertor.doubleFromByteArray(bytes);
+
+      default:
+        return null;
+    }
+  }
+
+  private static String formatSortKey(Object key) {
+    if (key instanceof String)
+      return (String) key;
+
+    double number = (Double) key;
+    if (number == Math.rint(number) && Math.abs(number) < 1e15)
+      return Long.toString((long) number);
+
+    return Double.toString(number);
+  }
+
+  /**
+   * Gathers the statistics of a column from its values in one pass. Values
+   * are counted by a HyperLogLog sketch and the histogram is built from a
+   * reservoir sample of SAMPLE_SIZE values, so any table is analyzed in
+   * fixed memory per column.
+   */
+  public static class Builder {
+    private static final int SAMPLE_SIZE = 4096;
+
+    private final DataType dataType;
+    private final HyperLogLog distinctValues = new HyperLogLog();
+    private final List<Object> sample = new ArrayList<>();
+    // seeded so that analyzing the same rows gives the same histogram
+    private final Random random = new Random(0);
+    private long valueCount;
+    private long nullCount;
+
+    public Builder(DataType dataType) {
+      this.dataType = dataType;
+    }
+
+    public void add(Attribute value) {
+      valueCount++;
+
+      if (value.dataType == DataType.NULL) {
+        nullCount++;
+        return;
+      }
+
+      distinctValues.add(value);
+
+      Object key = getSortKey(value);
+      if (key == null)
+        return;
+
+      long nonNullCount = valueCount - nullCount;
+      if (sample.size() < SAMPLE_SIZE) {
+        sample.add(key);
+      } else {
+        long slot = (long) (random.nextDouble() * nonNullCount);
+        if (slot < SAMPLE_SIZE)
+          sample.set((int) slot, key);
+      }
+    }
+
+    // to build the statistics with a histogram of at most a number of buckets
+    public ColumnStatistics build(int bucketCount) {
+      sample.sort(null);
+
+      StringBuilder histogram = new StringBuilder();
+      int buckets = Math.min(bucketCount, sample.size());
+
+      for (int i = 0; buckets > 0 && i <= buckets; i++) {
+        if (i > 0)
+          histogram.append(BOUND_SEPARATOR);
+        histogram.append(formatSortKey(sample.get((int) ((long) i * (sample.size() - 1) / buckets))));
+      }
+
+      long nonNullCount = valueCount - nullCount;
+      long distinctCount = Math.min(Math.max(distinctValues.getEstimate(), nonNullCount > 0 ? 1 : 0), nonNullCount);
+
+      return new ColumnStatistics(dataType, distinctCount,
+          valueCount == 0 ? 0 : (double) nullCount / valueCount, histogram.toString());
+    }
+  }
+
+}
@@ -1,17 +1,41 @@
 package utils;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 import storage.DataType;
+import utils.Constants.AttributeStrings;
 import utils.Constants.OperatorType;
 
 public class Condition {
+  // column ordinal of the rowid pseudo column
+  public static final int ROWID_ORDINAL = -1;
+
   public DataType dataType;
   public String columnName;
   public boolean negation;
   public int columnOrdinal;
   private OperatorType operator;
   public String comparisonValue;
+  // upper bound of a BETWEEN condition, comparisonValue holds the lower one
+  public String upperValue;
+  // the next condition of the WHERE clause joined to this one with AND
+  public Condition andCondition;
+
+  // returned by a compiled comparison that cannot decide on the encoded bytes
+  private static final int NOT_COMPARABLE = Integer.MIN_VALUE;
+
+  // compares the encoded column value of a record with a constant of the condition
+  private interface ValueComparator {
+    int compare(TableRecord record);
+  }
+
+  // comparisons against comparisonValue and upperValue, built once for the statement
+  private boolean compiled;
+  private ValueComparator lowerComparator;
+  private ValueComparator upperComparator;
 
   public Condition(DataType dataType) {
     this.dataType = dataType;
@@ -41,6 +65,9 @@ public class Condition {
       case "<=":
         return OperatorType.LESSTHANOREQUAL;
 
+      case Constants.BETWEEN_STRING:
+        return OperatorType.BETWEEN;
+
       default:
         Utils.log("! Invalid operator \"" + str_operator + "\"");
         return OperatorType.INVALID;
@@ -98,9 +125,220 @@ public class Condition {
     return doOperationOnDifference(op, currentValue.toLowerCase().compareTo(comparisonValue));
   }
 
+  // to get this condition and the ones joined to it with AND
+  public List<Condition> getConjuncts() {
+    List<Condition> conjuncts = new ArrayList<>();
+    for (Condition conjunct = this; conjunct != null; conjunct = conjunct.andCondition)
+      conjuncts.add(conjunct);
+    return conjuncts;
+  }
+
+  // to get the first of the conditions joined with AND on a column, null when none is
+  public Condition getConjunct(int columnOrdinal) {
+    for (Condition conjunct = this; conjunct != null; conjunct = conjunct.andCondition) {
+      if (conjunct.columnOrdinal == columnOrdinal)
+        return conjunct;
+    }
+    return null;
+  }
+
+  // to check a record against the condition and the ones joined to it with AND
+  public boolean checkCondition(TableRecord record) {
+    return checkColumnCondition(record) && (andCondition == null || andCondition.checkCondition(record));
+  }
+
+  // to check a record against this condition alone on its encoded column value, using its rowid for the rowid pseudo column
+  public boolean checkColumnCondition(TableRecord record) {
+    if (!compiled)
+      compile();
+
+    int diff = NOT_COMPARABLE;
+    if (lowerComparator != null && (columnOrdinal == ROWID_ORDINAL || !record.isNull(columnOrdinal)))
+      diff = lowerComparator.compare(record);
+
+    // values the compiled comparison does not handle go through the string comparison
+    if (diff == NOT_COMPARABLE) {
+      if (columnOrdinal == ROWID_ORDINAL)
+        return checkCondition(Integer.toString(record.rowId));
+
+      return checkCondition(record.getAttribute(columnOrdinal).fieldValue);
+    }
+
+    OperatorType op = getOperation();
+
+    if (op == OperatorType.BETWEEN) {
+      int upperDiff = upperComparator.compare(record);
+      if (upperDiff == NOT_COMPARABLE)
+        return checkCondition(record.getAttribute(columnOrdinal).fieldValue);
+
+      return (diff >= 0 && upperDiff <= 0) != negation;
+    }
+
+    return doOperationOnDifference(op, diff);
+  }
+
+  /*
+   * Checks if a column whose values lie between those of two records can
+   * hold a value passing this condition alone. Comparisons the compiled
+   * condition cannot decide are assumed to pass.
+   */
+  public boolean mayMatchRange(TableRecord min, TableRecord max) {
+    if (!compiled)
+      compile();
+
+    if (lowerComparator == null || columnOrdinal == ROWID_ORDINAL)
+      return true;
+
+    int minDiff = lowerComparator.compare(min);
+    int maxDiff = lowerComparator.compare(max);
+
+    if (minDiff == NOT_COMPARABLE || maxDiff == NOT_COMPARABLE)
+      return true;
+
+    switch (getOperation()) {
+      case EQUALTO:
+        return minDiff <= 0 && maxDiff >= 0;
+
+      case NOTEQUAL:
+        return minDiff != 0 || maxDiff != 0;
+
+      case LESSTHAN:
+        return minDiff < 0;
+
+      case LESSTHANOREQUAL:
+        return minDiff <= 0;
+
+      case GREATERTHAN:
+        return maxDiff > 0;
+
+      case GREATERTHANOREQUAL:
+        return maxDiff >= 0;
+
+      case BETWEEN: {
+        int minUpperDiff = upperComparator.compare(min);
+        int maxUpperDiff = upperComparator.compare(max);
+
+        if (minUpperDiff == NOT_COMPARABLE || maxUpperDiff == NOT_COMPARABLE)
+          return true;
+
+        // a negated BETWEEN passes the values outside the range
+        if (negation)
+          return minDiff < 0 || maxUpperDiff > 0;
+
+        return maxDiff >= 0 && minUpperDiff <= 0;
+      }
+
+      default:
+        return true;
+    }
+  }
+
+  // to build the typed comparisons of the condition, conditions on NULL keep the string comparison
+  public void compile() {
+    lowerComparator = comparatorFor(comparisonValue);
+    upperComparator = comparatorFor(upperValue);
+
+    if (operator == OperatorType.BETWEEN && upperComparator == null)
+      lowerComparator = null;
+
+    compiled = true;
+  }
+
+  private ValueComparator comparatorFor(String value) {
+    if (value == null || value.equalsIgnoreCase(Constants.NULL_STRING))
+      return null;
+
+    int ordinal = columnOrdinal;
+
+    try {
+      if (ordinal == ROWID_ORDINAL) {
+        long constant = Long.parseLong(value);
+        return record -> Long.compare(record.rowId, constant);
+      }
+
+      switch (dataType) {
+        case TINYINT:
+        case SMALLINT:
+        case INT:
+        case BIGINT:
+        case YEAR:
+        case TIME: {
+          long constant = Long.parseLong(value);
+          return record -> Long.compare(record.getLong(ordinal), constant);
+        }
+
+        case FLOAT: {
+          double constant = Float.parseFloat(value);
+          return record -> Double.compare(record.getDouble(ordinal), constant);
+        }
+
+        case DOUBLE: {
+          double constant = Double.parseDouble(value);
+          return record -> Double.compare(record.getDouble(ordinal), constant);
+        }
+
+        case DATE: {
+          long constant = new SimpleDateFormat(AttributeStrings.DATE_FORMAT_STR).parse(value).getTime();
+          return record -> Long.compare(record.getLong(ordinal), constant);
+        }
+
+        case DATETIME: {
+          long constant = new SimpleDateFormat(AttributeStrings.DATETIME_FORMAT_STR).parse(value).getTime();
+          return record -> Long.compare(record.getLong(ordinal), constant);
+        }
+
+        case TEXT: {
+          byte[] constant = value.getBytes(StandardCharsets.UTF_8);
+          for (byte b : constant) {
+            if (b < 0)
+              return null;
+          }
+          return record -> compareText(record, ordinal, constant);
+        }
+
+        default:
+          return null;
+      }
+    } catch (Exception e) {
+      // constants that do not parse keep the string comparison and its error handling
+      return null;
+    }
+  }
+
+  // to compare a TEXT column with an ASCII constant ignoring case, like String.compareTo on the lowered value
+  private static int compareText(TableRecord record, int ordinal, byte[] constant) {
+    ByteBuffer image = record.getImage();
+    int offset = record.getColumnOffset(ordinal);
+    int length = record.getColumnLength(ordinal);
+    int common = Math.min(length, constant.length);
+
+    for (int i = 0; i < common; i++) {
+      int b = image.get(offset + i);
+      if (b < 0)
+        return NOT_COMPARABLE;
+
+      if (b >= 'A' && b <= 'Z')
+        b += 'a' - 'A';
+
+      if (b != constant[i])
+        return b - constant[i];
+    }
+
+    return Integer.compare(length, constant.length);
+  }
+
   public boolean checkCondition(String currentValue) {
     OperatorType op = getOperation();
 
+    if (op == OperatorType.BETWEEN) {
+      if (currentValue.equalsIgnoreCase("null"))
+        return false;
+
+      boolean inRange = compareValue(currentValue, comparisonValue) >= 0
+          && compareValue(currentValue, upperValue) <= 0;
+      return inRange != negation;
+    }
+
     if (currentValue.equalsIgnoreCase("null") || comparisonValue.equalsIgnoreCase("null")) {
       return doOperationOnDifference(op, compare(currentValue, comparisonValue, DataType.NULL));
     }
@@ -137,10 +375,26 @@ public class Condition {
     this.comparisonValue = conditionValue;
     this.comparisonValue = comparisonValue.replace("'", "");
     this.comparisonValue = comparisonValue.replace("\"", "");
+    this.compiled = false;
+  }
+
+  private int compareValue(String currentValue, String value) {
+    if (dataType == DataType.TEXT || dataType == DataType.NULL)
+      return currentValue.toLowerCase().compareTo(value);
+
+    return Long.compare(Long.parseLong(currentValue), Long.parseLong(value));
+  }
+
+  public void setUpperValue(String upperValue) {
+    this.upperValue = upperValue;
+    this.upperValue = this.upperValue.replace("'", "");
+    this.upperValue = this.upperValue.replace("\"", "");
+    this.compiled = false;
   }
 
   public void setOperator(String operator) {
     this.operator = getOperatorType(operator);
+    this.compiled = false;
   }
 
   public OperatorType getOperation() {
@@ -179,6 +433,10 @@ public class Condition {
       case GREATERTHANOREQUAL:
         return OperatorType.LESSTHAN;
 
+      // a negated BETWEEN is handled by checkCondition
+      case BETWEEN:
+        return OperatorType.BETWEEN;
+
       default:
         Utils.log("ERROR :: Invalid operator \"" + this.operator + "\"");
         return OperatorType.INVALID;
@@ -5,7 +5,24 @@ public class Constants {
   public static String PROMPT = "DavisBase-Bohr> ";
   public static String VERSION = "v1.0";
   // public static String COPYRIGHT = "* HexDump (c)2022 Chris Irwin Davis";
-  public static int PAGE_SIZE_POWER = 9;
+  // page size used for new files unless CREATE TABLE gives one, the size is stored in each file header
+  public static int PAGE_SIZE_POWER = 12;
+  public static final int MIN_PAGE_SIZE_POWER = 9;
+  public static final int MAX_PAGE_SIZE_POWER = 16;
+  // number of page images kept in the shared buffer pool
+  public static int BUFFER_POOL_PAGES = 2048;
+  // how table and index files are read, RANDOM_ACCESS keeps the seek based path
+  public static StorageMode STORAGE_MODE = StorageMode.MEMORY_MAPPED;
+  // size of each region mapped by the memory mapped backend, a multiple of the page size
+  public static int MAP_CHUNK_SIZE = 1 << 20;
+  // threads reading the leaves of a scan, 1 reads them on the thread running the statement,
+  // read once when the first scan runs
+  public static int SCAN_THREADS = Runtime.getRuntime().availableProcessors();
+
+  public enum StorageMode {
+    RANDOM_ACCESS,
+    MEMORY_MAPPED
+  }
 
   public enum OperatorType {
     LESSTHAN,
@@ -14,6 +31,7 @@ public class Constants {
     LESSTHANOREQUAL,
     GREATERTHANOREQUAL,
     NOTEQUAL,
+    BETWEEN,
     INVALID
   }
 
@@ -28,6 +46,14 @@ public class Constants {
   public static final String PRIMARY_STRING = "primary";
   public static final String TABLES_STRING = "tables";
   public static final String TABLE_STRING = "table";
+  public static final String PAGE_SIZE_STRING = "page_size";
+  public static final String ROWID_STRING = "rowid";
+  public static final String BETWEEN_STRING = "between";
+  public static final String AND_STRING = "and";
+  public static final String INCLUDE_STRING = "include";
+  public static final String USING_HASH_STRING = "using hash";
+  public static final String USING_BITMAP_STRING = "using bitmap";
+  public static final String USING_BLOOM_STRING = "using bloom";
 
   public static final String SHOW_STRING = "show";
   public static final String SELECT_STRING = "select";
@@ -38,6 +64,8 @@ public class Constants {
   public static final String DELETE_STRING = "delete";
   public static final String HELP_STRING = "help";
   public static final String VERSION_STRING = "version";
+  public static final String VACUUM_STRING = "vacuum";
+  public static final String ANALYZE_STRING = "analyze";
   public static final String EXIT_STRING = "exit";
   public static final String QUIT_STRING = "quit";
 
@@ -65,6 +93,7 @@ public class Constants {
 
     public static String TABLE_NAME_INVALID_ERROR = "ERROR :: Invalid Table name";
     public static String COLUMN_NAME_INVALID_ERROR = "ERROR :: Invalid column name";
+    public static String SINGLE_COLUMN_ERROR = "ERROR :: A hash, bitmap or bloom index is on a single column without INCLUDE columns";
 
   }
 
@@ -72,6 +101,8 @@ public class Constants {
 
     public static String DATA_ERROR = "ERROR :: Data cannot be retrieved";
 
+    public static String BETWEEN_SYNTAX_ERROR = "ERROR :: Expected <column_name> BETWEEN <low> AND <high>";
+
   }
 
   public class ParseUpdate {
@@ -93,11 +124,13 @@ public class Constants {
 
     public static String INSERTION_SUCCESS = "Record inserted successfully";
 
+    public static String ROWS_INSERTION_SUCCESS = " records inserted successfully";
+
     public static String INSERTION_ERROR = "ERROR :: Record cannot be inserted";
 
     public static String SYNTAX_ERROR = "ERROR :: Check query syntax";
 
-    public static String EXPECTED_SYNTAX = "Expected Syntax: INSERT INTO table_name ( columns ) VALUES ( values ); ";
+    public static String EXPECTED_SYNTAX = "Expected Syntax: INSERT INTO table_name ( columns ) VALUES ( values ) [, ( values ) ...]; ";
 
     public static String TABLE_NAME_ERROR = "ERROR :: Empty table name";
 
@@ -113,6 +146,8 @@ public class Constants {
 
     public static String TABLE_CREATION_ERROR = "ERROR :: Table cannot be created";
 
+    public static String PAGE_SIZE_ERROR = "ERROR :: PAGE_SIZE must be a power of 2 between 512 and 65536";
+
     public static String SYNTAX_ERROR = "ERROR :: Check query syntax";
   }
 
@@ -125,6 +160,22 @@ public class Constants {
 
   }
 
+  public class ParseVacuum {
+
+    public static String VACUUM_SUCCESS = " table vacuumed";
+
+    public static String VACUUM_ERROR = "ERROR :: Table cannot be vacuumed: ";
+
+  }
+
+  public class ParseAnalyze {
+
+    public static String ANALYZE_SUCCESS = " table analyzed";
+
+    public static String ANALYZE_ERROR = "ERROR :: Table cannot be analyzed: ";
+
+  }
+
   public class ParseDelete {
 
     public static String RECORDS_DELETE_SUCCESS = "Record(s) deleted from ";
@@ -154,6 +205,8 @@ public class Constants {
     public static String CREATE_COLUMNS_ERROR = "ERROR :: Unable to create the database_columns file";
 
     public static String RECORD_DELETE_ERROR = "ERROR :: Unable to delete record ";
+
+    public static String OLD_FORMAT_ERROR = "ERROR :: The files in data/ use an older format and cannot be opened. Move the data directory aside to start a new data store";
   }
 
   public class PageOperations {
@@ -164,6 +217,10 @@ public class Constants {
 
     public static String PAGE_ADD_ERROR = "ERROR :: Unable to add new page ";
 
+    public static String PAGE_WRITE_ERROR = "ERROR :: Unable to write back the page ";
+
+    public static String FILE_FORMAT_ERROR = "ERROR :: Missing file header in ";
+
     public static String COLUMN_ADD_ERROR = "ERROR :: Unable to add column ";
 
     public static String TABLE_OVERFLOW_ERROR = "ERROR :: Handle table overflow ";
@@ -186,8 +243,13 @@ public class Constants {
     public static String TABLE_ERROR = "ERROR :: Table does not exist";
     public static String COLUMN_DATA_ERROR = "ERROR :: Cannot get column data for ";
     public static String META_DATA_ERROR = "ERROR :: Cannot get meta data for ";
+    public static String CATALOG_LOAD_ERROR = "ERROR :: Cannot load the catalog";
+    public static String STATISTICS_ERROR = "ERROR :: Cannot save the statistics of ";
+    public static String STATISTICS_LOAD_ERROR = "ERROR :: Cannot read the statistics of ";
     public static String INSERTION_ERROR_1 = "ERROR :: Insertion failed. Column ";
     public static String INSERTION_ERROR_2 = " should be unique";
+    public static String INDEX_KEY_ERROR_1 = "ERROR :: Statement rejected. A key of the index on column ";
+    public static String INDEX_KEY_ERROR_2 = " would not fit in a page, too many rows share it or it is too long";
 
   }
 
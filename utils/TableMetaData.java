@@ -4,7 +4,9 @@ import storage.Attribute;
 import storage.DavisBaseBinaryFile;
 import storage.DataType;
 import storage.BPlusOneTree;
+import storage.BTree;
 import storage.Page;
+import storage.PageFile;
 import java.io.*;
 import java.util.*;
 
@@ -17,6 +19,14 @@ public class TableMetaData
   public List<String> colNames;
   public int rootPageNum;
   public int recordCount;
+  public int avgLength;
+
+  // schema of every table in the catalog keyed by table name, loaded once at startup
+  private static final Map<String, TableMetaData> catalogCache = new HashMap<>();
+  private static boolean catalogLoaded = false;
+
+  // tables whose record count or root page changed since the catalog was last written
+  private static final Set<String> staleStatistics = new LinkedHashSet<>();
 
 
   public List<Integer> getOrdinalPositions(List<String> cols) 
@@ -33,9 +43,34 @@ public class TableMetaData
     this.tableName = tableName;
     doesTableExists = false;
 
+    TableMetaData cached = catalogCache.get(tableName);
+    if (cached != null)
+    {
+      copyFrom(cached);
+      return;
+    }
+
+    // once the catalog is loaded a table missing from the cache does not exist
+    if (catalogLoaded)
+      return;
+
+    readFromCatalog();
+    if (doesTableExists)
+      catalogCache.put(tableName, copyOf(this));
+  }
+
+
+  private TableMetaData() 
+  {
+  }
+
+
+  // to read the table row and columns of this table from the catalog files
+  private void readFromCatalog() 
+  {
     try 
     {
-      RandomAccessFile davisbase_tables_catalog = new RandomAccessFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_MODE);
+      PageFile davisbase_tables_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_MODE);
       int rootPageNum = DavisBaseBinaryFile.getRootPageNo(davisbase_tables_catalog);
       BPlusOneTree b_plus_one_tree = new BPlusOneTree(davisbase_tables_catalog, rootPageNum, tableName);
 
@@ -44,11 +79,12 @@ public class TableMetaData
         Page page = new Page(davisbase_tables_catalog, pageNum);
         for (TableRecord rec : page.getPageRecords()) 
         {
-          if (rec.getAttributes().get(0).fieldValue.equals(tableName)) 
+          if (rec.getAttribute(0).fieldValue.equals(tableName)) 
           {
-            this.rootPageNum = Integer.parseInt(rec.getAttributes().get(3).fieldValue);
+            this.rootPageNum = Integer.parseInt(rec.getAttribute(3).fieldValue);
             doesTableExists = true;
-            recordCount = Integer.parseInt(rec.getAttributes().get(1).fieldValue);
+            recordCount = Integer.parseInt(rec.getAttribute(1).fieldValue);
+            avgLength = Integer.parseInt(rec.getAttribute(2).fieldValue);
             break;
           }
         }
@@ -58,14 +94,18 @@ public class TableMetaData
 
       Utils.closeIOFile(davisbase_tables_catalog);
 
-      if (doesTableExists)       
-        loadColumnData();      
-      else       
-        throw new Exception(Constants.TableMetaData.TABLE_ERROR);
-      
+      // a table missing from davisbase_tables is left with doesTableExists unset
+      if (doesTableExists) 
+      {
+        loadColumnData();
+        loadStatistics(Collections.singletonMap(tableName, this));
+      }
     } 
-    catch (Exception e)
-    { // Caught Exception 
+    catch (IOException e)
+    { 
+      doesTableExists = false;
+      Utils.log(Constants.TableMetaData.META_DATA_ERROR + tableName);
+      Utils.log(e + "");
     }
   }
 
@@ -87,8 +127,8 @@ public class TableMetaData
 
   public boolean validateInsert(List<Attribute> row) throws IOException 
   {
-    RandomAccessFile tab_file;
-    tab_file = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
+    PageFile tab_file;
+    tab_file = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
     DavisBaseBinaryFile file;
     file = new DavisBaseBinaryFile(tab_file);
 
@@ -102,7 +142,7 @@ public class TableMetaData
       if (colNameAttributes.get(i_val).isUnique) 
       {
         condition.setConditionValue(row.get(i_val).fieldValue);
-        if (file.recordExists(this, condition)) 
+        if (indexContains(colNameAttributes.get(i_val), condition) || (!colNameAttributes.get(i_val).hasIndex && file.recordExists(this, condition))) 
         {
           Utils.log(Constants.TableMetaData.INSERTION_ERROR_1 + colNameAttributes.get(i_val).columnName + Constants.TableMetaData.INSERTION_ERROR_2);
           Utils.closeIOFile(tab_file);
@@ -115,11 +155,24 @@ public class TableMetaData
   }
 
 
+  // to probe the index of a unique column for a value without reading table pages
+  private boolean indexContains(ColumnInfo column, Condition condition) throws IOException 
+  {
+    if (!column.hasIndex)    
+      return false;    
+
+    PageFile index_file = new PageFile(Utils.getNDXFilePath(tableName, column.columnName), Constants.READ_MODE);
+    boolean exists = !new BTree(index_file).getRowIdValue(condition).isEmpty();
+    Utils.closeIOFile(index_file);
+    return exists;
+  }
+
+
   private void loadColumnData() 
   {
     try 
     {
-      RandomAccessFile davisbase_columns_catalog = new RandomAccessFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseColumns), Constants.READ_MODE);
+      PageFile davisbase_columns_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseColumns), Constants.READ_MODE);
       int rootPageNo = DavisBaseBinaryFile.getRootPageNo(davisbase_columns_catalog);
 
       columnData = new ArrayList<>();
@@ -135,22 +188,8 @@ public class TableMetaData
 
         for (TableRecord rec : page.getPageRecords()) 
         {
-          if (rec.getAttributes().get(0).fieldValue.equals(tableName)) 
-          {
-            ColumnInfo col_info = new ColumnInfo(
-                tableName, DataType.get(rec.getAttributes().get(2).fieldValue),
-                rec.getAttributes().get(1).fieldValue, rec.getAttributes().get(6).fieldValue.equals("YES"),
-                rec.getAttributes().get(4).fieldValue.equals("YES"),
-                Short.parseShort(rec.getAttributes().get(3).fieldValue));
-            
-            columnData.add(rec);
-            colNames.add(rec.getAttributes().get(1).fieldValue);
-
-            if (rec.getAttributes().get(5).fieldValue.equals("PRI"))            
-              col_info.setAsPrimaryKey();           
-
-            colNameAttributes.add(col_info);
-          }
+          if (rec.getAttribute(0).fieldValue.equals(tableName))           
+            addColumn(rec);          
         }
       }
       Utils.closeIOFile(davisbase_columns_catalog);
@@ -161,23 +200,380 @@ public class TableMetaData
   }
 
 
+  // to add a davisbase_columns record to the columns of this table, in the order of their ordinal positions
+  private void addColumn(TableRecord rec) 
+  {
+    ColumnInfo col_info = new ColumnInfo(
+        tableName, DataType.get(rec.getAttribute(2).fieldValue),
+        rec.getAttribute(1).fieldValue, rec.getAttribute(6).fieldValue.equals("YES"),
+        rec.getAttribute(4).fieldValue.equals("YES"),
+        Short.parseShort(rec.getAttribute(3).fieldValue));
+
+    if (rec.getAttribute(5).fieldValue.equals("PRI"))    
+      col_info.setAsPrimaryKey();    
+
+    col_info.setIndexTypes(rec.isNull(7) ? null : rec.getAttribute(7).fieldValue);
+
+    // a catalog row written again by an update is no longer in ordinal order
+    int position = colNameAttributes.size();
+    while (position > 0 && colNameAttributes.get(position - 1).ordinalPosition > col_info.ordinalPosition)
+      position--;
+
+    columnData.add(position, rec);
+    colNames.add(position, rec.getAttribute(1).fieldValue);
+    colNameAttributes.add(position, col_info);
+  }
+
+
+  // callers modify their copy, so cached entries are copied in and out
+  private void copyFrom(TableMetaData cached) 
+  {
+    doesTableExists = cached.doesTableExists;
+    rootPageNum = cached.rootPageNum;
+    recordCount = cached.recordCount;
+    avgLength = cached.avgLength;
+    columnData = new ArrayList<>(cached.columnData);
+    colNames = new ArrayList<>(cached.colNames);
+    colNameAttributes = new ArrayList<>();
+
+    for (ColumnInfo col_info : cached.colNameAttributes)    
+      colNameAttributes.add(new ColumnInfo(col_info));    
+  }
+
+
+  private static TableMetaData copyOf(TableMetaData metaData) 
+  {
+    TableMetaData copy = new TableMetaData();
+    copy.tableName = metaData.tableName;
+    copy.copyFrom(metaData);
+    return copy;
+  }
+
+
+  /**
+   * Loads the schema of every table with one scan of davisbase_tables and one
+   * scan of davisbase_columns. After this, looking up a table is a map lookup.
+   */
+  public static void loadCatalog() 
+  {
+    catalogCache.clear();
+    catalogLoaded = false;
+
+    try 
+    {
+      PageFile davisbase_tables_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_MODE);
+      BPlusOneTree tables_tree = new BPlusOneTree(davisbase_tables_catalog, DavisBaseBinaryFile.getRootPageNo(davisbase_tables_catalog), DavisBaseBinaryFile.davisbaseTables);
+
+      for (Integer pageNum : tables_tree.getAllLeaves()) 
+      {
+        for (TableRecord rec : new Page(davisbase_tables_catalog, pageNum).getPageRecords()) 
+        {
+          TableMetaData metaData = new TableMetaData();
+          metaData.tableName = rec.getAttribute(0).fieldValue;
+          metaData.doesTableExists = true;
+          metaData.recordCount = Integer.parseInt(rec.getAttribute(1).fieldValue);
+          metaData.avgLength = Integer.parseInt(rec.getAttribute(2).fieldValue);
+          metaData.rootPageNum = Integer.parseInt(rec.getAttribute(3).fieldValue);
+          metaData.columnData = new ArrayList<>();
+          metaData.colNames = new ArrayList<>();
+          metaData.colNameAttributes = new ArrayList<>();
+          catalogCache.put(metaData.tableName, metaData);
+        }
+      }
+      Utils.closeIOFile(davisbase_tables_catalog);
+
+      PageFile davisbase_columns_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseColumns), Constants.READ_MODE);
+      BPlusOneTree columns_tree = new BPlusOneTree(davisbase_columns_catalog, DavisBaseBinaryFile.getRootPageNo(davisbase_columns_catalog), DavisBaseBinaryFile.davisbaseColumns);
+
+      for (Integer pageNum : columns_tree.getAllLeaves()) 
+      {
+        for (TableRecord rec : new Page(davisbase_columns_catalog, pageNum).getPageRecords()) 
+        {
+          TableMetaData metaData = catalogCache.get(rec.getAttribute(0).fieldValue);
+          if (metaData != null)          
+            metaData.addColumn(rec);          
+        }
+      }
+      Utils.closeIOFile(davisbase_columns_catalog);
+
+      loadStatistics(catalogCache);
+
+      catalogLoaded = true;
+    } 
+    catch (IOException e) 
+    {
+      catalogCache.clear();
+      Utils.log(Constants.TableMetaData.CATALOG_LOAD_ERROR);
+      return;
+    }
+
+    reconcileStatistics();
+  }
+
+
+  // to check if ANALYZE recorded statistics for the columns of this table
+  public boolean isAnalyzed() 
+  {
+    if (colNameAttributes == null)
+      return false;
+
+    for (ColumnInfo col_info : colNameAttributes) 
+    {
+      if (col_info.statistics != null)
+        return true;
+    }
+    return false;
+  }
+
+
+  // to attach the davisbase_statistics rows of some tables to their columns
+  private static void loadStatistics(Map<String, TableMetaData> tables) throws IOException 
+  {
+    if (!new File(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseStatistics)).exists())
+      return;
+
+    PageFile davisbase_statistics_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseStatistics), Constants.READ_MODE);
+    BPlusOneTree statistics_tree = new BPlusOneTree(davisbase_statistics_catalog, DavisBaseBinaryFile.getRootPageNo(davisbase_statistics_catalog), DavisBaseBinaryFile.davisbaseStatistics);
+
+    for (Integer pageNum : statistics_tree.getAllLeaves()) 
+    {
+      for (TableRecord rec : new Page(davisbase_statistics_catalog, pageNum).getPageRecords()) 
+      {
+        TableMetaData metaData = tables.get(rec.getAttribute(0).fieldValue);
+        if (metaData == null)
+          continue;
+
+        int ord_pos = metaData.colNames.indexOf(rec.getAttribute(1).fieldValue);
+        if (ord_pos < 0)
+          continue;
+
+        ColumnInfo col_info = metaData.colNameAttributes.get(ord_pos);
+
+        // a row that does not parse leaves its column without statistics, as if it was never analyzed
+        try 
+        {
+          col_info.statistics = new ColumnStatistics(col_info.dataType,
+              Long.parseLong(rec.getAttribute(2).fieldValue), Double.parseDouble(rec.getAttribute(3).fieldValue),
+              rec.isNull(4) ? "" : rec.getAttribute(4).fieldValue);
+        } 
+        catch (NumberFormatException e) 
+        {
+          Utils.log(Constants.TableMetaData.STATISTICS_LOAD_ERROR + metaData.tableName + "." + col_info.columnName);
+        }
+      }
+    }
+    Utils.closeIOFile(davisbase_statistics_catalog);
+  }
+
+
+  /**
+   * Writes the statistics ANALYZE gathered for the columns of this table to
+   * davisbase_statistics, replacing the ones of an earlier ANALYZE, and its
+   * record count and average row length to davisbase_tables.
+   */
+  public void saveStatistics(List<ColumnStatistics> statistics) throws Exception 
+  {
+    PageFile davisbase_tables_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_WRITE_MODE);
+    TableMetaData tables_meta_data = new TableMetaData(DavisBaseBinaryFile.davisbaseTables);
+
+    List<String> cols = Arrays.asList("record_count", "avg_length");
+    List<String> new_vals = Arrays.asList(Integer.toString(recordCount), Integer.toString(avgLength));
+
+    new DavisBaseBinaryFile(davisbase_tables_catalog).updateRecords(tables_meta_data, getTableCondition(tableName), cols, new_vals);
+    Utils.closeIOFile(davisbase_tables_catalog);
+
+    if (!new File(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseStatistics)).exists())
+      DavisBaseBinaryFile.createStatisticsCatalog();
+
+    removeStatistics(tableName);
+
+    List<List<Attribute>> rows = new ArrayList<>();
+    for (int i_val = 0; i_val < statistics.size(); i_val++) 
+    {
+      ColumnStatistics column_statistics = statistics.get(i_val);
+      rows.add(Arrays.asList(new Attribute(DataType.TEXT, tableName),
+          new Attribute(DataType.TEXT, colNames.get(i_val)),
+          new Attribute(DataType.BIGINT, Long.toString(column_statistics.distinctCount)),
+          new Attribute(DataType.DOUBLE, Double.toString(column_statistics.nullFraction)),
+          column_statistics.histogram.isEmpty() ? new Attribute(DataType.NULL, Constants.NULL_STRING)
+              : new Attribute(DataType.TEXT, column_statistics.histogram)));
+    }
+
+    PageFile davisbase_statistics_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseStatistics), Constants.READ_WRITE_MODE);
+    int inserted = new DavisBaseBinaryFile(davisbase_statistics_catalog).insertRecords(new TableMetaData(DavisBaseBinaryFile.davisbaseStatistics), rows);
+    Utils.closeIOFile(davisbase_statistics_catalog);
+
+    refreshCatalog(tableName);
+
+    if (inserted < 0)
+      throw new IOException(Constants.TableMetaData.STATISTICS_ERROR + tableName);
+  }
+
+
+  // to remove the davisbase_statistics rows of a table when it is dropped
+  public static void deleteStatistics(String tableName) 
+  {
+    try 
+    {
+      removeStatistics(tableName);
+    } 
+    catch (Exception e) 
+    {
+      Utils.log(Constants.TableMetaData.STATISTICS_ERROR + tableName);
+      Utils.log(e + "");
+    }
+  }
+
+
+  // to remove the davisbase_statistics rows of a table, when it is analyzed again or dropped
+  private static void removeStatistics(String tableName) throws Exception 
+  {
+    if (!new File(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseStatistics)).exists())
+      return;
+
+    PageFile davisbase_statistics_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseStatistics), Constants.READ_WRITE_MODE);
+    TableMetaData statistics_meta_data = new TableMetaData(DavisBaseBinaryFile.davisbaseStatistics);
+    BPlusOneTree b_plus_one_tree = new BPlusOneTree(davisbase_statistics_catalog, statistics_meta_data.rootPageNum, DavisBaseBinaryFile.davisbaseStatistics);
+
+    Utils.DeleteCommand.getDeletedRecords(b_plus_one_tree, davisbase_statistics_catalog, DavisBaseBinaryFile.davisbaseStatistics, getTableCondition(tableName));
+    Utils.closeIOFile(davisbase_statistics_catalog);
+  }
+
+
+  /**
+   * Writes the index kinds of a column to its davisbase_columns row, so the
+   * statements on the table know its indexes from the catalog alone.
+   */
+  public static void saveIndexTypes(ColumnInfo column) throws IOException 
+  {
+    Condition condition = getTableCondition(column.tableName);
+    condition.andCondition = new Condition(DataType.TEXT);
+    condition.andCondition.columnOrdinal = 1;
+    condition.andCondition.setColumName("column_name");
+    condition.andCondition.setConditionValue(column.columnName);
+    condition.andCondition.setOperator(Constants.EQUALS_OP);
+
+    PageFile davisbase_columns_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseColumns), Constants.READ_WRITE_MODE);
+    new DavisBaseBinaryFile(davisbase_columns_catalog).updateRecords(new TableMetaData(DavisBaseBinaryFile.davisbaseColumns), condition, Arrays.asList("index_type"), Arrays.asList(column.getIndexTypes()));
+    Utils.closeIOFile(davisbase_columns_catalog);
+  }
+
+
+  // the condition selecting the catalog rows of a table by their table_name column
+  private static Condition getTableCondition(String tableName) 
+  {
+    Condition condition = new Condition(DataType.TEXT);
+    condition.columnOrdinal = 0;
+    condition.setColumName("table_name");
+    condition.setConditionValue(tableName);
+    condition.setOperator(Constants.EQUALS_OP);
+    return condition;
+  }
+
+
+  /**
+   * Table files keep their own record count and root page in the file header,
+   * which is written back together with the pages. If the process stopped
+   * before the catalog was updated, the header values replace the catalog ones.
+   */
+  private static void reconcileStatistics() 
+  {
+    for (TableMetaData metaData : catalogCache.values()) 
+    {
+      try 
+      {
+        PageFile tab_file = new PageFile(Utils.getTBLFilePath(metaData.tableName), Constants.READ_MODE);
+        if (tab_file.getRecordCount() != metaData.recordCount || tab_file.getRootPageNo() != metaData.rootPageNum)        
+          staleStatistics.add(metaData.tableName);        
+        Utils.closeIOFile(tab_file);
+      } 
+      catch (IOException e) 
+      { Utils.log(Constants.TableMetaData.META_DATA_ERROR + metaData.tableName); }
+    }
+
+    flushStatistics();
+  }
+
+
+  // to count an inserted or deleted record, the catalog row is written by flushStatistics
+  public static void recordCountChanged(String tableName, int delta) 
+  {
+    TableMetaData cached = catalogCache.get(tableName);
+    if (cached != null)    
+      cached.recordCount += delta;    
+
+    staleStatistics.add(tableName);
+  }
+
+
+  // to write the record counts and root pages changed by the last statement to davisbase_tables
+  public static void flushStatistics() 
+  {
+    List<String> tables = new ArrayList<>(staleStatistics);
+    staleStatistics.clear();
+
+    for (String table : tables) 
+    {
+      if (!new File(Utils.getTBLFilePath(table)).exists())      
+        continue;      
+
+      TableMetaData metaData = new TableMetaData(table);
+      if (!metaData.doesTableExists)      
+        continue;      
+
+      try 
+      {
+        PageFile tab_file = new PageFile(Utils.getTBLFilePath(table), Constants.READ_MODE);
+        metaData.recordCount = tab_file.getRecordCount();
+        Utils.closeIOFile(tab_file);
+      } 
+      catch (IOException e) 
+      {
+        Utils.log(Constants.TableMetaData.META_DATA_ERROR + table);
+        continue;
+      }
+
+      metaData.updateMetaData();
+    }
+  }
+
+
+  // to re-read one table from the catalog after CREATE or DROP changed its schema
+  public static void refreshCatalog(String tableName) 
+  {
+    catalogCache.remove(tableName);
+
+    TableMetaData metaData = new TableMetaData();
+    metaData.tableName = tableName;
+    metaData.readFromCatalog();
+
+    if (metaData.doesTableExists)    
+      catalogCache.put(tableName, metaData);    
+  }
+
+
+  // to forget the whole catalog when the data store is recreated
+  public static void clearCatalog() 
+  {
+    catalogCache.clear();
+    staleStatistics.clear();
+    catalogLoaded = false;
+  }
+
+
   public void updateMetaData() 
   {
     try 
     {
-      RandomAccessFile tab_file = new RandomAccessFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
+      PageFile tab_file = new PageFile(Utils.getTBLFilePath(tableName), Constants.READ_MODE);
       int rootPageNo = DavisBaseBinaryFile.getRootPageNo(tab_file);
       Utils.closeIOFile(tab_file);
 
-      RandomAccessFile davisbase_tables_catalog = new RandomAccessFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_WRITE_MODE);
+      PageFile davisbase_tables_catalog = new PageFile(Utils.getTBLFilePath(DavisBaseBinaryFile.davisbaseTables), Constants.READ_WRITE_MODE);
       DavisBaseBinaryFile tables_binary_file = new DavisBaseBinaryFile(davisbase_tables_catalog);
       TableMetaData tables_meta_data = new TableMetaData(DavisBaseBinaryFile.davisbaseTables);
 
-      Condition condition = new Condition(DataType.TEXT);
-      condition.columnOrdinal = 0;
-      condition.setColumName("table_name");
-      condition.setConditionValue(tableName);
-      condition.setOperator(Constants.EQUALS_OP);
+      Condition condition = getTableCondition(tableName);
 
       List<String> cols = Arrays.asList("record_count", "root_page");
       List<String> new_vals = new ArrayList<>();
@@ -187,6 +583,14 @@ public class TableMetaData
 
       tables_binary_file.updateRecords(tables_meta_data, condition, cols, new_vals);
       Utils.closeIOFile(davisbase_tables_catalog);
+
+      rootPageNum = rootPageNo;
+      TableMetaData cached = catalogCache.get(tableName);
+      if (cached != null) 
+      {
+        cached.recordCount = recordCount;
+        cached.rootPageNum = rootPageNo;
+      }
     } 
     catch (IOException e) 
     { Utils.log(Constants.TableMetaData.META_DATA_ERROR + tableName); }
@@ -1,42 +1,147 @@
 package utils;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import storage.Attribute;
 import storage.DataType;
 
-// class for converting table data into byte array
+/**
+ * A record of a table leaf page. The record keeps a view of the page image
+ * it was read from and decodes a column only when it is first asked for, so
+ * a scan that looks at one column does not build every Attribute. The
+ * primitive getters read numeric columns straight from the page image.
+ */
 public class TableRecord {
 
   public int rowId;
-  public Byte[] colDataTypes;
-  public Byte[] recordBody;
-  private List<Attribute> attributes;
-  public short recordOffset;
+  public int recordOffset;
   public short pageHeaderIndex;
 
-  public TableRecord(short pageHeaderIndex, int rowId, short recordOffset, byte[] colDataTypes, byte[] recordBody) {
+  // snapshot of the page image shared by all the records of the page
+  private final ByteBuffer image;
+  private int[] columnOffsets;
+  private Attribute[] decodedColumns;
+  private List<Attribute> attributes;
+
+  public TableRecord(short pageHeaderIndex, int rowId, int recordOffset, ByteBuffer image) {
     this.rowId = rowId;
-    this.recordBody = ByteConvertor.byteToBytes(recordBody);
-    this.colDataTypes = ByteConvertor.byteToBytes(colDataTypes);
     this.recordOffset = recordOffset;
     this.pageHeaderIndex = pageHeaderIndex;
-    setAttributes();
+    this.image = image;
   }
 
-  public List<Attribute> getAttributes() {
-    return attributes;
+  public int getColumnCount() {
+    return image.get(recordOffset + 6);
+  }
+
+  // the serial type code of a column, TEXT codes include the length
+  public byte getColumnTypeCode(int ordinal) {
+    return image.get(recordOffset + 7 + ordinal);
+  }
+
+  public DataType getDataType(int ordinal) {
+    return DataType.get(getColumnTypeCode(ordinal));
   }
 
-  private void setAttributes() {
-    attributes = new ArrayList<>();
-    int pointer = 0;
-    for (Byte colDataType : colDataTypes) {
-      byte[] fieldValue = ByteConvertor
-          .Bytestobytes(Arrays.copyOfRange(recordBody, pointer, pointer + DataType.getLength(colDataType)));
-      attributes.add(new Attribute(DataType.get(colDataType), fieldValue));
-      pointer = pointer + DataType.getLength(colDataType);
+  public boolean isNull(int ordinal) {
+    return getDataType(ordinal) == DataType.NULL;
+  }
+
+  public int getColumnLength(int ordinal) {
+    return DataType.getLength(getColumnTypeCode(ordinal));
+  }
+
+  // offset of the value of a column within the page image
+  public int getColumnOffset(int ordinal) {
+    if (columnOffsets == null) {
+      int columnCount = getColumnCount();
+      columnOffsets = new int[columnCount];
+
+      int offset = recordOffset + 7 + columnCount;
+      for (int i = 0; i < columnCount; i++) {
+        columnOffsets[i] = offset;
+        offset += getColumnLength(i);
+      }
     }
+
+    return columnOffsets[ordinal];
+  }
+
+  // integer, YEAR, TIME, DATE and DATETIME columns as a long
+  public long getLong(int ordinal) {
+    int offset = getColumnOffset(ordinal);
+
+    switch (getDataType(ordinal)) {
+      case TINYINT:
+        return image.get(offset);
+
+      case YEAR:
+        return image.get(offset) + 2000;
+
+      case SMALLINT:
+        return image.getShort(offset);
+
+      case INT:
+      case TIME:
+        return image.getInt(offset);
+
+      case FLOAT:
+        return (long) image.getFloat(offset);
+
+      case DOUBLE:
+        return (long) image.getDouble(offset);
+
+      default:
+        return image.getLong(offset);
+    }
+  }
+
+  public double getDouble(int ordinal) {
+    int offset = getColumnOffset(ordinal);
+
+    switch (getDataType(ordinal)) {
+      case FLOAT:
+        return image.getFloat(offset);
+
+      case DOUBLE:
+        return image.getDouble(offset);
+
+      default:
+        return getLong(ordinal);
+    }
+  }
+
+  // the page image the column offsets refer to, it must not be modified
+  public ByteBuffer getImage() {
+    return image;
+  }
+
+  public Attribute getAttribute(int ordinal) {
+    if (attributes != null)
+      return attributes.get(ordinal);
+
+    if (decodedColumns == null)
+      decodedColumns = new Attribute[getColumnCount()];
+
+    if (decodedColumns[ordinal] == null) {
+      int offset = getColumnOffset(ordinal);
+      byte[] fieldValue = Arrays.copyOfRange(image.array(), offset, offset + getColumnLength(ordinal));
+      decodedColumns[ordinal] = new Attribute(getDataType(ordinal), fieldValue);
+    }
+
+    return decodedColumns[ordinal];
+  }
+
+  public List<Attribute> getAttributes() {
+    if (attributes == null) {
+      List<Attribute> allColumns = new ArrayList<>();
+      for (int i = 0; i < getColumnCount(); i++)
+        allColumns.add(getAttribute(i));
+      attributes = allColumns;
+    }
+
+    return attributes;
   }
 
 }
@@ -7,13 +7,17 @@ import parsing.Query;
 import storage.Attribute;
 import storage.BPlusOneTree;
 import storage.BTree;
+import storage.BitmapIndex;
+import storage.HashIndex;
 import utils.Constants.ParseDrop;
 import utils.Constants.ParseInsert;
 import utils.Constants.ParseUpdate;
 import utils.Constants.SplashScreen;
 import storage.DataType;
 import storage.DavisBaseBinaryFile;
+import storage.BufferPool;
 import storage.Page;
+import storage.PageFile;
 import utils.Constants.CreateIndex;
 import utils.Constants.ParseCreateTable;
 import utils.Constants.ParseDelete;
@@ -35,11 +39,16 @@ public class Utils {
     Utils.log("SHOW TABLES;");
     Utils.log("\tDisplay all table names.\n");
 
-    Utils.log("CREATE TABLE <table_name> (<column_name> <data_type> <not_null> <unique>);");
-    Utils.log("\tCreates a table with the specified columns.\n");
+    Utils.log("CREATE TABLE <table_name> (<column_name> <data_type> <not_null> <unique>) [PAGE_SIZE <bytes>];");
+    Utils.log("\tCreates a table with the specified columns.");
+    Utils.log("\tPAGE_SIZE is a power of 2 between 512 and 65536 bytes.\n");
 
-    Utils.log("CREATE INDEX ON <table_name> (<column_name>);");
-    Utils.log("\tCreates an Index on a Column in the table. \n");
+    Utils.log("CREATE INDEX ON <table_name> (<column_list>) [INCLUDE (<column_list>)] [USING HASH | BITMAP | BLOOM];");
+    Utils.log("\tCreates an Index on one or more Columns in the table, named after the first one.");
+    Utils.log("\tINCLUDE columns are stored in the index so queries reading only them skip the table.");
+    Utils.log("\tUSING HASH creates a hash index on one column for = conditions.");
+    Utils.log("\tUSING BITMAP creates a bitmap index on one column with few distinct values.");
+    Utils.log("\tUSING BLOOM creates a Bloom filter on one column to skip = conditions on absent values.\n");
 
     Utils.log("INSERT INTO <table_name> (<column_list>) VALUES (<values_list>);");
     Utils.log("\tInserts a new record into the table with the given values for the given columns.\n");
@@ -57,7 +66,15 @@ public class Utils {
 
     Utils.log("SELECT <column_list> FROM <table_name> [WHERE <condition>];");
     Utils.log("\tDisplay table records whose optional <condition>");
-    Utils.log("\tis <column_name> = <value>.\n");
+    Utils.log("\tis <column_name> = <value> or <column_name> BETWEEN <low> AND <high>.");
+    Utils.log("\tConditions may be joined with AND.");
+    Utils.log("\t<column_name> may be rowid to look records up by rowid.\n");
+
+    Utils.log("VACUUM <table_name>;");
+    Utils.log("\tCompact the pages, Bloom filters and page summaries of the table to its current records.\n");
+
+    Utils.log("ANALYZE <table_name>;");
+    Utils.log("\tRecord the row count and column statistics used to choose between indexes and scans.\n");
 
     Utils.log("VERSION;");
     Utils.log("\tDisplay the program version.\n");
@@ -79,6 +96,22 @@ public class Utils {
     return "data/" + tableName + "_" + columnName + ".ndx";
   }
 
+  public static String getHashFilePath(String tableName, String columnName) {
+    return "data/" + tableName + "_" + columnName + ".hsh";
+  }
+
+  public static String getBitmapFilePath(String tableName, String columnName) {
+    return "data/" + tableName + "_" + columnName + ".bmp";
+  }
+
+  public static String getBloomFilePath(String tableName, String columnName) {
+    return "data/" + tableName + "_" + columnName + ".blm";
+  }
+
+  public static String getZoneMapFilePath(String tableName) {
+    return "data/" + tableName + ".zmp";
+  }
+
   public static String line(String s, int num) {
     return String.valueOf(s).repeat(Math.max(0, num));
   }
@@ -163,14 +196,54 @@ public class Utils {
       return is_valid;
     }
 
+    // the index is named after the first of its columns
     public static String getColumnNameFromQuery(String q) {
-      String columnName = Utils.removeLeadingTrailingWhitespaces(q.substring(q.indexOf("(") + 1, q.indexOf(")")));
-      return columnName;
+      return getColumnNamesFromQuery(q).get(0);
+    }
+
+    // to get the key columns of the index in the order they are listed
+    public static List<String> getColumnNamesFromQuery(String q) {
+      List<String> columnNames = new ArrayList<>();
+
+      for (String column : getCommaSeparatedArray(q.substring(q.indexOf("(") + 1, q.indexOf(")")))) {
+        columnNames.add(removeLeadingTrailingWhitespaces(column));
+      }
+
+      return columnNames;
+    }
+
+    // to get the columns of the optional INCLUDE clause that follows the indexed column
+    public static List<String> getIncludedColumnsFromQuery(String q) {
+      List<String> includedColumns = new ArrayList<>();
+      String afterColumn = q.substring(q.indexOf(")") + 1);
+
+      if (afterColumn.contains(Constants.INCLUDE_STRING) && afterColumn.contains("(") && afterColumn.contains(")")) {
+        String columnList = afterColumn.substring(afterColumn.indexOf("(") + 1, afterColumn.lastIndexOf(")"));
+
+        for (String column : getCommaSeparatedArray(columnList)) {
+          includedColumns.add(removeLeadingTrailingWhitespaces(column));
+        }
+      }
+
+      return includedColumns;
+    }
+
+    // to check the index method, USING HASH or USING BITMAP follows the column lists
+    public static boolean isHashIndex(String q) {
+      return q.substring(q.lastIndexOf(")") + 1).contains(Constants.USING_HASH_STRING);
+    }
+
+    public static boolean isBitmapIndex(String q) {
+      return q.substring(q.lastIndexOf(")") + 1).contains(Constants.USING_BITMAP_STRING);
+    }
+
+    public static boolean isBloomFilter(String q) {
+      return q.substring(q.lastIndexOf(")") + 1).contains(Constants.USING_BLOOM_STRING);
     }
 
-    public static boolean checkIfIndexExists(String tableName, String columnName) {
+    public static boolean checkIfIndexExists(String indexPath) {
       boolean exists = false;
-      if (new File(getNDXFilePath(tableName, columnName)).exists()) {
+      if (new File(indexPath).exists()) {
         exists = true;
         Utils.log(CreateIndex.ALREADY_EXISTS_ERROR);
       }
@@ -185,10 +258,15 @@ public class Utils {
 
     public static void deleteTableFile(String tableName) {
       File tableFile = new File(getTBLFilePath(tableName));
+      BufferPool.invalidate(getTBLFilePath(tableName));
       if (tableFile.delete())
         Utils.log("Table " + tableName + " deleted");
       else
         Utils.log(ParseDrop.TABLE_ERROR);
+
+      // the zone map goes with its table
+      BufferPool.invalidate(getZoneMapFilePath(tableName));
+      new File(getZoneMapFilePath(tableName)).delete();
     }
 
     public static boolean checkDropCommandSyntax(String[] q_tokens) {
@@ -203,12 +281,14 @@ public class Utils {
 
     public static void deleteIndexes(String tableName) {
       File file = new File("data/");
-      File matchingFiles[] = file.listFiles((dir, name) -> name.startsWith(tableName) && name.endsWith("ndx"));
+      File matchingFiles[] = file.listFiles((dir, name) -> name.startsWith(tableName)
+          && (name.endsWith("ndx") || name.endsWith("hsh") || name.endsWith("bmp") || name.endsWith("blm")));
 
       boolean iFlag = false;
       assert matchingFiles != null;
 
       for (File file_ : matchingFiles) {
+        BufferPool.invalidate(file_.getPath());
         if (file_.delete()) {
           iFlag = true;
           Utils.log(ParseDrop.INDEX_DROP_SUCCESS);
@@ -392,34 +472,92 @@ public class Utils {
       return is_valid;
     }
 
-    public static List<String> getParsedValuesTokens(String q) {
-      return new ArrayList<>(Arrays.asList(Utils.getCommaSeparatedArray(q.substring(q.indexOf("(") + 1))));
+    public static String getValuesClause(String q) {
+      return q.substring(q.indexOf(") values") + 8);
     }
 
-    public static String getParsedValues(String q) {
-      return q.substring(q.indexOf("values") + 6, q.length() - 1);
-    }
+    // splits "(1, 'a'), (2, 'b')" into the value tokens of each tuple
+    public static List<List<String>> getValueTuples(String q) {
+      List<List<String>> tuples = new ArrayList<>();
+      int depth = 0;
+      int start = 0;
+      char quote = 0;
 
-    public static void removeExcessTokens(int index, List<String> columnTokens, List<String> valueTokens) {
-      if (columnTokens.size() > index) {
-        columnTokens.remove(index);
-        valueTokens.remove(index);
+      for (int i = 0; i < q.length(); i++) {
+        char c = q.charAt(i);
+
+        if (quote != 0) {
+          if (c == quote)
+            quote = 0;
+        } else if (c == '\'' || c == '"') {
+          quote = c;
+        } else if (c == '(') {
+          if (depth++ == 0)
+            start = i + 1;
+        } else if (c == ')' && depth > 0) {
+          if (--depth == 0)
+            tuples.add(new ArrayList<>(Arrays.asList(Utils.getCommaSeparatedArray(q.substring(start, i)))));
+        }
       }
+
+      return tuples;
     }
 
-    public static void updateColumnIndexes(TableMetaData metaData, String tname, List<Attribute> attributeToInsert,
-        int rowNum) throws Exception {
-      if (rowNum != -1) {
-        for (int i_val = 0; i_val < metaData.colNameAttributes.size(); i_val++) {
-          ColumnInfo col = metaData.colNameAttributes.get(i_val);
-          if (col.hasIndex) {
-            RandomAccessFile indexFile = new RandomAccessFile(Utils.getNDXFilePath(tname, col.columnName),
-                Constants.READ_WRITE_MODE);
-            BTree bTree = new BTree(indexFile);
-            bTree.insert(attributeToInsert.get(i_val), rowNum);
+    // to convert one tuple of values into the attributes of a row, null if a value is invalid
+    public static List<Attribute> getRowAttributes(TableMetaData metaData, List<String> columnTokens,
+        List<String> valueTokens) throws Exception {
+      List<Attribute> attributeToInsert = new ArrayList<>();
+
+      for (ColumnInfo colInfo : metaData.colNameAttributes) {
+        boolean columnProvided = false;
+        int i = 0;
+
+        while (i < columnTokens.size()) {
+          if (Utils.removeLeadingTrailingWhitespaces(columnTokens.get(i)).equals(colInfo.columnName)) {
+            columnProvided = true;
+
+            try {
+              String value = Utils.removeLeadingTrailingWhitespaces(Utils.removeQuotesFromString(valueTokens.get(i)));
+              DataType dataType = colInfo.dataType;
+
+              if (Utils.removeLeadingTrailingWhitespaces(valueTokens.get(i)).equals(Constants.NULL_STRING)) {
+                if (!colInfo.isNullable) {
+                  Utils.log(ParseInsert.NULL_INSERTION_ERROR + colInfo.columnName);
+                  return null;
+                }
+
+                dataType = DataType.NULL;
+                value = value.toUpperCase();
+              }
+
+              attributeToInsert.add(new Attribute(dataType, value));
+
+              break;
+            } catch (Exception e) {
+              Utils.log(ParseInsert.DATA_ERROR_1 + columnTokens.get(i) + ParseInsert.DATA_ERROR_2
+                  + (i < valueTokens.size() ? valueTokens.get(i) : ""));
+              return null;
+            }
           }
+
+          i++;
+        }
+
+        removeExcessTokens(i, columnTokens, valueTokens);
+
+        if (!handleIfColNotPresentInQuery(columnProvided, colInfo, attributeToInsert)) {
+          return null;
         }
       }
+
+      return attributeToInsert;
+    }
+
+    public static void removeExcessTokens(int index, List<String> columnTokens, List<String> valueTokens) {
+      if (columnTokens.size() > index) {
+        columnTokens.remove(index);
+        valueTokens.remove(index);
+      }
     }
 
     public static boolean handleIfColNotPresentInQuery(boolean columnProvided, ColumnInfo colInfo,
@@ -456,9 +594,44 @@ public class Utils {
           Arrays.asList(Utils.getCommaSeparatedArray(q.substring(q.indexOf("(") + 1, q.length() - 1))));
     }
 
-    public static void createPrimaryKeyIndex(String primaryKeyColumn, String tableName) {
-      if (primaryKeyColumn.length() > 0) {
-        Query.parseCreateIndex("create index on " + tableName + "(" + primaryKeyColumn + ")");
+    // returns the page size power from the optional PAGE_SIZE clause, -1 if it is invalid
+    public static int getPageSizePower(String q) {
+      if (!q.contains(Constants.PAGE_SIZE_STRING)) {
+        return Constants.PAGE_SIZE_POWER;
+      }
+
+      String size = q.substring(q.lastIndexOf(Constants.PAGE_SIZE_STRING) + Constants.PAGE_SIZE_STRING.length());
+      int pageSize;
+
+      try {
+        pageSize = Integer.parseInt(Utils.removeLeadingTrailingWhitespaces(size.replace("=", "")));
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+
+      int power = Integer.numberOfTrailingZeros(pageSize);
+      if (Integer.bitCount(pageSize) != 1 || power < Constants.MIN_PAGE_SIZE_POWER
+          || power > Constants.MAX_PAGE_SIZE_POWER) {
+        return -1;
+      }
+
+      return power;
+    }
+
+    public static String removePageSizeClause(String q) {
+      if (!q.contains(Constants.PAGE_SIZE_STRING)) {
+        return q;
+      }
+
+      return Utils.removeLeadingTrailingWhitespaces(q.substring(0, q.lastIndexOf(Constants.PAGE_SIZE_STRING)));
+    }
+
+    // every primary key and unique column gets an index so inserts can check it without a scan
+    public static void createUniqueIndexes(List<ColumnInfo> columns, String tableName) {
+      for (ColumnInfo column : columns) {
+        if (column.isUnique) {
+          Query.parseCreateIndex("create index on " + tableName + "(" + column.columnName + ")");
+        }
       }
     }
 
@@ -472,13 +645,36 @@ public class Utils {
         throws Exception {
       for (int i_val = 0; i_val < metaData.colNameAttributes.size(); i_val++) {
         if (metaData.colNameAttributes.get(i_val).hasIndex) {
-          RandomAccessFile indexFile = new RandomAccessFile(
+          PageFile indexFile = new PageFile(
               Utils.getNDXFilePath(tableName, metaData.colNameAttributes.get(i_val).columnName),
               Constants.READ_WRITE_MODE);
           BTree bTree = new BTree(indexFile);
           for (TableRecord r : deleted_records) {
-            bTree.delete(r.getAttributes().get(i_val), r.rowId);
+            bTree.delete(bTree.getKey(r), r.rowId);
           }
+          Utils.closeIOFile(indexFile);
+        }
+
+        if (metaData.colNameAttributes.get(i_val).hasBitmapIndex) {
+          PageFile bitmapFile = new PageFile(
+              Utils.getBitmapFilePath(tableName, metaData.colNameAttributes.get(i_val).columnName),
+              Constants.READ_WRITE_MODE);
+          BitmapIndex bitmapIndex = new BitmapIndex(bitmapFile);
+          for (TableRecord r : deleted_records) {
+            bitmapIndex.delete(r.getAttribute(i_val), r.rowId);
+          }
+          Utils.closeIOFile(bitmapFile);
+        }
+
+        if (metaData.colNameAttributes.get(i_val).hasHashIndex) {
+          PageFile hashFile = new PageFile(
+              Utils.getHashFilePath(tableName, metaData.colNameAttributes.get(i_val).columnName),
+              Constants.READ_WRITE_MODE);
+          HashIndex hashIndex = new HashIndex(hashFile);
+          for (TableRecord r : deleted_records) {
+            hashIndex.delete(r.getAttribute(i_val), r.rowId);
+          }
+          Utils.closeIOFile(hashFile);
         }
       }
     }
@@ -492,7 +688,7 @@ public class Utils {
       return is_valid;
     }
 
-    public static List<TableRecord> getDeletedRecords(BPlusOneTree tree, RandomAccessFile tableFile, String tableName,
+    public static List<TableRecord> getDeletedRecords(BPlusOneTree tree, PageFile tableFile, String tableName,
         Condition condition) throws Exception {
       List<TableRecord> deleted_records = new ArrayList<>();
 
@@ -502,7 +698,7 @@ public class Utils {
 
         for (TableRecord r : page.getPageRecords()) {
           if (condition != null) {
-            if (!condition.checkCondition(r.getAttributes().get(condition.columnOrdinal).fieldValue)) {
+            if (!condition.checkCondition(r)) {
               continue;
             }
           }
@@ -523,13 +719,62 @@ public class Utils {
   public static class QueryCondition {
     public static Condition fetchAndParseQueryCondition(TableMetaData tableMetaData, String q) throws Exception {
       if (q.contains("where")) {
-        Condition condition = new Condition(DataType.TEXT);
         String whereClause = q.substring(q.indexOf("where") + 6);
-        List<String> where_clause_tokens = new ArrayList<>(Arrays.asList(whereClause.split(" ")));
+        Condition condition = null;
+        Condition lastCondition = null;
 
-        if (where_clause_tokens.get(0).equalsIgnoreCase(Constants.NOT_STRING))
-          condition.setNegation(true);
+        // conditions joined with AND are chained in the order they are written
+        for (String conditionClause : getConditionClauses(whereClause)) {
+          Condition nextCondition = parseCondition(tableMetaData, conditionClause);
 
+          if (condition == null) {
+            condition = nextCondition;
+          } else {
+            lastCondition.andCondition = nextCondition;
+          }
+          lastCondition = nextCondition;
+        }
+
+        return condition;
+      } else {
+        return null;
+      }
+    }
+
+    // to split a WHERE clause at its ANDs, keeping the AND of a BETWEEN with its condition
+    private static List<String> getConditionClauses(String whereClause) {
+      String andStr = " " + Constants.AND_STRING + " ";
+      String betweenStr = " " + Constants.BETWEEN_STRING + " ";
+      List<String> conditionClauses = new ArrayList<>();
+
+      for (String part : whereClause.split(andStr)) {
+        int last = conditionClauses.size() - 1;
+
+        if (last >= 0 && conditionClauses.get(last).contains(betweenStr)
+            && !conditionClauses.get(last).contains(andStr)) {
+          conditionClauses.set(last, conditionClauses.get(last) + andStr + part);
+        } else {
+          conditionClauses.add(" " + part.trim());
+        }
+      }
+
+      return conditionClauses;
+    }
+
+    // to parse one condition of a WHERE clause
+    private static Condition parseCondition(TableMetaData tableMetaData, String whereClause) throws Exception {
+      Condition condition = new Condition(DataType.TEXT);
+      List<String> where_clause_tokens = new ArrayList<>(Arrays.asList(whereClause.trim().split(" ")));
+
+      // the column follows a leading NOT
+      if (where_clause_tokens.get(0).equalsIgnoreCase(Constants.NOT_STRING)) {
+        condition.setNegation(true);
+        whereClause = whereClause.trim().substring(Constants.NOT_STRING.length());
+      }
+
+      if (whereClause.contains(" " + Constants.BETWEEN_STRING + " ")) {
+        parseBetweenCondition(condition, whereClause);
+      } else {
         for (int i_val = 0; i_val < Condition.supportedOperators.length; i_val++) {
           if (whereClause.contains(Condition.supportedOperators[i_val])) {
             where_clause_tokens = new ArrayList<>(
@@ -542,20 +787,40 @@ public class Utils {
             }
           }
         }
+      }
 
-        if (tableMetaData.doesTableExists
-            && tableMetaData.columnExists(new ArrayList<>(List.of(condition.columnName)))) {
-          condition.columnOrdinal = tableMetaData.colNames.indexOf(condition.columnName);
-          condition.dataType = tableMetaData.colNameAttributes.get(condition.columnOrdinal).dataType;
-        } else {
-          throw new Exception(
-              "ERROR :: Invalid table or column: " + tableMetaData.tableName + " . " + condition.columnName);
-        }
-
-        return condition;
+      if (tableMetaData.doesTableExists
+          && tableMetaData.columnExists(new ArrayList<>(List.of(condition.columnName)))) {
+        condition.columnOrdinal = tableMetaData.colNames.indexOf(condition.columnName);
+        condition.dataType = tableMetaData.colNameAttributes.get(condition.columnOrdinal).dataType;
+      } else if (tableMetaData.doesTableExists && condition.columnName.equals(Constants.ROWID_STRING)) {
+        condition.columnOrdinal = Condition.ROWID_ORDINAL;
+        condition.dataType = DataType.INT;
       } else {
-        return null;
+        throw new Exception(
+            "ERROR :: Invalid table or column: " + tableMetaData.tableName + " . " + condition.columnName);
       }
+
+      return condition;
+    }
+
+    // to parse "<column_name> BETWEEN <low> AND <high>"
+    private static void parseBetweenCondition(Condition condition, String whereClause) throws Exception {
+      String betweenStr = " " + Constants.BETWEEN_STRING + " ";
+      String[] bounds = whereClause.substring(whereClause.indexOf(betweenStr) + betweenStr.length())
+          .split(" " + Constants.AND_STRING + " ");
+
+      if (bounds.length != 2) {
+        throw new Exception(Constants.ParseQuery.BETWEEN_SYNTAX_ERROR);
+      }
+
+      List<String> columnTokens = CreateTable
+          .getTrimmedSpaceSeparatedTokens(whereClause.substring(0, whereClause.indexOf(betweenStr)));
+
+      condition.setOperator(Constants.BETWEEN_STRING);
+      condition.setColumName(columnTokens.get(columnTokens.size() - 1));
+      condition.setConditionValue(bounds[0].trim());
+      condition.setUpperValue(bounds[1].trim());
     }
   }
 }